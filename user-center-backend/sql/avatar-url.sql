@@ -0,0 +1,18 @@
+-- =====================================================
+-- avatar_url 列收缩脚本（已有部署）
+-- 早期 avatar_url 为 LONGTEXT，保存 Base64 内联图片。AvatarMigrationService 会把内联图片转存为文件，
+-- 注册和修改资料时新的内联图片也会被转存，待下面的检查结果全部为 0 后再执行 ALTER
+-- 启用分区时对 user_0 ~ user_3 分别执行
+-- =====================================================
+
+USE user_center;
+
+-- 1. 检查：剩余的内联图片和超长URL（查看 /api/monitor/avatar-migration 的 failed 数，失败的数据需人工处理）
+SELECT COUNT(*) FROM `user` WHERE avatar_url LIKE 'data:%' OR LENGTH(avatar_url) > 255;
+
+-- 2. 归档用户不参与迁移（恢复时会移回主表），直接清除其内联图片
+UPDATE `user_archive` SET avatar_url = NULL WHERE avatar_url LIKE 'data:%' OR LENGTH(avatar_url) > 255;
+
+-- 3. 收缩列类型
+ALTER TABLE `user` MODIFY `avatar_url` VARCHAR(255) DEFAULT NULL COMMENT '头像URL';
+ALTER TABLE `user_archive` MODIFY `avatar_url` VARCHAR(255) DEFAULT NULL COMMENT '头像URL';
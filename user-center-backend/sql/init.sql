@@ -18,25 +18,84 @@ CREATE TABLE `user` (
     `id` BIGINT NOT NULL AUTO_INCREMENT COMMENT '用户ID',
     `username` VARCHAR(50) NOT NULL COMMENT '用户名',
     `user_account` VARCHAR(50) NOT NULL COMMENT '用户账号(登录用)',
-    `user_password` VARCHAR(100) NOT NULL COMMENT '用户密码(MD5加密)',
+    `user_password` VARCHAR(100) NOT NULL COMMENT '用户密码(PBKDF2哈希，兼容旧版MD5)',
     `gender` TINYINT DEFAULT 0 COMMENT '性别(0-未知,1-男,2-女)',
     `phone` VARCHAR(20) DEFAULT NULL COMMENT '电话号码',
     `email` VARCHAR(100) DEFAULT NULL COMMENT '邮箱地址',
-    `avatar_url` LONGTEXT DEFAULT NULL COMMENT '头像URL(Base64编码)',
+    `avatar_url` VARCHAR(255) DEFAULT NULL COMMENT '头像URL',
     `user_profile` VARCHAR(500) DEFAULT NULL COMMENT '用户简介',
     `user_role` VARCHAR(20) DEFAULT 'user' COMMENT '用户角色(user-普通用户,admin-管理员)',
     `is_delete` TINYINT DEFAULT 0 COMMENT '是否删除(0-否,1-是)',
+    `version` INT NOT NULL DEFAULT 0 COMMENT '版本号(乐观锁)',
     `create_time` DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     `update_time` DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
     PRIMARY KEY (`id`),
     UNIQUE KEY `uk_user_account` (`user_account`),
     KEY `idx_username` (`username`),
-    KEY `idx_create_time` (`create_time`)
+    KEY `idx_create_time` (`create_time`),
+    KEY `idx_delete_update_time` (`is_delete`, `update_time`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='用户表';
 
 -- =====================================================
--- 3. 初始化测试数据（密码：123456）
--- 密码 md5(123456user_center) = a0a55d4d9c8a2d8abd2091c27ca215e5
+-- 3. 用户归档表（删除超过保留期的用户由 UserArchiveService 从 user 表移入）
+-- =====================================================
+DROP TABLE IF EXISTS `user_archive`;
+CREATE TABLE `user_archive` (
+    `id` BIGINT NOT NULL COMMENT '用户ID(保留原ID)',
+    `username` VARCHAR(50) NOT NULL COMMENT '用户名',
+    `user_account` VARCHAR(50) NOT NULL COMMENT '用户账号(登录用)',
+    `user_password` VARCHAR(100) NOT NULL COMMENT '用户密码(PBKDF2哈希，兼容旧版MD5)',
+    `gender` TINYINT DEFAULT 0 COMMENT '性别(0-未知,1-男,2-女)',
+    `phone` VARCHAR(20) DEFAULT NULL COMMENT '电话号码',
+    `email` VARCHAR(100) DEFAULT NULL COMMENT '邮箱地址',
+    `avatar_url` VARCHAR(255) DEFAULT NULL COMMENT '头像URL',
+    `user_profile` VARCHAR(500) DEFAULT NULL COMMENT '用户简介',
+    `user_role` VARCHAR(20) DEFAULT 'user' COMMENT '用户角色(user-普通用户,admin-管理员)',
+    `is_delete` TINYINT DEFAULT 1 COMMENT '是否删除(归档数据均为1)',
+    `version` INT NOT NULL DEFAULT 0 COMMENT '版本号(乐观锁)',
+    `create_time` DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '更新时间(即删除时间)',
+    `archive_time` DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '归档时间',
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_user_account` (`user_account`),
+    KEY `idx_archive_time` (`archive_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='用户归档表';
+
+-- =====================================================
+-- 4. 头像文件表（内容寻址，按引用计数去重和回收）
+-- =====================================================
+DROP TABLE IF EXISTS `avatar_file`;
+CREATE TABLE `avatar_file` (
+    `hash` CHAR(32) NOT NULL COMMENT '原图内容哈希(SHA-256前128位，同时是头像ID)',
+    `ref_count` INT NOT NULL DEFAULT 1 COMMENT '引用次数',
+    `bytes` BIGINT NOT NULL DEFAULT 0 COMMENT '原图大小(字节)',
+    `create_time` DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    PRIMARY KEY (`hash`),
+    KEY `idx_update_time` (`update_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='头像文件表';
+
+-- =====================================================
+-- 5. 登录日志表（由 LoginEventService 异步批量写入）
+-- =====================================================
+DROP TABLE IF EXISTS `user_login_log`;
+CREATE TABLE `user_login_log` (
+    `id` BIGINT NOT NULL AUTO_INCREMENT COMMENT '日志ID',
+    `user_id` BIGINT DEFAULT NULL COMMENT '用户ID(账号不存在时为空)',
+    `user_account` VARCHAR(50) NOT NULL COMMENT '登录时使用的账号',
+    `login_time` DATETIME(3) NOT NULL COMMENT '登录时间',
+    `ip` VARCHAR(64) DEFAULT NULL COMMENT '客户端IP',
+    `user_agent` VARCHAR(255) DEFAULT NULL COMMENT '客户端User-Agent',
+    `success` TINYINT NOT NULL COMMENT '是否成功(0-失败,1-成功)',
+    `fail_reason` VARCHAR(32) DEFAULT NULL COMMENT '失败原因',
+    PRIMARY KEY (`id`),
+    KEY `idx_user_time` (`user_id`, `login_time`),
+    KEY `idx_account_time` (`user_account`, `login_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='登录日志表';
+
+-- =====================================================
+-- 6. 初始化测试数据（密码：123456）
+-- 密码 md5(123456user_center) = a0a55d4d9c8a2d8abd2091c27ca215e5（旧版哈希，首次登录后自动升级为 PBKDF2）
 -- =====================================================
 INSERT INTO `user`
     (username, user_account, user_password, gender, user_role)
@@ -46,7 +105,7 @@ VALUES
     ('示例用户', 'example', 'a0a55d4d9c8a2d8abd2091c27ca215e5', 2, 'user');
 
 -- =====================================================
--- 4. 验证数据
+-- 7. 验证数据
 -- =====================================================
 SELECT * FROM `user`;
 SELECT COUNT(*) AS user_count FROM `user`;
@@ -0,0 +1,25 @@
+-- =====================================================
+-- 用户表分区脚本（user.partition.count = 4）
+-- 分区表结构与 user 表一致，ID 由雪花算法生成器分配（低位为分区号，id % 4 == 分区号），不使用 AUTO_INCREMENT
+-- user_archive 不分区，各分区的归档数据共用一张表（ID 全局唯一）
+-- 已有数据需按 crc32(user_account) & 3 迁移到对应分区并重新分配 ID，建议在新部署中启用
+-- =====================================================
+
+USE user_center;
+
+-- 分区表
+DROP TABLE IF EXISTS `user_0`;
+CREATE TABLE `user_0` LIKE `user`;
+ALTER TABLE `user_0` MODIFY `id` BIGINT NOT NULL COMMENT '用户ID';
+
+DROP TABLE IF EXISTS `user_1`;
+CREATE TABLE `user_1` LIKE `user`;
+ALTER TABLE `user_1` MODIFY `id` BIGINT NOT NULL COMMENT '用户ID';
+
+DROP TABLE IF EXISTS `user_2`;
+CREATE TABLE `user_2` LIKE `user`;
+ALTER TABLE `user_2` MODIFY `id` BIGINT NOT NULL COMMENT '用户ID';
+
+DROP TABLE IF EXISTS `user_3`;
+CREATE TABLE `user_3` LIKE `user`;
+ALTER TABLE `user_3` MODIFY `id` BIGINT NOT NULL COMMENT '用户ID';
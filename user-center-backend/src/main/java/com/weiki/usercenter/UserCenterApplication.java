@@ -3,6 +3,7 @@ package com.weiki.usercenter;
 import org.mybatis.spring.annotation.MapperScan;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * 用户中心项目启动类
@@ -15,6 +16,8 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 @SpringBootApplication
 // 指定Mapper接口扫描路径
 @MapperScan("com.weiki.usercenter.mapper")
+// 启用定时任务（用户归档）
+@EnableScheduling
 public class UserCenterApplication {
     
     /**
@@ -0,0 +1,36 @@
+package com.weiki.usercenter.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 隔离舱注解
+ * 声明接口所属的资源分区，同一分区的请求共享并发上限、等待队列和数据库连接配额（bulkhead.partitions 中配置），
+ * 一个分区的请求堆积不会占满其他分区的线程和连接
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Bulkhead {
+
+    /**
+     * 登录、注册等认证入口
+     */
+    String AUTH = "auth";
+
+    /**
+     * 用户查看、修改自己的信息（及管理员的单用户操作）
+     */
+    String SELF_SERVICE = "self-service";
+
+    /**
+     * 管理员的列表、搜索、导入导出和批量操作
+     */
+    String ADMIN_BULK = "admin-bulk";
+
+    /**
+     * 分区名称
+     */
+    String value();
+}
@@ -0,0 +1,86 @@
+package com.weiki.usercenter.aop;
+
+import com.weiki.usercenter.annotation.Bulkhead;
+import com.weiki.usercenter.config.BulkheadProperties;
+import com.weiki.usercenter.datasource.BulkheadContextHolder;
+import com.weiki.usercenter.datasource.ConnectionQuotaDataSource;
+import com.weiki.usercenter.exception.BusinessException;
+import com.weiki.usercenter.utils.SemaphoreBulkhead;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 隔离舱 AOP 切面
+ * 通过 @Bulkhead 注解把接口划入资源分区：
+ * - 每个分区的同时执行数、等待队列长度和最长等待时间独立配置，名额用完且等待超时或队列已满时返回 503
+ * - 执行期间在 BulkheadContextHolder 中记录分区，获取数据库连接时按分区的连接配额限制
+ */
+@Slf4j
+@Aspect
+@Component
+public class BulkheadAspect {
+
+    private final BulkheadProperties properties;
+    private final DataSource dataSource;
+    private final Map<String, SemaphoreBulkhead> bulkheads = new LinkedHashMap<>();
+
+    public BulkheadAspect(BulkheadProperties properties, DataSource dataSource) {
+        this.properties = properties;
+        this.dataSource = dataSource;
+        properties.getPartitions().forEach((name, partition) -> {
+            bulkheads.put(name, new SemaphoreBulkhead(partition.getMaxConcurrent(), partition.getMaxQueue(),
+                    partition.getMaxWaitMs()));
+            log.info("隔离舱分区 {}：并发 {}，队列 {}，等待 {} ms，连接配额 {}", name, partition.getMaxConcurrent(),
+                    partition.getMaxQueue(), partition.getMaxWaitMs(), partition.getMaxConnections());
+        });
+    }
+
+    @Around("@annotation(bulkhead)")
+    public Object around(ProceedingJoinPoint joinPoint, Bulkhead bulkhead) throws Throwable {
+        if (!properties.isEnabled()) {
+            return joinPoint.proceed();
+        }
+        SemaphoreBulkhead partition = bulkheads.get(bulkhead.value());
+        if (partition == null) {
+            throw new IllegalStateException("未配置的隔离舱分区：" + bulkhead.value());
+        }
+        boolean entered;
+        try {
+            entered = partition.tryEnter();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            entered = false;
+        }
+        if (!entered) {
+            log.warn("隔离舱分区 {} 已满，拒绝请求：{}", bulkhead.value(), joinPoint.getSignature().toShortString());
+            throw new BusinessException(503, "服务繁忙，请稍后重试");
+        }
+        String previous = BulkheadContextHolder.set(bulkhead.value());
+        try {
+            return joinPoint.proceed();
+        } finally {
+            BulkheadContextHolder.set(previous);
+            partition.exit();
+        }
+    }
+
+    /**
+     * 各分区的并发、排队和连接配额统计
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        bulkheads.forEach((name, bulkhead) ->
+                bulkhead.getStats().forEach((key, value) -> stats.put(name + "." + key, value)));
+        if (dataSource instanceof ConnectionQuotaDataSource) {
+            stats.putAll(((ConnectionQuotaDataSource) dataSource).getStats());
+        }
+        return stats;
+    }
+}
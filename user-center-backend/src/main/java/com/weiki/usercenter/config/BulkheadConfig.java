@@ -0,0 +1,61 @@
+package com.weiki.usercenter.config;
+
+import com.weiki.usercenter.datasource.ConnectionQuotaDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+
+/**
+ * 隔离舱配置
+ *
+ * 并发上限和等待队列由 BulkheadAspect 在接口层面控制；
+ * 配置了 max-connections 的分区在数据源外包一层 ConnectionQuotaDataSource，按分区限制连接数
+ */
+@Configuration
+@Slf4j
+@EnableConfigurationProperties(BulkheadProperties.class)
+public class BulkheadConfig {
+
+    /**
+     * 对外暴露的数据源 Bean 名称（未启用读写分离时为 Spring Boot 自动配置的连接池，启用时为延迟连接代理）
+     */
+    private static final String DATA_SOURCE_BEAN = "dataSource";
+
+    /**
+     * 包装数据源，按分区限制连接数
+     * BeanPostProcessor 先于普通 Bean 创建，这里直接从 Environment 绑定配置
+     */
+    @Bean
+    public static BeanPostProcessor connectionQuotaPostProcessor(Environment environment) {
+        BulkheadProperties properties = Binder.get(environment)
+                .bind("bulkhead", BulkheadProperties.class)
+                .orElseGet(BulkheadProperties::new);
+        int poolSize = environment.getProperty("spring.datasource.hikari.maximum-pool-size", Integer.class, 10);
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!properties.isEnabled() || !DATA_SOURCE_BEAN.equals(beanName) || !(bean instanceof DataSource)
+                        || bean instanceof ConnectionQuotaDataSource) {
+                    return bean;
+                }
+                int reserved = properties.getPartitions().values().stream()
+                        .mapToInt(BulkheadProperties.Partition::getMaxConnections)
+                        .sum();
+                if (reserved == 0) {
+                    return bean;
+                }
+                if (reserved > poolSize) {
+                    log.warn("隔离舱连接配额之和 {} 超过连接池大小 {}，分区之间仍可能争用连接", reserved, poolSize);
+                }
+                log.info("隔离舱连接配额：{}，连接池大小 {}", properties.getPartitions().keySet(), poolSize);
+                return new ConnectionQuotaDataSource((DataSource) bean, properties.getPartitions());
+            }
+        };
+    }
+}
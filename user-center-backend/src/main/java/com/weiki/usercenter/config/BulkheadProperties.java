@@ -0,0 +1,57 @@
+package com.weiki.usercenter.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 隔离舱配置
+ */
+@Data
+@ConfigurationProperties(prefix = "bulkhead")
+public class BulkheadProperties {
+
+    /**
+     * 是否启用隔离舱
+     */
+    private boolean enabled = true;
+
+    /**
+     * 各分区配置（Key 为 @Bulkhead 中的分区名称）
+     */
+    private Map<String, Partition> partitions = new LinkedHashMap<>();
+
+    /**
+     * 分区配置
+     */
+    @Data
+    public static class Partition {
+
+        /**
+         * 同时执行的最大请求数
+         */
+        private int maxConcurrent = 20;
+
+        /**
+         * 等待执行的最大请求数，超出时立即拒绝
+         */
+        private int maxQueue = 20;
+
+        /**
+         * 最长等待时间（毫秒），超时后拒绝
+         */
+        private long maxWaitMs = 500;
+
+        /**
+         * 可同时占用的数据库连接数，0 表示不限制
+         */
+        private int maxConnections = 0;
+
+        /**
+         * 等待连接配额的最长时间（毫秒）
+         */
+        private long connectionWaitMs = 1000;
+    }
+}
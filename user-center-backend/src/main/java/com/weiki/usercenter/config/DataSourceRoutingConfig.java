@@ -0,0 +1,96 @@
+package com.weiki.usercenter.config;
+
+import com.weiki.usercenter.datasource.ReadWriteRoutingDataSource;
+import com.weiki.usercenter.datasource.ReadWriteRoutingInterceptor;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 读写分离数据源配置
+ *
+ * 开启方式：datasource.routing.enabled=true，并在 datasource.routing.replicas 中配置从库
+ * 主库沿用 spring.datasource 配置（包括 spring.datasource.hikari 下的连接池参数），
+ * 从库继承主库的连接池参数，再按 datasource.routing.replicas 覆盖地址、账号和最大连接数
+ */
+@Configuration
+@Slf4j
+@ConditionalOnProperty(prefix = "datasource.routing", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(DataSourceRoutingProperties.class)
+public class DataSourceRoutingConfig {
+
+    /**
+     * 主库连接池，与 Spring Boot 默认的 Hikari 数据源一样绑定 spring.datasource.hikari
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties dataSourceProperties) {
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        primary.setPoolName("primary");
+        return primary;
+    }
+
+    /**
+     * 路由数据源（由主库和从库连接池组成）
+     */
+    @Bean
+    public ReadWriteRoutingDataSource readWriteRoutingDataSource(HikariDataSource primaryDataSource,
+                                                                 DataSourceProperties dataSourceProperties,
+                                                                 DataSourceRoutingProperties routingProperties) {
+        Map<String, HikariDataSource> replicas = new LinkedHashMap<>();
+        int index = 0;
+        for (DataSourceRoutingProperties.Replica replica : routingProperties.getReplicas()) {
+            String name = replica.getName() != null ? replica.getName() : "replica-" + index;
+            index++;
+            HikariDataSource dataSource = new HikariDataSource();
+            primaryDataSource.copyStateTo(dataSource);
+            dataSource.setPoolName(name);
+            dataSource.setDriverClassName(dataSourceProperties.determineDriverClassName());
+            dataSource.setJdbcUrl(replica.getUrl());
+            dataSource.setUsername(replica.getUsername() != null
+                    ? replica.getUsername() : dataSourceProperties.determineUsername());
+            dataSource.setPassword(replica.getPassword() != null
+                    ? replica.getPassword() : dataSourceProperties.determinePassword());
+            dataSource.setMaximumPoolSize(replica.getMaxPoolSize());
+            dataSource.setReadOnly(true);
+            replicas.put(name, dataSource);
+            log.info("已配置从库：{}，URL：{}", name, replica.getUrl());
+        }
+
+        return new ReadWriteRoutingDataSource(primaryDataSource, replicas,
+                routingProperties.getReadYourWritesWindowMs(),
+                routingProperties.getMaxReplicaLagSeconds(),
+                routingProperties.getHealthCheckIntervalMs());
+    }
+
+    /**
+     * 对外暴露的数据源
+     * 延迟获取物理连接：事务开始时不立即取连接，等第一条语句执行时再按读写状态路由
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadWriteRoutingDataSource readWriteRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(readWriteRoutingDataSource);
+    }
+
+    /**
+     * 读写分离拦截器（MyBatis 自动注册容器中的 Interceptor）
+     */
+    @Bean
+    public ReadWriteRoutingInterceptor readWriteRoutingInterceptor(ReadWriteRoutingDataSource readWriteRoutingDataSource) {
+        return new ReadWriteRoutingInterceptor(readWriteRoutingDataSource);
+    }
+}
@@ -0,0 +1,72 @@
+package com.weiki.usercenter.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 读写分离数据源配置
+ */
+@Data
+@ConfigurationProperties(prefix = "datasource.routing")
+public class DataSourceRoutingProperties {
+
+    /**
+     * 是否启用读写分离
+     */
+    private boolean enabled = false;
+
+    /**
+     * 读己之写窗口（毫秒）：用户写入后该时间内的读请求走主库
+     */
+    private long readYourWritesWindowMs = 2000;
+
+    /**
+     * 从库最大允许延迟（秒），超过则暂时摘除
+     */
+    private long maxReplicaLagSeconds = 5;
+
+    /**
+     * 从库健康检查间隔（毫秒）
+     */
+    private long healthCheckIntervalMs = 5000;
+
+    /**
+     * 从库列表
+     */
+    private List<Replica> replicas = new ArrayList<>();
+
+    /**
+     * 从库配置
+     */
+    @Data
+    public static class Replica {
+
+        /**
+         * 从库名称（用于日志和连接池命名）
+         */
+        private String name;
+
+        /**
+         * 连接URL
+         */
+        private String url;
+
+        /**
+         * 用户名（为空时使用主库配置）
+         */
+        private String username;
+
+        /**
+         * 密码（为空时使用主库配置）
+         */
+        private String password;
+
+        /**
+         * 连接池最大连接数
+         */
+        private int maxPoolSize = 10;
+    }
+}
@@ -1,6 +1,7 @@
 package com.weiki.usercenter.config;
 
 import com.weiki.usercenter.filter.AuthenticationFilter;
+import com.weiki.usercenter.filter.ConcurrencyLimitFilter;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -11,6 +12,21 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class FilterConfig {
 
+    /**
+     * 注册并发限制过滤器
+     *
+     * 排在认证过滤器之前，超出并发限制的请求不再查询 Redis 校验 Token
+     */
+    @Bean
+    public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilterRegistration(
+            ConcurrencyLimitFilter concurrencyLimitFilter) {
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration = new FilterRegistrationBean<>();
+        registration.setFilter(concurrencyLimitFilter);
+        registration.setOrder(0);
+        registration.addUrlPatterns("/*");
+        return registration;
+    }
+
     /**
      * 注册认证过滤器
      * 
@@ -26,7 +42,7 @@ public class FilterConfig {
         // 过滤所有请求
         registration.addUrlPatterns("/*");
         // 忽略某些URL（可选）
-        registration.addInitParameter("exclusions", "/api/user/login,/api/user/register,/api/captcha/*,/api/avatar/*");
+        registration.addInitParameter("exclusions", "/api/user/login,/api/user/register,/api/user/account-available,/api/captcha/*,/api/avatar/*");
         return registration;
     }
 }
@@ -2,6 +2,7 @@ package com.weiki.usercenter.config;
 
 import com.weiki.usercenter.entity.Result;
 import com.weiki.usercenter.exception.BusinessException;
+import com.weiki.usercenter.exception.VersionConflictException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.validation.BindException;
 import org.springframework.validation.FieldError;
@@ -56,6 +57,15 @@ public class GlobalExceptionHandler {
         return Result.error(400, msg);
     }
     
+    /**
+     * 处理版本冲突异常，data 中返回当前版本号
+     */
+    @ExceptionHandler(VersionConflictException.class)
+    public Result<Integer> handleVersionConflictException(VersionConflictException e) {
+        log.warn("版本冲突，当前版本：{}", e.getCurrentVersion());
+        return new Result<>(e.getCode(), e.getMessage(), e.getCurrentVersion());
+    }
+
     /**
      * 处理业务异常
      */
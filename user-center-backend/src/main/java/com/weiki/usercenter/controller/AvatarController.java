@@ -0,0 +1,54 @@
+package com.weiki.usercenter.controller;
+
+import com.weiki.usercenter.service.AvatarDeliveryService;
+import com.weiki.usercenter.service.FileUploadService;
+import com.weiki.usercenter.storage.StoredFile;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 头像访问控制器
+ */
+@Api(tags = "头像访问")
+@RestController
+@RequestMapping("/avatar")
+public class AvatarController {
+
+    private final FileUploadService fileUploadService;
+    private final AvatarDeliveryService avatarDeliveryService;
+
+    public AvatarController(FileUploadService fileUploadService, AvatarDeliveryService avatarDeliveryService) {
+        this.fileUploadService = fileUploadService;
+        this.avatarDeliveryService = avatarDeliveryService;
+    }
+
+    /**
+     * 获取头像 - 无需登录
+     * 按 size 返回不小于该尺寸的最小缩略图，旧版头像返回原图
+     * 支持 If-None-Match（304）和 Range（206）
+     */
+    @GetMapping("/{avatarId}")
+    @ApiOperation("获取头像")
+    public void getAvatar(
+            @ApiParam("头像ID") @PathVariable String avatarId,
+            @ApiParam("尺寸（像素），默认128") @RequestParam(defaultValue = "128") int size,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        StoredFile file = fileUploadService.resolveAvatar(avatarId, size);
+        if (file == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        avatarDeliveryService.write(request, response, file, fileUploadService.avatarVersionOf(avatarId, file));
+    }
+}
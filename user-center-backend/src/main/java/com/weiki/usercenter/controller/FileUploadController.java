@@ -1,8 +1,9 @@
 package com.weiki.usercenter.controller;
 
 import com.weiki.usercenter.annotation.RequireRole;
-import com.weiki.usercenter.dto.UserUpdateDTO;
+import com.weiki.usercenter.dto.AvatarUploadJobVO;
 import com.weiki.usercenter.entity.Result;
+import com.weiki.usercenter.service.AvatarUploadJobService;
 import com.weiki.usercenter.service.FileUploadService;
 import com.weiki.usercenter.service.UserService;
 import com.weiki.usercenter.utils.SecurityUtils;
@@ -10,9 +11,17 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Supplier;
+
 /**
  * 文件上传控制器
  */
@@ -24,10 +33,13 @@ public class FileUploadController {
 
     private final FileUploadService fileUploadService;
     private final UserService userService;
+    private final AvatarUploadJobService avatarUploadJobService;
 
-    public FileUploadController(FileUploadService fileUploadService, UserService userService) {
+    public FileUploadController(FileUploadService fileUploadService, UserService userService,
+                                AvatarUploadJobService avatarUploadJobService) {
         this.fileUploadService = fileUploadService;
         this.userService = userService;
+        this.avatarUploadJobService = avatarUploadJobService;
     }
 
     /**
@@ -41,24 +53,122 @@ public class FileUploadController {
             @ApiParam("用户ID") @PathVariable Long userId,
             @ApiParam("头像文件") @RequestParam("file") MultipartFile file) {
 
-        // 权限校验：普通用户只能修改自己的头像，管理员可以修改任意用户的头像
-        Long currentUserId = SecurityUtils.getCurrentUserId();
-        String currentUserRole = SecurityUtils.getCurrentUserRole();
+        if (!canModifyAvatar(userId)) {
+            return Result.error("没有权限修改其他用户的头像");
+        }
+        String avatarUrl = replaceAvatar(userId, () -> fileUploadService.uploadAvatar(file, userId));
+        return Result.success("头像上传成功", avatarUrl);
+    }
 
-        if (!"admin".equals(currentUserRole) && !currentUserId.equals(userId)) {
+    /**
+     * 流式上传用户头像 - 需要登录
+     * 请求体直接是图片内容（不使用 multipart），边读边校验文件头和大小，不在内存中缓冲整个文件
+     */
+    @PutMapping(value = "/avatar/{userId}", consumes = {"image/*", MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    @RequireRole(role = "user", requireLogin = true)
+    @ApiOperation("流式上传用户头像")
+    public Result<String> streamAvatar(
+            @ApiParam("用户ID") @PathVariable Long userId,
+            HttpServletRequest request) throws IOException {
+        // 先校验权限，无权限时不读取请求体
+        if (!canModifyAvatar(userId)) {
             return Result.error("没有权限修改其他用户的头像");
         }
+        InputStream body = request.getInputStream();
+        long contentLength = request.getContentLengthLong();
+        String avatarUrl = replaceAvatar(userId, () -> fileUploadService.uploadAvatar(body, contentLength, userId));
+        return Result.success("头像上传成功", avatarUrl);
+    }
 
-        // 上传头像
-        String avatarUrl = fileUploadService.uploadAvatar(file, userId);
+    /**
+     * 异步上传用户头像 - 需要登录
+     * 接收并校验文件后立即返回 202 和任务ID，解码、生成缩略图和更新用户信息在后台完成；未受理时按普通错误返回
+     */
+    @PostMapping("/avatar/{userId}/async")
+    @RequireRole(role = "user", requireLogin = true)
+    @ApiOperation("异步上传用户头像")
+    public ResponseEntity<Result<String>> uploadAvatarAsync(
+            @ApiParam("用户ID") @PathVariable Long userId,
+            @ApiParam("头像文件") @RequestParam("file") MultipartFile file) {
 
-        // 更新用户头像到数据库
-        UserUpdateDTO updateDTO = new UserUpdateDTO();
-        updateDTO.setAvatarUrl(avatarUrl);
-        userService.updateUser(userId, updateDTO);
+        if (!canModifyAvatar(userId)) {
+            return ResponseEntity.ok(Result.error("没有权限修改其他用户的头像"));
+        }
+        String jobId = avatarUploadJobService.submit(userId, () -> fileUploadService.stageAvatar(file, userId));
+        return accepted(jobId);
+    }
 
-        log.info("用户头像上传成功，用户ID：{}，头像URL：{}", userId, avatarUrl);
+    /**
+     * 异步流式上传用户头像 - 需要登录
+     * 请求体直接是图片内容，接收并校验后立即返回 202 和任务ID；未受理时按普通错误返回
+     */
+    @PutMapping(value = "/avatar/{userId}/async", consumes = {"image/*", MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    @RequireRole(role = "user", requireLogin = true)
+    @ApiOperation("异步流式上传用户头像")
+    public ResponseEntity<Result<String>> streamAvatarAsync(
+            @ApiParam("用户ID") @PathVariable Long userId,
+            HttpServletRequest request) throws IOException {
+        if (!canModifyAvatar(userId)) {
+            return ResponseEntity.ok(Result.error("没有权限修改其他用户的头像"));
+        }
+        InputStream body = request.getInputStream();
+        long contentLength = request.getContentLengthLong();
+        String jobId = avatarUploadJobService.submit(userId,
+                () -> fileUploadService.stageAvatar(body, contentLength, userId));
+        return accepted(jobId);
+    }
 
-        return Result.success("头像上传成功", avatarUrl);
+    /**
+     * 查询异步上传任务状态 - 需要登录
+     * 普通用户只能查询自己的任务
+     */
+    @GetMapping("/avatar/jobs/{jobId}")
+    @RequireRole(role = "user", requireLogin = true)
+    @ApiOperation("查询异步头像上传任务")
+    public Result<AvatarUploadJobVO> getAvatarJob(@ApiParam("任务ID") @PathVariable String jobId) {
+        AvatarUploadJobVO job = avatarUploadJobService.getJob(jobId);
+        if (job == null || !canModifyAvatar(job.getUserId())) {
+            return Result.error("任务不存在或已过期");
+        }
+        return Result.success(job);
+    }
+
+    /**
+     * 任务已受理：202 和任务ID
+     */
+    private static ResponseEntity<Result<String>> accepted(String jobId) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(Result.success("头像已接收，正在处理", jobId));
+    }
+
+    /**
+     * 权限校验：普通用户只能修改自己的头像，管理员可以修改任意用户的头像
+     */
+    private boolean canModifyAvatar(Long userId) {
+        Long currentUserId = SecurityUtils.getCurrentUserId();
+        String currentUserRole = SecurityUtils.getCurrentUserRole();
+        return "admin".equals(currentUserRole) || currentUserId.equals(userId);
+    }
+
+    /**
+     * 上传新头像并写入用户信息（相同内容的图片只存一份，按引用计数）
+     *
+     * 与异步上传一样通过 replaceAvatarUrl 按版本号替换，释放的一定是被本次替换掉的原头像，
+     * 并发上传时不会释放错
+     */
+    private String replaceAvatar(Long userId, Supplier<String> upload) {
+        String avatarUrl = upload.get();
+
+        // 更新用户头像到数据库，成功后释放原头像的引用
+        String previousAvatarUrl;
+        try {
+            previousAvatarUrl = userService.replaceAvatarUrl(userId, avatarUrl);
+        } catch (RuntimeException e) {
+            fileUploadService.releaseAvatar(avatarUrl);
+            throw e;
+        }
+        fileUploadService.releaseAvatar(previousAvatarUrl);
+
+        log.info("用户头像上传成功，用户ID：{}，头像URL：{}", userId, avatarUrl);
+        return avatarUrl;
     }
 }
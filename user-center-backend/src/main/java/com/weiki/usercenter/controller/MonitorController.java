@@ -0,0 +1,227 @@
+package com.weiki.usercenter.controller;
+
+import com.weiki.usercenter.annotation.RequireRole;
+import com.weiki.usercenter.aop.BulkheadAspect;
+import com.weiki.usercenter.dto.SlowQueryVO;
+import com.weiki.usercenter.dto.SqlStatsVO;
+import com.weiki.usercenter.entity.Result;
+import com.weiki.usercenter.filter.ConcurrencyLimitFilter;
+import com.weiki.usercenter.monitor.SqlMetricsRegistry;
+import com.weiki.usercenter.service.AvatarDeliveryService;
+import com.weiki.usercenter.service.AvatarGarbageCollector;
+import com.weiki.usercenter.service.AvatarMigrationService;
+import com.weiki.usercenter.service.AvatarUploadJobService;
+import com.weiki.usercenter.service.LoginEventService;
+import com.weiki.usercenter.service.PasswordHashService;
+import com.weiki.usercenter.service.UserArchiveService;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 运行监控接口控制器
+ */
+@Api(tags = "运行监控")
+@RestController
+@RequestMapping("/monitor")
+public class MonitorController {
+
+    private final SqlMetricsRegistry sqlMetricsRegistry;
+    private final LoginEventService loginEventService;
+    private final UserArchiveService userArchiveService;
+    private final PasswordHashService passwordHashService;
+    private final AvatarGarbageCollector avatarGarbageCollector;
+    private final AvatarDeliveryService avatarDeliveryService;
+    private final AvatarMigrationService avatarMigrationService;
+    private final AvatarUploadJobService avatarUploadJobService;
+    private final ConcurrencyLimitFilter concurrencyLimitFilter;
+    private final BulkheadAspect bulkheadAspect;
+
+    public MonitorController(SqlMetricsRegistry sqlMetricsRegistry, LoginEventService loginEventService,
+                             UserArchiveService userArchiveService, PasswordHashService passwordHashService,
+                             AvatarGarbageCollector avatarGarbageCollector,
+                             AvatarDeliveryService avatarDeliveryService,
+                             AvatarMigrationService avatarMigrationService,
+                             AvatarUploadJobService avatarUploadJobService,
+                             ConcurrencyLimitFilter concurrencyLimitFilter,
+                             BulkheadAspect bulkheadAspect) {
+        this.sqlMetricsRegistry = sqlMetricsRegistry;
+        this.loginEventService = loginEventService;
+        this.userArchiveService = userArchiveService;
+        this.passwordHashService = passwordHashService;
+        this.avatarGarbageCollector = avatarGarbageCollector;
+        this.avatarDeliveryService = avatarDeliveryService;
+        this.avatarMigrationService = avatarMigrationService;
+        this.avatarUploadJobService = avatarUploadJobService;
+        this.concurrencyLimitFilter = concurrencyLimitFilter;
+        this.bulkheadAspect = bulkheadAspect;
+    }
+
+    /**
+     * 按语句汇总的SQL执行统计 - 需要管理员权限
+     */
+    @GetMapping("/sql")
+    @RequireRole(role = "admin", requireLogin = true)
+    @ApiOperation("SQL执行统计")
+    public Result<List<SqlStatsVO>> sqlStats() {
+        return Result.success(sqlMetricsRegistry.snapshot());
+    }
+
+    /**
+     * 最近的慢SQL及执行计划 - 需要管理员权限
+     */
+    @GetMapping("/sql/slow")
+    @RequireRole(role = "admin", requireLogin = true)
+    @ApiOperation("最近的慢SQL")
+    public Result<List<SlowQueryVO>> slowQueries() {
+        return Result.success(sqlMetricsRegistry.recentSlowQueries());
+    }
+
+    /**
+     * 清空SQL统计 - 需要管理员权限
+     */
+    @DeleteMapping("/sql")
+    @RequireRole(role = "admin", requireLogin = true)
+    @ApiOperation("清空SQL统计")
+    public Result<Void> resetSqlStats() {
+        sqlMetricsRegistry.reset();
+        return Result.success("已清空");
+    }
+
+    /**
+     * 登录日志写入队列统计（排队、丢弃、写入、失败数） - 需要管理员权限
+     */
+    @GetMapping("/login-events")
+    @RequireRole(role = "admin", requireLogin = true)
+    @ApiOperation("登录日志写入统计")
+    public Result<Map<String, Long>> loginEventStats() {
+        return Result.success(loginEventService.getStats());
+    }
+
+    /**
+     * 密码哈希线程池统计（排队、拒绝、超时、平均耗时） - 需要管理员权限
+     */
+    @GetMapping("/password-hash")
+    @RequireRole(role = "admin", requireLogin = true)
+    @ApiOperation("密码哈希线程池统计")
+    public Result<Map<String, Long>> passwordHashStats() {
+        return Result.success(passwordHashService.getStats());
+    }
+
+    /**
+     * 用户归档统计（累计归档数、最近一次执行情况） - 需要管理员权限
+     */
+    @GetMapping("/user-archive")
+    @RequireRole(role = "admin", requireLogin = true)
+    @ApiOperation("用户归档统计")
+    public Result<Map<String, Long>> userArchiveStats() {
+        return Result.success(userArchiveService.getStats());
+    }
+
+    /**
+     * 立即执行一次用户归档 - 需要管理员权限
+     */
+    @PostMapping("/user-archive")
+    @RequireRole(role = "admin", requireLogin = true)
+    @ApiOperation("立即执行用户归档")
+    public Result<Long> runUserArchive() {
+        long archived = userArchiveService.archive();
+        if (archived < 0) {
+            return Result.error("归档任务正在执行");
+        }
+        return Result.success(archived);
+    }
+
+    /**
+     * 头像回收统计（删除、修正引用、清理未登记数） - 需要管理员权限
+     */
+    @GetMapping("/avatar-gc")
+    @RequireRole(role = "admin", requireLogin = true)
+    @ApiOperation("头像回收统计")
+    public Result<Map<String, Long>> avatarGcStats() {
+        return Result.success(avatarGarbageCollector.getStats());
+    }
+
+    /**
+     * 立即执行一次头像回收 - 需要管理员权限
+     */
+    @PostMapping("/avatar-gc")
+    @RequireRole(role = "admin", requireLogin = true)
+    @ApiOperation("立即执行头像回收")
+    public Result<Long> runAvatarGc() {
+        long deleted = avatarGarbageCollector.collect();
+        if (deleted < 0) {
+            return Result.error("回收任务正在执行");
+        }
+        return Result.success(deleted);
+    }
+
+    /**
+     * 头像输出统计（304、206、sendfile 次数、发送字节数和堆外缓存命中情况） - 需要管理员权限
+     */
+    @GetMapping("/avatar-delivery")
+    @RequireRole(role = "admin", requireLogin = true)
+    @ApiOperation("头像输出统计")
+    public Result<Map<String, Long>> avatarDeliveryStats() {
+        return Result.success(avatarDeliveryService.getStats());
+    }
+
+    /**
+     * 内联头像迁移统计 - 需要管理员权限
+     */
+    @GetMapping("/avatar-migration")
+    @RequireRole(role = "admin", requireLogin = true)
+    @ApiOperation("内联头像迁移统计")
+    public Result<Map<String, Long>> avatarMigrationStats() {
+        return Result.success(avatarMigrationService.getStats());
+    }
+
+    /**
+     * 立即执行一次内联头像迁移 - 需要管理员权限
+     */
+    @PostMapping("/avatar-migration")
+    @RequireRole(role = "admin", requireLogin = true)
+    @ApiOperation("立即执行内联头像迁移")
+    public Result<Long> runAvatarMigration(
+            @ApiParam("是否清除进度从头扫描") @RequestParam(defaultValue = "false") boolean restart) {
+        long migrated = avatarMigrationService.migrate(restart);
+        if (migrated < 0) {
+            return Result.error("迁移任务正在执行");
+        }
+        return Result.success(migrated);
+    }
+
+    /**
+     * 异步头像上传统计（线程池排队情况、成功/失败/被取代/拒绝次数） - 需要管理员权限
+     */
+    @GetMapping("/avatar-upload")
+    @RequireRole(role = "admin", requireLogin = true)
+    @ApiOperation("异步头像上传统计")
+    public Result<Map<String, Long>> avatarUploadStats() {
+        return Result.success(avatarUploadJobService.getStats());
+    }
+
+    /**
+     * 并发限制统计（当前限制、处理中请求数、响应时间基线、各优先级准入/拒绝次数） - 需要管理员权限
+     */
+    @GetMapping("/concurrency-limit")
+    @RequireRole(role = "admin", requireLogin = true)
+    @ApiOperation("并发限制统计")
+    public Result<Map<String, Long>> concurrencyLimitStats() {
+        return Result.success(concurrencyLimitFilter.getStats());
+    }
+
+    /**
+     * 隔离舱统计（各分区执行中、排队数、排队时间分位数、拒绝次数和连接配额使用情况） - 需要管理员权限
+     */
+    @GetMapping("/bulkhead")
+    @RequireRole(role = "admin", requireLogin = true)
+    @ApiOperation("隔离舱统计")
+    public Result<Map<String, Long>> bulkheadStats() {
+        return Result.success(bulkheadAspect.getStats());
+    }
+}
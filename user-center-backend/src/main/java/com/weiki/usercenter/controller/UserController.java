@@ -1,15 +1,20 @@
 package com.weiki.usercenter.controller;
 
+import com.weiki.usercenter.annotation.Bulkhead;
 import com.weiki.usercenter.annotation.RequireRole;
 import com.weiki.usercenter.dto.*;
 import com.weiki.usercenter.entity.PageVO;
 import com.weiki.usercenter.entity.Result;
+import com.weiki.usercenter.exception.BusinessException;
+import com.weiki.usercenter.service.UserImportService;
 import com.weiki.usercenter.service.UserService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import java.util.List;
 
@@ -22,35 +27,55 @@ import java.util.List;
 public class UserController {
     
     private final UserService userService;
+    private final UserImportService userImportService;
     
-    public UserController(UserService userService) {
+    public UserController(UserService userService, UserImportService userImportService) {
         this.userService = userService;
+        this.userImportService = userImportService;
     }
     
     /**
      * 用户注册接口 - 公开接口
      */
     @PostMapping("/register")
+    @Bulkhead(Bulkhead.AUTH)
     @ApiOperation("用户注册")
-    public Result<Long> register(@Valid @RequestBody UserRegisterDTO registerDTO) {
+    public Result<String> register(@Valid @RequestBody UserRegisterDTO registerDTO) {
         Long userId = userService.register(registerDTO);
-        return Result.success("注册成功", userId);
+        // 与 UserVO.id 一样按字符串返回
+        return Result.success("注册成功", String.valueOf(userId));
     }
     
     /**
      * 用户登录接口 - 公开接口
      */
     @PostMapping("/login")
+    @Bulkhead(Bulkhead.AUTH)
     @ApiOperation("用户登录")
     public Result<LoginVO> login(@Valid @RequestBody UserLoginDTO loginDTO) {
         LoginVO loginVO = userService.login(loginDTO);
         return Result.success("登录成功", loginVO);
     }
     
+    /**
+     * 检查账号是否可注册 - 公开接口
+     */
+    @GetMapping("/account-available")
+    @Bulkhead(Bulkhead.AUTH)
+    @ApiOperation("检查账号是否可注册")
+    public Result<Boolean> isAccountAvailable(
+            @ApiParam(value = "用户账号", required = true) @RequestParam String userAccount) {
+        if (userAccount.isBlank()) {
+            throw new BusinessException("账号不能为空");
+        }
+        return Result.success(userService.isAccountAvailable(userAccount));
+    }
+
     /**
      * 用户登出接口 - 需要登录
      */
     @PostMapping("/logout")
+    @Bulkhead(Bulkhead.AUTH)
     @RequireRole(role = "user", requireLogin = true)
     @ApiOperation("用户登出")
     public Result<Void> logout(@RequestParam Long userId) {
@@ -62,6 +87,7 @@ public class UserController {
      * 获取当前登录用户信息 - 需要登录（用于验证 token 是否有效）
      */
     @GetMapping("/current")
+    @Bulkhead(Bulkhead.SELF_SERVICE)
     @RequireRole(role = "user", requireLogin = true)
     @ApiOperation("获取当前登录用户信息")
     public Result<UserVO> getCurrentUser() {
@@ -73,17 +99,36 @@ public class UserController {
      * 获取用户详情 - 需要登录
      */
     @GetMapping("/{id}")
+    @Bulkhead(Bulkhead.SELF_SERVICE)
     @RequireRole(role = "user", requireLogin = true)
     @ApiOperation("获取用户详情")
     public Result<UserVO> getUserById(@ApiParam("用户ID") @PathVariable Long id) {
         UserVO user = userService.getUserById(id);
         return Result.success(user);
     }
+
+    /**
+     * 分页获取用户登录历史 - 需要登录（普通用户只能查看自己的）
+     */
+    @GetMapping("/{id}/login-history")
+    @Bulkhead(Bulkhead.SELF_SERVICE)
+    @RequireRole(role = "user", requireLogin = true)
+    @ApiOperation("分页获取用户登录历史")
+    public Result<PageVO<LoginLogVO>> getLoginHistory(
+            @ApiParam("用户ID") @PathVariable Long id,
+            @RequestParam(defaultValue = "1") Integer page,
+            @RequestParam(defaultValue = "10") Integer size) {
+        if (page < 1 || size < 1 || size > 100) {
+            throw new BusinessException("分页参数不合法");
+        }
+        return Result.success(userService.getLoginHistory(id, page, size));
+    }
     
     /**
      * 获取用户列表 - 需要管理员权限
      */
     @GetMapping
+    @Bulkhead(Bulkhead.ADMIN_BULK)
     @RequireRole(role = "admin", requireLogin = true)
     @ApiOperation("获取用户列表")
     public Result<List<UserVO>> getAllUsers() {
@@ -91,10 +136,38 @@ public class UserController {
         return Result.success(users);
     }
     
+    /**
+     * 流式导出用户列表 - 需要管理员权限
+     * 数据逐行写入响应流，格式支持 ndjson（默认）和 csv
+     */
+    @GetMapping("/export")
+    @Bulkhead(Bulkhead.ADMIN_BULK)
+    @RequireRole(role = "admin", requireLogin = true)
+    @ApiOperation("导出用户列表")
+    public void exportUsers(
+            @ApiParam("导出格式：ndjson/csv") @RequestParam(defaultValue = "ndjson") String format,
+            HttpServletResponse response) {
+        userService.exportUsers(format, response);
+    }
+    
+    /**
+     * 批量导入用户 - 需要管理员权限
+     * 支持 CSV（首行表头：username,userAccount,userPassword,gender,phone,email）和 NDJSON
+     */
+    @PostMapping("/import")
+    @Bulkhead(Bulkhead.ADMIN_BULK)
+    @RequireRole(role = "admin", requireLogin = true)
+    @ApiOperation("批量导入用户")
+    public Result<UserImportResultVO> importUsers(@ApiParam("导入文件") @RequestParam("file") MultipartFile file) {
+        UserImportResultVO result = userImportService.importUsers(file);
+        return Result.success("导入完成", result);
+    }
+    
     /**
      * 分页获取用户列表 - 需要管理员权限
      */
     @GetMapping("/page")
+    @Bulkhead(Bulkhead.ADMIN_BULK)
     @RequireRole(role = "admin", requireLogin = true)
     @ApiOperation("分页获取用户列表")
     public Result<PageVO<UserVO>> getUsersByPage(
@@ -113,6 +186,7 @@ public class UserController {
      * 搜索用户 - 需要管理员权限
      */
     @GetMapping("/search")
+    @Bulkhead(Bulkhead.ADMIN_BULK)
     @RequireRole(role = "admin", requireLogin = true)
     @ApiOperation("搜索用户")
     public Result<List<UserVO>> searchUsers(@ApiParam("用户名") @RequestParam String username) {
@@ -124,6 +198,7 @@ public class UserController {
      * 更新用户信息 - 普通用户只能修改自己的信息，管理员可以修改任意用户信息
      */
     @PutMapping("/{id}")
+    @Bulkhead(Bulkhead.SELF_SERVICE)
     @RequireRole(role = "user", requireLogin = true)
     @ApiOperation("更新用户信息")
     public Result<Boolean> updateUser(
@@ -137,6 +212,7 @@ public class UserController {
      * 更新用户密码 - 需要登录
      */
     @PutMapping("/{id}/password")
+    @Bulkhead(Bulkhead.SELF_SERVICE)
     @RequireRole(role = "user", requireLogin = true)
     @ApiOperation("修改用户密码")
     public Result<Boolean> updatePassword(
@@ -151,12 +227,13 @@ public class UserController {
      * 管理员重置用户密码 - 需要管理员权限
      */
     @PutMapping("/{id}/reset-password")
+    @Bulkhead(Bulkhead.SELF_SERVICE)
     @RequireRole(role = "admin", requireLogin = true)
     @ApiOperation("管理员重置用户密码")
     public Result<Boolean> resetPassword(
             @ApiParam("用户ID") @PathVariable Long id,
             @Valid @RequestBody PasswordResetDTO resetDTO) {
-        boolean success = userService.resetPassword(id, resetDTO.getNewPassword());
+        boolean success = userService.resetPassword(id, resetDTO.getNewPassword(), resetDTO.getVersion());
         return Result.success("密码重置成功", success);
     }
     
@@ -164,10 +241,60 @@ public class UserController {
      * 删除用户 - 普通用户只能删除自己的账号，管理员可以删除任意用户账号
      */
     @DeleteMapping("/{id}")
+    @Bulkhead(Bulkhead.SELF_SERVICE)
     @RequireRole(role = "user", requireLogin = true)
     @ApiOperation("删除用户")
-    public Result<Boolean> deleteUser(@ApiParam("用户ID") @PathVariable Long id) {
-        boolean success = userService.deleteUser(id);
+    public Result<Boolean> deleteUser(@ApiParam("用户ID") @PathVariable Long id,
+                                      @ApiParam("版本号（可选，用于检测并发修改）") @RequestParam(required = false) Integer version) {
+        boolean success = userService.deleteUser(id, version);
         return Result.success("删除成功", success);
     }
-}
\ No newline at end of file
+
+    /**
+     * 批量删除用户 - 需要管理员权限
+     */
+    @PostMapping("/batch/delete")
+    @Bulkhead(Bulkhead.ADMIN_BULK)
+    @RequireRole(role = "admin", requireLogin = true)
+    @ApiOperation("批量删除用户")
+    public Result<BatchResultVO> batchDeleteUsers(@Valid @RequestBody UserBatchDTO batchDTO) {
+        BatchResultVO result = userService.batchDeleteUsers(batchDTO.getIds());
+        return Result.success("批量删除成功", result);
+    }
+
+    /**
+     * 批量修改用户角色 - 需要管理员权限
+     */
+    @PutMapping("/batch/role")
+    @Bulkhead(Bulkhead.ADMIN_BULK)
+    @RequireRole(role = "admin", requireLogin = true)
+    @ApiOperation("批量修改用户角色")
+    public Result<BatchResultVO> batchUpdateRole(@Valid @RequestBody UserBatchDTO batchDTO) {
+        BatchResultVO result = userService.batchUpdateRole(batchDTO.getIds(), batchDTO.getUserRole());
+        return Result.success("批量修改角色成功", result);
+    }
+
+    /**
+     * 批量重置用户密码 - 需要管理员权限
+     */
+    @PutMapping("/batch/reset-password")
+    @Bulkhead(Bulkhead.ADMIN_BULK)
+    @RequireRole(role = "admin", requireLogin = true)
+    @ApiOperation("批量重置用户密码")
+    public Result<BatchResultVO> batchResetPassword(@Valid @RequestBody UserBatchDTO batchDTO) {
+        BatchResultVO result = userService.batchResetPassword(batchDTO.getIds(), batchDTO.getNewPassword());
+        return Result.success("批量重置密码成功", result);
+    }
+
+    /**
+     * 批量强制登出用户 - 需要管理员权限
+     */
+    @PostMapping("/batch/logout")
+    @Bulkhead(Bulkhead.ADMIN_BULK)
+    @RequireRole(role = "admin", requireLogin = true)
+    @ApiOperation("批量强制登出用户")
+    public Result<BatchResultVO> batchLogout(@Valid @RequestBody UserBatchDTO batchDTO) {
+        BatchResultVO result = userService.batchLogout(batchDTO.getIds());
+        return Result.success("批量登出成功", result);
+    }
+}
@@ -0,0 +1,33 @@
+package com.weiki.usercenter.datasource;
+
+/**
+ * 隔离舱上下文
+ * 记录当前线程所在的隔离舱分区（由 BulkheadAspect 设置），获取数据库连接时按分区的连接配额限制
+ */
+public class BulkheadContextHolder {
+
+    private static final ThreadLocal<String> PARTITION = new ThreadLocal<>();
+
+    private BulkheadContextHolder() {
+    }
+
+    /**
+     * 设置当前分区，返回之前的值（用于嵌套调用时恢复）
+     */
+    public static String set(String partition) {
+        String previous = PARTITION.get();
+        if (partition == null) {
+            PARTITION.remove();
+        } else {
+            PARTITION.set(partition);
+        }
+        return previous;
+    }
+
+    /**
+     * 当前分区，不在任何分区内时返回null
+     */
+    public static String get() {
+        return PARTITION.get();
+    }
+}
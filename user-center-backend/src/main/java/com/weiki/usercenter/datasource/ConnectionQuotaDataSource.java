@@ -0,0 +1,133 @@
+package com.weiki.usercenter.datasource;
+
+import com.weiki.usercenter.config.BulkheadProperties;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按隔离舱分区限制连接数的数据源
+ *
+ * 所有分区共用同一个物理连接池，但每个分区同时持有的连接数不超过 max-connections：
+ * 当前线程在某个分区内（BulkheadContextHolder）时，先占用该分区的连接配额再从连接池获取连接，连接关闭时归还配额。
+ * 配额之和不超过连接池大小时，一个分区的慢查询不会占满其他分区需要的连接；
+ * 不在任何分区内的调用（定时任务、其他接口）和未配置配额的分区不受限制
+ */
+public class ConnectionQuotaDataSource extends DelegatingDataSource {
+
+    private final Map<String, Quota> quotas = new LinkedHashMap<>();
+
+    public ConnectionQuotaDataSource(DataSource target, Map<String, BulkheadProperties.Partition> partitions) {
+        super(target);
+        partitions.forEach((name, partition) -> {
+            if (partition.getMaxConnections() > 0) {
+                quotas.put(name, new Quota(partition.getMaxConnections(), partition.getConnectionWaitMs()));
+            }
+        });
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Quota quota = currentQuota();
+        return quota == null ? super.getConnection() : quota.wrap(super::getConnection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        Quota quota = currentQuota();
+        return quota == null
+                ? super.getConnection(username, password)
+                : quota.wrap(() -> super.getConnection(username, password));
+    }
+
+    /**
+     * 各分区的连接配额使用情况
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        quotas.forEach((name, quota) -> {
+            stats.put(name + ".maxConnections", (long) quota.maxConnections);
+            stats.put(name + ".connectionsInUse", (long) (quota.maxConnections - quota.permits.availablePermits()));
+            stats.put(name + ".connectionTimeouts", quota.timedOut.sum());
+        });
+        return stats;
+    }
+
+    private Quota currentQuota() {
+        String partition = BulkheadContextHolder.get();
+        return partition == null ? null : quotas.get(partition);
+    }
+
+    /**
+     * 获取连接的操作
+     */
+    private interface ConnectionSupplier {
+        Connection get() throws SQLException;
+    }
+
+    /**
+     * 单个分区的连接配额
+     */
+    private static class Quota {
+        private final int maxConnections;
+        private final long waitMillis;
+        private final Semaphore permits;
+        private final LongAdder timedOut = new LongAdder();
+
+        private Quota(int maxConnections, long waitMillis) {
+            this.maxConnections = maxConnections;
+            this.waitMillis = waitMillis;
+            this.permits = new Semaphore(maxConnections, true);
+        }
+
+        /**
+         * 占用配额后获取连接，返回的连接关闭时归还配额
+         */
+        private Connection wrap(ConnectionSupplier supplier) throws SQLException {
+            try {
+                if (!permits.tryAcquire(waitMillis, TimeUnit.MILLISECONDS)) {
+                    timedOut.increment();
+                    throw new SQLTransientConnectionException("数据库连接配额已用尽：" + BulkheadContextHolder.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLTransientConnectionException("等待数据库连接配额时被中断", e);
+            }
+            Connection connection;
+            try {
+                connection = supplier.get();
+            } catch (SQLException | RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+            AtomicBoolean released = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        if ("close".equals(method.getName()) && released.compareAndSet(false, true)) {
+                            try {
+                                connection.close();
+                            } finally {
+                                permits.release();
+                            }
+                            return null;
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getTargetException();
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.weiki.usercenter.datasource;
+
+import java.util.function.Supplier;
+
+/**
+ * 数据源路由上下文
+ * 记录当前线程正在执行的语句是读还是写，供路由数据源选择目标库；
+ * 结果会被共享（如写入缓存）或用于安全判断的读可以通过 callOnPrimary 强制走主库
+ */
+public class DataSourceContextHolder {
+
+    private static final ThreadLocal<Boolean> READ_ONLY = new ThreadLocal<>();
+
+    private static final ThreadLocal<Boolean> FORCE_PRIMARY = new ThreadLocal<>();
+
+    private DataSourceContextHolder() {
+    }
+
+    /**
+     * 设置当前语句是否只读，返回之前的值（用于嵌套调用时恢复）
+     */
+    public static Boolean set(Boolean readOnly) {
+        Boolean previous = READ_ONLY.get();
+        if (readOnly == null) {
+            READ_ONLY.remove();
+        } else {
+            READ_ONLY.set(readOnly);
+        }
+        return previous;
+    }
+
+    /**
+     * 当前语句是否只读（未设置时视为写，走主库）
+     */
+    public static boolean isReadOnly() {
+        return Boolean.TRUE.equals(READ_ONLY.get());
+    }
+
+    /**
+     * 在主库上执行（其中的只读语句也不走从库）
+     */
+    public static <T> T callOnPrimary(Supplier<T> action) {
+        Boolean previous = FORCE_PRIMARY.get();
+        FORCE_PRIMARY.set(Boolean.TRUE);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                FORCE_PRIMARY.remove();
+            } else {
+                FORCE_PRIMARY.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 当前是否强制走主库
+     */
+    public static boolean isPrimaryForced() {
+        return Boolean.TRUE.equals(FORCE_PRIMARY.get());
+    }
+}
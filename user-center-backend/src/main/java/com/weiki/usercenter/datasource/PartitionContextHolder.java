@@ -0,0 +1,34 @@
+package com.weiki.usercenter.datasource;
+
+/**
+ * 用户表分区上下文
+ * 显式指定当前线程的语句访问哪个分区（用于分散-聚合查询和按分区分组的批量操作），
+ * 未指定时由拦截器根据参数中的用户ID或账号计算
+ */
+public class PartitionContextHolder {
+
+    private static final ThreadLocal<Integer> PARTITION = new ThreadLocal<>();
+
+    private PartitionContextHolder() {
+    }
+
+    /**
+     * 设置当前分区，返回之前的值（用于嵌套调用时恢复）
+     */
+    public static Integer set(Integer partition) {
+        Integer previous = PARTITION.get();
+        if (partition == null) {
+            PARTITION.remove();
+        } else {
+            PARTITION.set(partition);
+        }
+        return previous;
+    }
+
+    /**
+     * 当前显式指定的分区，未指定返回null
+     */
+    public static Integer get() {
+        return PARTITION.get();
+    }
+}
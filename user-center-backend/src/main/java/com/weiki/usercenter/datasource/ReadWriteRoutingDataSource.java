@@ -0,0 +1,238 @@
+package com.weiki.usercenter.datasource;
+
+import com.weiki.usercenter.utils.SecurityUtils;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 读写分离路由数据源
+ *
+ * 路由规则：
+ * - 读写事务内的所有语句、以及所有写语句 → 主库
+ * - DataSourceContextHolder.callOnPrimary 内的语句（如用户缓存回源、读取密码哈希） → 主库
+ * - 当前用户在读己之写窗口内 → 主库
+ * - 其余只读语句 → 健康且延迟未超限的从库中活跃连接最少的一个
+ * - 没有可用从库时回退主库
+ */
+@Slf4j
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+
+    /**
+     * 主库的路由Key
+     */
+    public static final String PRIMARY = "primary";
+
+    private final HikariDataSource primary;
+    private final List<ReplicaNode> replicas;
+    private final long readYourWritesWindowMillis;
+    private final long maxReplicaLagSeconds;
+
+    /**
+     * 用户ID → 读己之写窗口的截止时间
+     */
+    private final Map<Long, Long> recentWriters = new ConcurrentHashMap<>();
+
+    /**
+     * 活跃连接数相同时轮询
+     */
+    private final AtomicInteger roundRobin = new AtomicInteger();
+
+    private final ScheduledExecutorService healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "replica-health-check");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ReadWriteRoutingDataSource(HikariDataSource primary,
+                                      Map<String, HikariDataSource> replicaDataSources,
+                                      long readYourWritesWindowMillis,
+                                      long maxReplicaLagSeconds,
+                                      long healthCheckIntervalMillis) {
+        this.primary = primary;
+        this.readYourWritesWindowMillis = readYourWritesWindowMillis;
+        this.maxReplicaLagSeconds = maxReplicaLagSeconds;
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        List<ReplicaNode> nodes = new ArrayList<>();
+        for (Map.Entry<String, HikariDataSource> entry : replicaDataSources.entrySet()) {
+            targets.put(entry.getKey(), entry.getValue());
+            nodes.add(new ReplicaNode(entry.getKey(), entry.getValue()));
+        }
+        this.replicas = nodes;
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+
+        if (!nodes.isEmpty()) {
+            healthChecker.scheduleWithFixedDelay(this::checkReplicas, 0, healthCheckIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!DataSourceContextHolder.isReadOnly() || DataSourceContextHolder.isPrimaryForced()) {
+            return PRIMARY;
+        }
+        // 读写事务内的读也走主库，保证事务内读到自己的写入
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        if (isInReadYourWritesWindow(SecurityUtils.peekCurrentUserId())) {
+            return PRIMARY;
+        }
+        ReplicaNode replica = pickReplica();
+        return replica != null ? replica.name : PRIMARY;
+    }
+
+    /**
+     * 记录用户的写操作，开启读己之写窗口
+     */
+    public void recordWrite(Long userId) {
+        if (userId != null && readYourWritesWindowMillis > 0) {
+            recentWriters.put(userId, System.currentTimeMillis() + readYourWritesWindowMillis);
+        }
+    }
+
+    private boolean isInReadYourWritesWindow(Long userId) {
+        if (userId == null) {
+            return false;
+        }
+        Long deadline = recentWriters.get(userId);
+        if (deadline == null) {
+            return false;
+        }
+        if (deadline < System.currentTimeMillis()) {
+            recentWriters.remove(userId, deadline);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 在可用从库中选择活跃连接数最少的一个
+     */
+    private ReplicaNode pickReplica() {
+        int size = replicas.size();
+        if (size == 0) {
+            return null;
+        }
+        int start = Math.floorMod(roundRobin.getAndIncrement(), size);
+        ReplicaNode best = null;
+        int bestActive = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            ReplicaNode node = replicas.get((start + i) % size);
+            if (!node.available) {
+                continue;
+            }
+            int active = node.activeConnections();
+            if (active < bestActive) {
+                best = node;
+                bestActive = active;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 检查所有从库的连通性和复制延迟
+     */
+    private void checkReplicas() {
+        long now = System.currentTimeMillis();
+        recentWriters.values().removeIf(deadline -> deadline < now);
+
+        for (ReplicaNode node : replicas) {
+            boolean available;
+            try (Connection connection = node.dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                Long lag = readReplicationLag(statement);
+                available = lag != null && lag <= maxReplicaLagSeconds;
+                if (!available) {
+                    log.warn("从库 {} 复制延迟过大或复制已停止，暂时摘除，延迟：{}秒", node.name, lag);
+                }
+            } catch (SQLException e) {
+                available = false;
+                log.warn("从库 {} 健康检查失败，暂时摘除：{}", node.name, e.getMessage());
+            }
+            if (available && !node.available) {
+                log.info("从库 {} 恢复可用", node.name);
+            }
+            node.available = available;
+        }
+    }
+
+    /**
+     * 读取复制延迟（秒）
+     * 未配置复制的实例（如本地两个独立实例测试）视为无延迟；复制停止时返回null
+     */
+    private Long readReplicationLag(Statement statement) throws SQLException {
+        ResultSet resultSet;
+        try {
+            resultSet = statement.executeQuery("SHOW REPLICA STATUS");
+        } catch (SQLException e) {
+            // MySQL 8.0.22 之前的版本
+            resultSet = statement.executeQuery("SHOW SLAVE STATUS");
+        }
+        try (ResultSet rs = resultSet) {
+            if (!rs.next()) {
+                return 0L;
+            }
+            ResultSetMetaData metaData = rs.getMetaData();
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                String column = metaData.getColumnLabel(i);
+                if ("Seconds_Behind_Source".equalsIgnoreCase(column) || "Seconds_Behind_Master".equalsIgnoreCase(column)) {
+                    long lag = rs.getLong(i);
+                    return rs.wasNull() ? null : lag;
+                }
+            }
+            return 0L;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        healthChecker.shutdownNow();
+        for (ReplicaNode node : replicas) {
+            node.dataSource.close();
+        }
+        primary.close();
+    }
+
+    /**
+     * 从库节点
+     */
+    private static class ReplicaNode {
+        private final String name;
+        private final HikariDataSource dataSource;
+        private volatile boolean available = true;
+
+        ReplicaNode(String name, HikariDataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        int activeConnections() {
+            HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+            return pool != null ? pool.getActiveConnections() : 0;
+        }
+    }
+}
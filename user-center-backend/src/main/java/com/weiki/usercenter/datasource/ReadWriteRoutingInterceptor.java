@@ -0,0 +1,54 @@
+package com.weiki.usercenter.datasource;
+
+import com.weiki.usercenter.utils.SecurityUtils;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+/**
+ * 读写分离 MyBatis 拦截器
+ * 根据语句类型（SELECT 或 INSERT/UPDATE/DELETE）标记当前线程的读写状态，
+ * 路由数据源在获取连接时据此选择主库或从库
+ */
+@Intercepts({
+        @Signature(type = Executor.class, method = "query",
+                args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "query",
+                args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class}),
+        @Signature(type = Executor.class, method = "queryCursor",
+                args = {MappedStatement.class, Object.class, RowBounds.class}),
+        @Signature(type = Executor.class, method = "update",
+                args = {MappedStatement.class, Object.class})
+})
+public class ReadWriteRoutingInterceptor implements Interceptor {
+
+    private final ReadWriteRoutingDataSource routingDataSource;
+
+    public ReadWriteRoutingInterceptor(ReadWriteRoutingDataSource routingDataSource) {
+        this.routingDataSource = routingDataSource;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        MappedStatement ms = (MappedStatement) invocation.getArgs()[0];
+        boolean read = ms.getSqlCommandType() == SqlCommandType.SELECT;
+        Boolean previous = DataSourceContextHolder.set(read);
+        try {
+            Object result = invocation.proceed();
+            if (!read) {
+                routingDataSource.recordWrite(SecurityUtils.peekCurrentUserId());
+            }
+            return result;
+        } finally {
+            DataSourceContextHolder.set(previous);
+        }
+    }
+}
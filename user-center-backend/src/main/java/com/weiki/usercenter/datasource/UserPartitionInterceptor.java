@@ -0,0 +1,118 @@
+package com.weiki.usercenter.datasource;
+
+import com.weiki.usercenter.entity.User;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.SystemMetaObject;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 用户表分区 MyBatis 拦截器
+ *
+ * 在语句预编译前把 UserMapper 中的 user 表名替换为分区表名。分区的确定顺序：
+ * 1. PartitionContextHolder 中显式指定的分区
+ * 2. 参数中的用户ID（Long 参数、@Param("id")、User.id）
+ * 3. 参数中的账号（String 参数、@Param("userAccount")、User.userAccount）
+ * 都无法确定时抛出异常，避免跨分区语句被静默发到单个分区
+ */
+@Component
+@Intercepts({
+        @Signature(type = StatementHandler.class, method = "prepare", args = {Connection.class, Integer.class})
+})
+public class UserPartitionInterceptor implements Interceptor {
+
+    /**
+     * 需要路由的 Mapper 命名空间
+     */
+    private static final String USER_MAPPER_NAMESPACE = "com.weiki.usercenter.mapper.UserMapper.";
+
+    /**
+     * 匹配 FROM/INTO/UPDATE/JOIN 之后的 user 表名（不会匹配 user_account 等列名）
+     */
+    private static final Pattern USER_TABLE = Pattern.compile("\\b(FROM|INTO|UPDATE|JOIN)(\\s+)user\\b(?!_)",
+            Pattern.CASE_INSENSITIVE);
+
+    private final UserPartitionRouter router;
+
+    public UserPartitionInterceptor(UserPartitionRouter router) {
+        this.router = router;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        if (!router.isEnabled()) {
+            return invocation.proceed();
+        }
+        MetaObject metaObject = SystemMetaObject.forObject(invocation.getTarget());
+        // RoutingStatementHandler 委托给实际的 StatementHandler
+        while (metaObject.hasGetter("h")) {
+            metaObject = SystemMetaObject.forObject(metaObject.getValue("h.target"));
+        }
+        MappedStatement ms = (MappedStatement) metaObject.getValue("delegate.mappedStatement");
+        if (!ms.getId().startsWith(USER_MAPPER_NAMESPACE)) {
+            return invocation.proceed();
+        }
+        BoundSql boundSql = (BoundSql) metaObject.getValue("delegate.boundSql");
+        int partition = resolvePartition(ms, boundSql.getParameterObject());
+        Matcher matcher = USER_TABLE.matcher(boundSql.getSql());
+        metaObject.setValue("delegate.boundSql.sql",
+                matcher.replaceAll("$1$2" + Matcher.quoteReplacement(router.tableName(partition))));
+        return invocation.proceed();
+    }
+
+    private int resolvePartition(MappedStatement ms, Object parameter) {
+        Integer explicit = PartitionContextHolder.get();
+        if (explicit != null) {
+            return explicit;
+        }
+        if (parameter instanceof Long) {
+            return router.partitionOfId((Long) parameter);
+        }
+        if (parameter instanceof String) {
+            return router.partitionOfAccount((String) parameter);
+        }
+        if (parameter instanceof User) {
+            Integer partition = partitionOfUser((User) parameter);
+            if (partition != null) {
+                return partition;
+            }
+        }
+        if (parameter instanceof Map) {
+            Map<?, ?> params = (Map<?, ?>) parameter;
+            if (params.containsKey("id") && params.get("id") instanceof Long) {
+                return router.partitionOfId((Long) params.get("id"));
+            }
+            if (params.containsKey("user") && params.get("user") instanceof User) {
+                Integer partition = partitionOfUser((User) params.get("user"));
+                if (partition != null) {
+                    return partition;
+                }
+            }
+            if (params.containsKey("userAccount") && params.get("userAccount") instanceof String) {
+                return router.partitionOfAccount((String) params.get("userAccount"));
+            }
+        }
+        throw new IllegalStateException("无法确定用户表分区，跨分区语句需通过 UserPartitionRouter 执行：" + ms.getId());
+    }
+
+    private Integer partitionOfUser(User user) {
+        if (user.getId() != null) {
+            return router.partitionOfId(user.getId());
+        }
+        if (user.getUserAccount() != null) {
+            return router.partitionOfAccount(user.getUserAccount());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,170 @@
+package com.weiki.usercenter.datasource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.zip.CRC32;
+
+/**
+ * 用户表分区路由
+ *
+ * 分区规则：
+ * - 分区数 N 为 2 的幂，N=1 时不分区，所有语句访问原 user 表
+ * - 账号决定分区：partition = crc32(userAccount) & (N-1)
+ * - 新用户的ID满足 id % N == partition，按ID和按账号都能直接定位到同一个分区
+ *
+ * 单分区语句由 UserPartitionInterceptor 根据参数自动路由；
+ * 跨分区的查询和批量操作通过本类按分区拆分执行后再合并
+ */
+@Component
+public class UserPartitionRouter {
+
+    private final int partitionCount;
+    private final String tableFormat;
+
+    public UserPartitionRouter(@Value("${user.partition.count:1}") int partitionCount,
+                               @Value("${user.partition.table-format:user_%d}") String tableFormat) {
+        if (partitionCount < 1 || Integer.bitCount(partitionCount) != 1) {
+            throw new IllegalArgumentException("user.partition.count 必须是 2 的幂：" + partitionCount);
+        }
+        this.partitionCount = partitionCount;
+        this.tableFormat = tableFormat;
+    }
+
+    /**
+     * 是否启用分区
+     */
+    public boolean isEnabled() {
+        return partitionCount > 1;
+    }
+
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+
+    /**
+     * 分区对应的物理表名（可以带库名，如 user_center_%d.user）
+     */
+    public String tableName(int partition) {
+        return String.format(tableFormat, partition);
+    }
+
+    public int partitionOfId(long id) {
+        return (int) (id & (partitionCount - 1));
+    }
+
+    public int partitionOfAccount(String userAccount) {
+        CRC32 crc = new CRC32();
+        crc.update(userAccount.getBytes(StandardCharsets.UTF_8));
+        return (int) (crc.getValue() & (partitionCount - 1));
+    }
+
+    /**
+     * 在指定分区上执行
+     */
+    public <T> T callIn(int partition, Supplier<T> action) {
+        Integer previous = PartitionContextHolder.set(partition);
+        try {
+            return action.get();
+        } finally {
+            PartitionContextHolder.set(previous);
+        }
+    }
+
+    /**
+     * 在每个分区上执行并收集结果（未分区时只执行一次）
+     */
+    public <T> List<T> scatter(IntFunction<T> action) {
+        if (!isEnabled()) {
+            return Collections.singletonList(action.apply(0));
+        }
+        List<T> results = new ArrayList<>(partitionCount);
+        for (int partition = 0; partition < partitionCount; partition++) {
+            int p = partition;
+            results.add(callIn(p, () -> action.apply(p)));
+        }
+        return results;
+    }
+
+    /**
+     * 在所有分区上执行同一个查询，按比较器多路归并，跳过前 skip 条后最多返回 limit 条
+     * 每个分区的结果必须已按同一比较器排好序
+     */
+    public <T> List<T> gatherSorted(Supplier<List<T>> query, Comparator<? super T> order, int skip, int limit) {
+        List<List<T>> parts = scatter(p -> query.get());
+        if (parts.size() == 1) {
+            List<T> only = parts.get(0);
+            return only.subList(Math.min(skip, only.size()), Math.min(only.size(), skip + limit));
+        }
+        // 堆中存放 {分区下标, 分区内位置}
+        PriorityQueue<int[]> heap = new PriorityQueue<>(parts.size(),
+                (a, b) -> order.compare(parts.get(a[0]).get(a[1]), parts.get(b[0]).get(b[1])));
+        for (int i = 0; i < parts.size(); i++) {
+            if (!parts.get(i).isEmpty()) {
+                heap.add(new int[]{i, 0});
+            }
+        }
+        List<T> merged = new ArrayList<>(Math.min(limit, 1024));
+        int index = 0;
+        while (!heap.isEmpty() && merged.size() < limit) {
+            int[] head = heap.poll();
+            List<T> part = parts.get(head[0]);
+            if (index++ >= skip) {
+                merged.add(part.get(head[1]));
+            }
+            if (head[1] + 1 < part.size()) {
+                heap.add(new int[]{head[0], head[1] + 1});
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * 按分区分组后分别执行（未分区时整体执行一次），返回各分区结果之和
+     */
+    public <T> int executeGrouped(Collection<T> items, ToIntFunction<T> partitionOf, Function<List<T>, Integer> statement) {
+        if (!isEnabled()) {
+            return statement.apply(items instanceof List ? (List<T>) items : new ArrayList<>(items));
+        }
+        int total = 0;
+        for (Map.Entry<Integer, List<T>> group : groupBy(items, partitionOf).entrySet()) {
+            total += callIn(group.getKey(), () -> statement.apply(group.getValue()));
+        }
+        return total;
+    }
+
+    /**
+     * 按分区分组后分别查询（未分区时整体查询一次），合并各分区结果
+     */
+    public <T, R> List<R> queryGrouped(Collection<T> items, ToIntFunction<T> partitionOf, Function<List<T>, List<R>> query) {
+        if (!isEnabled()) {
+            return query.apply(items instanceof List ? (List<T>) items : new ArrayList<>(items));
+        }
+        List<R> results = new ArrayList<>();
+        for (Map.Entry<Integer, List<T>> group : groupBy(items, partitionOf).entrySet()) {
+            results.addAll(callIn(group.getKey(), () -> query.apply(group.getValue())));
+        }
+        return results;
+    }
+
+    private <T> Map<Integer, List<T>> groupBy(Collection<T> items, ToIntFunction<T> partitionOf) {
+        Map<Integer, List<T>> groups = new LinkedHashMap<>();
+        for (T item : items) {
+            groups.computeIfAbsent(partitionOf.applyAsInt(item), k -> new ArrayList<>()).add(item);
+        }
+        return groups;
+    }
+}
@@ -0,0 +1,48 @@
+package com.weiki.usercenter.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import lombok.Data;
+
+/**
+ * 异步头像上传任务VO
+ */
+@Data
+public class AvatarUploadJobVO {
+
+    /**
+     * 任务ID
+     */
+    private String jobId;
+
+    /**
+     * 用户ID（按字符串输出）
+     */
+    @JsonSerialize(using = ToStringSerializer.class)
+    private Long userId;
+
+    /**
+     * 任务状态：PENDING-排队中，PROCESSING-处理中，SUCCEEDED-成功，FAILED-失败，SUPERSEDED-被同一用户之后的上传取代
+     */
+    private String status;
+
+    /**
+     * 头像URL（成功时）
+     */
+    private String avatarUrl;
+
+    /**
+     * 失败原因
+     */
+    private String message;
+
+    /**
+     * 提交时间（毫秒时间戳）
+     */
+    private Long submitTime;
+
+    /**
+     * 完成时间（毫秒时间戳）
+     */
+    private Long finishTime;
+}
@@ -0,0 +1,28 @@
+package com.weiki.usercenter.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 批量操作结果VO
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchResultVO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 请求操作的用户数（去重后）
+     */
+    private int requested;
+
+    /**
+     * 实际受影响的用户数
+     */
+    private int affected;
+}
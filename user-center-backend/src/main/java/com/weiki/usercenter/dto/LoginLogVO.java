@@ -0,0 +1,52 @@
+package com.weiki.usercenter.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 登录历史VO
+ */
+@Data
+public class LoginLogVO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 日志ID（按字符串输出）
+     */
+    @JsonSerialize(using = ToStringSerializer.class)
+    private Long id;
+
+    /**
+     * 登录时使用的账号
+     */
+    private String userAccount;
+
+    /**
+     * 登录时间
+     */
+    private String loginTime;
+
+    /**
+     * 客户端IP
+     */
+    private String ip;
+
+    /**
+     * 客户端 User-Agent
+     */
+    private String userAgent;
+
+    /**
+     * 是否成功
+     */
+    private Boolean success;
+
+    /**
+     * 失败原因
+     */
+    private String failReason;
+}
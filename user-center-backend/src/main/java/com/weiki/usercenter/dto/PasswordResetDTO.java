@@ -15,5 +15,9 @@ public class PasswordResetDTO {
      */
     @NotBlank(message = "新密码不能为空")
     private String newPassword;
-}
 
+    /**
+     * 版本号（可选，携带时只有版本一致才重置）
+     */
+    private Integer version;
+}
@@ -0,0 +1,62 @@
+package com.weiki.usercenter.dto;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 慢SQL记录VO
+ */
+@Data
+public class SlowQueryVO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Mapper 语句ID
+     */
+    private String statementId;
+
+    /**
+     * 执行的SQL（已压缩空白）
+     */
+    private String sql;
+
+    /**
+     * 绑定参数（密码类参数已脱敏，长字符串已截断）
+     */
+    private Map<String, Object> parameters;
+
+    /**
+     * 耗时（毫秒）
+     */
+    private double elapsedMs;
+
+    /**
+     * 返回/影响行数，游标查询为 -1
+     */
+    private long rows;
+
+    /**
+     * 是否执行失败
+     */
+    private boolean failed;
+
+    /**
+     * 发生时间
+     */
+    private LocalDateTime occurredAt;
+
+    /**
+     * 执行计划（异步采集，采集完成前为空）
+     */
+    private volatile List<Map<String, Object>> explain;
+
+    /**
+     * 执行计划采集失败的原因
+     */
+    private volatile String explainError;
+}
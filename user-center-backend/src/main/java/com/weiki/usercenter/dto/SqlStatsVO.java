@@ -0,0 +1,66 @@
+package com.weiki.usercenter.dto;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * SQL 语句统计VO
+ */
+@Data
+public class SqlStatsVO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Mapper 语句ID，如 com.weiki.usercenter.mapper.UserMapper.selectById
+     */
+    private String statementId;
+
+    /**
+     * 执行次数
+     */
+    private long count;
+
+    /**
+     * 失败次数
+     */
+    private long errors;
+
+    /**
+     * 累计耗时（毫秒）
+     */
+    private double totalMs;
+
+    /**
+     * 平均耗时（毫秒）
+     */
+    private double avgMs;
+
+    /**
+     * 最大耗时（毫秒）
+     */
+    private double maxMs;
+
+    /**
+     * 耗时百分位（毫秒，分桶上界，误差约 6%）
+     */
+    private double p50Ms;
+    private double p95Ms;
+    private double p99Ms;
+
+    /**
+     * 累计返回/影响行数
+     */
+    private long totalRows;
+
+    /**
+     * 平均每次返回/影响行数
+     */
+    private double avgRows;
+
+    /**
+     * 累计结果字节数（抽样估算）
+     */
+    private long totalBytes;
+}
@@ -0,0 +1,32 @@
+package com.weiki.usercenter.dto;
+
+import lombok.Data;
+
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+/**
+ * 批量操作DTO（管理员使用）
+ */
+@Data
+public class UserBatchDTO {
+
+    /**
+     * 用户ID列表
+     */
+    @NotEmpty(message = "用户ID列表不能为空")
+    @Size(max = 10000, message = "单次最多操作10000个用户")
+    private List<Long> ids;
+
+    /**
+     * 目标角色（批量修改角色时使用）：user-普通用户，admin-管理员
+     */
+    private String userRole;
+
+    /**
+     * 新密码（批量重置密码时使用）
+     */
+    @Size(min = 6, max = 20, message = "密码长度必须在6-20位之间")
+    private String newPassword;
+}
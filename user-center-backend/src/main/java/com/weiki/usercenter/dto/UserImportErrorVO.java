@@ -0,0 +1,33 @@
+package com.weiki.usercenter.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 批量导入的单行错误信息VO
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserImportErrorVO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 行号（从1开始，包含表头行）
+     */
+    private Long line;
+
+    /**
+     * 账号
+     */
+    private String userAccount;
+
+    /**
+     * 失败原因
+     */
+    private String reason;
+}
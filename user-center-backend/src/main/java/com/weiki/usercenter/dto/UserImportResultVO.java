@@ -0,0 +1,41 @@
+package com.weiki.usercenter.dto;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量导入结果VO
+ */
+@Data
+public class UserImportResultVO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 处理的数据行数
+     */
+    private long total;
+
+    /**
+     * 导入成功数
+     */
+    private long success;
+
+    /**
+     * 导入失败数
+     */
+    private long failed;
+
+    /**
+     * 错误明细（超过上限的部分只计数不记录）
+     */
+    private List<UserImportErrorVO> errors = new ArrayList<>();
+
+    /**
+     * 错误明细是否被截断
+     */
+    private boolean errorsTruncated;
+}
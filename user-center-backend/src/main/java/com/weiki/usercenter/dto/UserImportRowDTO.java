@@ -0,0 +1,57 @@
+package com.weiki.usercenter.dto;
+
+import lombok.Data;
+
+import javax.validation.constraints.Email;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.Size;
+
+/**
+ * 批量导入的单行用户数据DTO
+ */
+@Data
+public class UserImportRowDTO {
+
+    /**
+     * 用户名
+     */
+    @NotBlank(message = "用户名不能为空")
+    @Size(max = 50, message = "用户名不能超过50个字符")
+    private String username;
+
+    /**
+     * 账号
+     */
+    @NotBlank(message = "账号不能为空")
+    @Size(max = 50, message = "账号不能超过50个字符")
+    private String userAccount;
+
+    /**
+     * 密码
+     */
+    @NotBlank(message = "密码不能为空")
+    @Size(min = 6, max = 20, message = "密码长度必须在6-20位之间")
+    private String userPassword;
+
+    /**
+     * 性别：0-未知，1-男，2-女
+     */
+    @Min(value = 0, message = "性别取值为0-2")
+    @Max(value = 2, message = "性别取值为0-2")
+    private Integer gender;
+
+    /**
+     * 电话号码
+     */
+    @Size(max = 20, message = "电话号码不能超过20个字符")
+    private String phone;
+
+    /**
+     * 邮箱
+     */
+    @Email(message = "邮箱格式不正确")
+    @Size(max = 100, message = "邮箱不能超过100个字符")
+    private String email;
+}
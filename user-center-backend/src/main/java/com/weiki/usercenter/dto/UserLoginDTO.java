@@ -15,6 +15,7 @@ public class UserLoginDTO {
      * 账号
      */
     @NotBlank(message = "账号不能为空")
+    @Size(max = 50, message = "账号长度不能超过50位")
     private String userAccount;
     
     /**
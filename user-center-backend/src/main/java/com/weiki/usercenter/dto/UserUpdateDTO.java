@@ -37,6 +37,9 @@ public class UserUpdateDTO {
      * 用户简介
      */
     private String userProfile;
-}
-
 
+    /**
+     * 版本号（可选，携带时只有版本一致才更新）
+     */
+    private Integer version;
+}
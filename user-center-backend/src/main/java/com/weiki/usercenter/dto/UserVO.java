@@ -1,5 +1,7 @@
 package com.weiki.usercenter.dto;
 
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 import lombok.Data;
 
 import java.io.Serializable;
@@ -13,8 +15,9 @@ public class UserVO implements Serializable {
     private static final long serialVersionUID = 1L;
     
     /**
-     * 用户ID
+     * 用户ID（雪花ID超出 JavaScript 安全整数范围，统一按字符串输出）
      */
+    @JsonSerialize(using = ToStringSerializer.class)
     private Long id;
     
     /**
@@ -61,6 +64,9 @@ public class UserVO implements Serializable {
      * 创建时间
      */
     private String createTime;
-}
-
 
+    /**
+     * 版本号（修改、删除时携带，用于检测并发修改）
+     */
+    private Integer version;
+}
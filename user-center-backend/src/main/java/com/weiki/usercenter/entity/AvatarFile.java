@@ -0,0 +1,46 @@
+package com.weiki.usercenter.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 头像文件实体类（内容寻址）
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AvatarFile implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 原图内容哈希（同时是头像ID）
+     */
+    private String hash;
+
+    /**
+     * 引用次数
+     */
+    private Integer refCount;
+
+    /**
+     * 原图大小（字节）
+     */
+    private Long bytes;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+
+    /**
+     * 更新时间（引用次数变化时更新）
+     */
+    private LocalDateTime updateTime;
+}
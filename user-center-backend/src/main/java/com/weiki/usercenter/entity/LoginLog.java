@@ -0,0 +1,61 @@
+package com.weiki.usercenter.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 登录日志实体类
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoginLog implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 日志ID
+     */
+    private Long id;
+
+    /**
+     * 用户ID（账号不存在时为空）
+     */
+    private Long userId;
+
+    /**
+     * 登录时使用的账号
+     */
+    private String userAccount;
+
+    /**
+     * 登录时间
+     */
+    private LocalDateTime loginTime;
+
+    /**
+     * 客户端IP
+     */
+    private String ip;
+
+    /**
+     * 客户端 User-Agent
+     */
+    private String userAgent;
+
+    /**
+     * 是否成功(0-失败,1-成功)
+     */
+    private Integer success;
+
+    /**
+     * 失败原因
+     */
+    private String failReason;
+}
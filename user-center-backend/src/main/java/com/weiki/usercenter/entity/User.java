@@ -83,6 +83,11 @@ public class User implements Serializable {
      * 是否删除：0-未删除，1-已删除
      */
     private Integer isDelete;
+
+    /**
+     * 版本号（每次修改加1，用于乐观锁）
+     */
+    private Integer version;
 }
 
 
@@ -0,0 +1,21 @@
+package com.weiki.usercenter.exception;
+
+/**
+ * 版本冲突异常（乐观锁更新失败，数据已被其他请求修改）
+ */
+public class VersionConflictException extends BusinessException {
+
+    private final Integer currentVersion;
+
+    public VersionConflictException(Integer currentVersion) {
+        super(409, "数据已被修改，请刷新后重试");
+        this.currentVersion = currentVersion;
+    }
+
+    /**
+     * 数据库中的当前版本号
+     */
+    public Integer getCurrentVersion() {
+        return currentVersion;
+    }
+}
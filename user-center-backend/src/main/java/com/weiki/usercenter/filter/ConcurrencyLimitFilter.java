@@ -0,0 +1,240 @@
+package com.weiki.usercenter.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.weiki.usercenter.entity.Result;
+import com.weiki.usercenter.utils.AdaptiveConcurrencyLimiter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 并发限制过滤器（准入控制）
+ *
+ * 在认证过滤器之前执行，同时处理中的请求数超过自适应限制（AdaptiveConcurrencyLimiter，按响应时间调整）时
+ * 立即返回 503，不占用后续的 Redis、数据库资源，避免 Tomcat 线程池被占满后所有接口一起超时。
+ *
+ * 请求按路径和是否携带 Token 分为三个优先级，各自只能使用限制的一部分：
+ * - HIGH：high-priority-paths（如 /user/current、监控接口），以及携带格式正确的 Token 的 GET/HEAD 请求，可使用全部名额
+ * - NORMAL：其他请求，可使用 normal-share
+ * - LOW：low-priority-paths（登录、注册、验证码等匿名入口），只能使用 low-share，登录风暴时最先被拒绝
+ * excluded-paths（如导出、导入等长时间请求）不受限制，也不计入响应时间统计
+ *
+ * 准入在认证之前，不查询 Redis，Token 只检查格式（token-用户ID-签发时间，签发时间不晚于当前时间）。
+ * 这是有意的取舍：伪造一个格式正确的 Token 仍能拿到 HIGH 优先级（随后在认证时被拒绝），
+ * 但随意填写的 Authorization 不再能抢占为登录用户预留的名额；要彻底杜绝需要给 Token 加签名
+ */
+@Component
+@Slf4j
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    /**
+     * 登录时签发的 Token 格式：token-用户ID-签发时间（毫秒）
+     */
+    private static final Pattern TOKEN_PATTERN = Pattern.compile("token-\\d{1,19}-(\\d{13})");
+
+    /**
+     * 允许 Token 签发时间超前本机时钟的毫秒数（多节点时钟误差）
+     */
+    private static final long TOKEN_CLOCK_SKEW_MILLIS = 60_000;
+
+    /**
+     * 请求优先级
+     */
+    private enum Priority {
+        HIGH, NORMAL, LOW
+    }
+
+    private final ObjectMapper objectMapper;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    /**
+     * 是否启用并发限制
+     */
+    @Value("${concurrency.limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${concurrency.limit.initial-limit:50}")
+    private int initialLimit;
+
+    @Value("${concurrency.limit.min-limit:10}")
+    private int minLimit;
+
+    /**
+     * 最大并发限制，不应超过 Tomcat 最大线程数
+     */
+    @Value("${concurrency.limit.max-limit:200}")
+    private int maxLimit;
+
+    /**
+     * 可容忍的响应时间上升倍数
+     */
+    @Value("${concurrency.limit.tolerance:1.5}")
+    private double tolerance;
+
+    @Value("${concurrency.limit.smoothing:0.2}")
+    private double smoothing;
+
+    /**
+     * 响应时间统计窗口（毫秒）及窗口内最少样本数
+     */
+    @Value("${concurrency.limit.window-ms:100}")
+    private long windowMillis;
+
+    @Value("${concurrency.limit.min-window-samples:10}")
+    private int minWindowSamples;
+
+    /**
+     * NORMAL、LOW 优先级可使用的限制比例
+     */
+    @Value("${concurrency.limit.normal-share:0.8}")
+    private double normalShare;
+
+    @Value("${concurrency.limit.low-share:0.5}")
+    private double lowShare;
+
+    @Value("${concurrency.limit.high-priority-paths:/api/user/current,/api/monitor/**}")
+    private String[] highPriorityPaths;
+
+    @Value("${concurrency.limit.low-priority-paths:/api/user/login,/api/user/register,/api/user/account-available,/api/captcha/**}")
+    private String[] lowPriorityPaths;
+
+    @Value("${concurrency.limit.excluded-paths:/api/user/export,/api/user/import}")
+    private String[] excludedPaths;
+
+    private AdaptiveConcurrencyLimiter limiter;
+
+    private final LongAdder[] admitted = newCounters();
+    private final LongAdder[] rejected = newCounters();
+
+    public ConcurrencyLimitFilter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    public void init() {
+        limiter = new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, tolerance, smoothing,
+                windowMillis, minWindowSamples);
+        log.info("并发限制：初始 {}，范围 [{}, {}]，启用：{}", initialLimit, minLimit, maxLimit, enabled);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || matches(excludedPaths, request.getRequestURI());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Priority priority = classify(request);
+        if (!limiter.tryAcquire(shareOf(priority))) {
+            rejected[priority.ordinal()].increment();
+            reject(response);
+            return;
+        }
+        admitted[priority.ordinal()].increment();
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            filterChain.doFilter(request, response);
+            completed = true;
+        } finally {
+            // 异常、5xx 和异步请求的耗时不代表正常处理时间，不计入统计
+            boolean sample = completed && !request.isAsyncStarted()
+                    && response.getStatus() < HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+            limiter.release(System.nanoTime() - start, sample);
+        }
+    }
+
+    /**
+     * 并发限制统计
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>(limiter.getStats());
+        for (Priority priority : Priority.values()) {
+            String name = priority.name().toLowerCase();
+            stats.put(name + ".admitted", admitted[priority.ordinal()].sum());
+            stats.put(name + ".rejected", rejected[priority.ordinal()].sum());
+        }
+        return stats;
+    }
+
+    /**
+     * 按路径和是否携带 Token 确定优先级（此时尚未认证，只看 Authorization 请求头，不解析请求体中的参数）
+     */
+    private Priority classify(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        if (matches(lowPriorityPaths, uri)) {
+            return Priority.LOW;
+        }
+        if (matches(highPriorityPaths, uri)) {
+            return Priority.HIGH;
+        }
+        boolean read = "GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod());
+        return read && looksLikeToken(request.getHeader(HttpHeaders.AUTHORIZATION)) ? Priority.HIGH : Priority.NORMAL;
+    }
+
+    /**
+     * Token 格式检查（不验证 Token 是否有效）
+     */
+    private static boolean looksLikeToken(String token) {
+        if (token == null) {
+            return false;
+        }
+        Matcher matcher = TOKEN_PATTERN.matcher(token);
+        return matcher.matches()
+                && Long.parseLong(matcher.group(1)) <= System.currentTimeMillis() + TOKEN_CLOCK_SKEW_MILLIS;
+    }
+
+    private double shareOf(Priority priority) {
+        switch (priority) {
+            case LOW:
+                return lowShare;
+            case NORMAL:
+                return normalShare;
+            default:
+                return 1.0;
+        }
+    }
+
+    private boolean matches(String[] patterns, String uri) {
+        for (String pattern : patterns) {
+            if (pathMatcher.match(pattern.trim(), uri)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void reject(HttpServletResponse response) throws IOException {
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write(objectMapper.writeValueAsString(Result.error(503, "服务繁忙，请稍后重试")));
+    }
+
+    private static LongAdder[] newCounters() {
+        LongAdder[] counters = new LongAdder[Priority.values().length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+}
@@ -0,0 +1,54 @@
+package com.weiki.usercenter.mapper;
+
+import com.weiki.usercenter.entity.AvatarFile;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 头像文件Mapper接口
+ */
+@Mapper
+public interface AvatarFileMapper {
+
+    /**
+     * 增加引用（不存在时插入，引用次数为1）
+     *
+     * @return 1 表示新插入，2 表示已存在并增加了引用
+     */
+    int acquire(@Param("hash") String hash, @Param("bytes") long bytes);
+
+    /**
+     * 减少引用
+     */
+    int release(@Param("hash") String hash);
+
+    /**
+     * 按哈希顺序分页查询 before 之前未变化过的记录
+     *
+     * @param afterHash 上一页最后一个哈希，第一页为null
+     */
+    List<AvatarFile> selectStale(@Param("before") LocalDateTime before,
+                                 @Param("afterHash") String afterHash,
+                                 @Param("limit") int limit);
+
+    /**
+     * 锁定仍未变化的记录（SELECT ... FOR UPDATE，需在事务中调用）
+     */
+    AvatarFile lockStale(@Param("hash") String hash, @Param("before") LocalDateTime before);
+
+    /**
+     * 修正引用次数
+     */
+    int updateRefCount(@Param("hash") String hash, @Param("refCount") int refCount);
+
+    int delete(@Param("hash") String hash);
+
+    /**
+     * 查询已登记的哈希
+     */
+    List<String> selectExistingHashes(@Param("hashes") Collection<String> hashes);
+}
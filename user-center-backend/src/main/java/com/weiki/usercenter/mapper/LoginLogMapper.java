@@ -0,0 +1,31 @@
+package com.weiki.usercenter.mapper;
+
+import com.weiki.usercenter.entity.LoginLog;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * 登录日志Mapper接口
+ */
+@Mapper
+public interface LoginLogMapper {
+
+    /**
+     * 批量插入登录日志（单条多行 INSERT）
+     */
+    int insertBatch(@Param("logs") List<LoginLog> logs);
+
+    /**
+     * 分页查询用户的登录历史（按时间倒序）
+     */
+    List<LoginLog> selectByUserId(@Param("userId") Long userId,
+                                  @Param("offset") int offset,
+                                  @Param("size") int size);
+
+    /**
+     * 统计用户的登录记录数
+     */
+    long countByUserId(@Param("userId") Long userId);
+}
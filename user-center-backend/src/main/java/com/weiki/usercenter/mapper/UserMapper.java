@@ -3,7 +3,10 @@ package com.weiki.usercenter.mapper;
 import com.weiki.usercenter.entity.User;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -17,6 +20,27 @@ public interface UserMapper {
      */
     int insert(User user);
 
+    /**
+     * 注册用户（单条语句完成插入、恢复已删除账号和检测已存在账号）
+     *
+     * 插入成功返回1并回填ID；恢复已删除账号返回2并回填原ID；
+     * 账号已存在且未删除时不修改任何数据，ID不回填（保持null）
+     *
+     * @param user 用户信息，id 必须为空
+     * @param newId 预先分配的ID，为空时使用自增ID
+     */
+    int registerUpsert(@Param("user") User user, @Param("newId") Long newId);
+
+    /**
+     * 批量插入用户（单条多行 INSERT）
+     */
+    int insertBatch(@Param("users") List<User> users);
+
+    /**
+     * 查询已存在的账号（包括已删除的和已归档的，用于批量导入前的冲突检查）
+     */
+    List<String> selectExistingAccounts(@Param("accounts") Collection<String> accounts);
+
     /**
      * 根据ID查询用户
      */
@@ -28,44 +52,149 @@ public interface UserMapper {
     User selectByAccount(String userAccount);
 
     /**
-     * 根据账号查询用户（包括已删除的，用于注册时恢复）
+     * 把归档的账号移回主表（保持已删除状态）
+     *
+     * @return 移回的行数，账号未归档或已在主表中时为0
      */
-    User selectByAccountIncludeDeleted(String userAccount);
+    int restoreFromArchive(String userAccount);
 
     /**
-     * 恢复并更新已删除的用户信息
+     * 从归档表删除账号
      */
-    int recoverAndUpdate(User user);
+    int deleteArchivedByAccount(String userAccount);
 
     /**
-     * 查询所有用户
+     * 查询所有用户（列表字段，不含密码和内联头像）
      */
     List<User> selectAll();
 
     /**
-     * 根据用户名模糊查询
+     * 流式查询所有用户（用于导出，需在事务内消费游标）
+     */
+    Cursor<User> streamAll();
+
+    /**
+     * 流式查询所有未删除账号（用于重建账号布隆过滤器）
+     */
+    Cursor<String> streamAccounts();
+
+    /**
+     * 流式查询以 prefix 开头的头像URL（包括已删除用户）
+     */
+    Cursor<String> streamAvatarUrls(@Param("prefix") String prefix);
+
+    /**
+     * 流式查询归档用户以 prefix 开头的头像URL
+     */
+    Cursor<String> streamArchivedAvatarUrls(@Param("prefix") String prefix);
+
+    /**
+     * 按ID顺序查找头像为内联 Base64 数据的用户（只返回 id、avatar_url 和 version，包括已删除用户）
+     *
+     * @param afterId 上一批最后一个ID，第一批为null
+     */
+    List<User> selectInlineAvatars(@Param("afterId") Long afterId, @Param("limit") int limit);
+
+    /**
+     * 版本号未变化时替换头像URL（头像迁移使用，不修改 update_time，不影响归档判断）
+     */
+    int updateAvatarUrlIfVersion(@Param("id") Long id,
+                                 @Param("avatarUrl") String avatarUrl,
+                                 @Param("version") Integer version);
+
+    /**
+     * 根据用户名模糊查询（列表字段）
      */
     List<User> selectByUsername(@Param("username") String username);
 
     /**
-     * 分页查询用户
+     * 分页查询用户（列表字段）
      */
     List<User> selectByPage(@Param("username") String username, @Param("offset") Integer offset, @Param("size") Integer size);
 
     /**
-     * 更新用户
+     * 查询未删除用户的当前版本号
+     *
+     * @return 版本号，用户不存在或已删除时为null
+     */
+    Integer selectVersionById(Long id);
+
+    /**
+     * 查询密码哈希（用户缓存中不保存密码，校验密码时单独查询）
+     *
+     * @return 密码哈希，用户不存在或已删除时为null
+     */
+    String selectPasswordById(Long id);
+
+    /**
+     * 更新用户（user.version 不为空时只有版本一致才更新）
+     *
+     * @return 影响行数，0 表示用户不存在或版本不一致
      */
     int update(User user);
 
     /**
-     * 根据ID更新密码
+     * 根据ID更新密码（version 不为空时只有版本一致才更新）
+     */
+    int updatePasswordById(@Param("id") Long id, @Param("newPassword") String newPassword,
+                           @Param("version") Integer version);
+
+    /**
+     * 仅当密码哈希仍为 oldPassword 时更新（登录时透明升级哈希，不改变版本号）
+     */
+    int updatePasswordIfMatch(@Param("id") Long id, @Param("oldPassword") String oldPassword,
+                              @Param("newPassword") String newPassword);
+
+    /**
+     * 根据ID逻辑删除用户（version 不为空时只有版本一致才删除）
+     */
+    int logicalDeleteById(@Param("id") Long id, @Param("version") Integer version);
+
+    /**
+     * 根据ID列表批量逻辑删除用户
+     */
+    int logicalDeleteByIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * 根据ID列表批量修改角色
+     */
+    int updateRoleByIds(@Param("ids") Collection<Long> ids, @Param("userRole") String userRole);
+
+    /**
+     * 根据ID列表批量更新密码
+     */
+    int updatePasswordByIds(@Param("ids") Collection<Long> ids, @Param("newPassword") String newPassword);
+
+    /**
+     * 查找待归档的用户（只返回 id 和 update_time），按 (update_time, id) 排序
+     *
+     * @param deletedBefore 删除时间上限
+     * @param after 上一批最后一行，第一批为null
+     */
+    List<User> selectArchivable(@Param("deletedBefore") LocalDateTime deletedBefore,
+                                @Param("after") User after,
+                                @Param("limit") int limit);
+
+    /**
+     * 锁定仍待归档的用户（SELECT ... FOR UPDATE，需在事务中调用）
+     */
+    List<Long> lockArchivableIds(@Param("ids") Collection<Long> ids,
+                                 @Param("deletedBefore") LocalDateTime deletedBefore);
+
+    /**
+     * 删除归档表中与这些用户同账号的旧归档记录（同一账号只保留最近删除的一条）
+     */
+    int deleteSupersededArchives(@Param("ids") Collection<Long> ids);
+
+    /**
+     * 复制用户到归档表
      */
-    int updatePasswordById(@Param("id") Long id, @Param("newPassword") String newPassword);
+    int copyToArchive(@Param("ids") Collection<Long> ids);
 
     /**
-     * 根据ID逻辑删除用户
+     * 从主表物理删除已归档的用户
      */
-    int logicalDeleteById(Long id);
+    int deleteArchivedByIds(@Param("ids") Collection<Long> ids);
 
     /**
      * 统计用户数量
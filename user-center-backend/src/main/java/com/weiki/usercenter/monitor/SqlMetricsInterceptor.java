@@ -0,0 +1,200 @@
+package com.weiki.usercenter.monitor;
+
+import com.weiki.usercenter.dto.SlowQueryVO;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.SystemMetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAccessor;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * SQL 执行指标 MyBatis 拦截器
+ *
+ * 记录每条 Mapper 语句的耗时、行数和结果字节数；
+ * 慢SQL额外采集SQL文本、脱敏后的参数和执行计划。
+ * 快路径只有两次 nanoTime 和几次原子累加，参数渲染只在慢SQL时发生。
+ * 拦截 StatementHandler 的执行方法：此时 UserPartitionInterceptor 已在 prepare 中把 user 替换为分区表名，
+ * 慢SQL文本和执行计划对应实际执行的分区表
+ */
+@Component
+@ConditionalOnProperty(name = "monitor.sql.enabled", havingValue = "true", matchIfMissing = true)
+@Intercepts({
+        @Signature(type = StatementHandler.class, method = "query", args = {Statement.class, ResultHandler.class}),
+        @Signature(type = StatementHandler.class, method = "queryCursor", args = {Statement.class}),
+        @Signature(type = StatementHandler.class, method = "update", args = {Statement.class})
+})
+public class SqlMetricsInterceptor implements Interceptor {
+
+    /**
+     * 估算结果字节数时抽样的行数
+     */
+    private static final int BYTE_SAMPLE_ROWS = 8;
+
+    /**
+     * 慢SQL参数中字符串的最大保留长度（避免头像等大字段撑爆缓冲区）
+     */
+    private static final int MAX_PARAM_LENGTH = 200;
+
+    private final SqlMetricsRegistry registry;
+
+    public SqlMetricsInterceptor(SqlMetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        MetaObject metaObject = SystemMetaObject.forObject(invocation.getTarget());
+        // RoutingStatementHandler 委托给实际的 StatementHandler
+        while (metaObject.hasGetter("h")) {
+            metaObject = SystemMetaObject.forObject(metaObject.getValue("h.target"));
+        }
+        MappedStatement ms = (MappedStatement) metaObject.getValue("delegate.mappedStatement");
+        long start = System.nanoTime();
+        Object result = null;
+        boolean failed = true;
+        try {
+            result = invocation.proceed();
+            failed = false;
+            return result;
+        } finally {
+            long micros = (System.nanoTime() - start) / 1000;
+            long rows = countRows(result);
+            long bytes = failed ? 0 : estimateBytes(ms.getConfiguration(), result, rows);
+            registry.statsOf(ms.getId()).record(micros, Math.max(rows, 0), bytes, failed);
+            if (registry.isSlow(micros)) {
+                BoundSql boundSql = (BoundSql) metaObject.getValue("delegate.boundSql");
+                Object parameter = boundSql.getParameterObject();
+                registry.recordSlowQuery(buildSlowQuery(ms, parameter, boundSql, micros, rows, failed),
+                        ms, parameter, boundSql);
+            }
+        }
+    }
+
+    /**
+     * 查询返回列表大小，更新返回影响行数，游标无法预知行数返回 -1
+     */
+    private long countRows(Object result) {
+        if (result instanceof List) {
+            return ((List<?>) result).size();
+        }
+        if (result instanceof Integer) {
+            return (Integer) result;
+        }
+        return result == null ? 0 : -1;
+    }
+
+    /**
+     * 抽样前几行估算结果集字节数，只对查询结果估算
+     */
+    private long estimateBytes(Configuration configuration, Object result, long rows) {
+        if (!(result instanceof List) || rows <= 0) {
+            return 0;
+        }
+        List<?> list = (List<?>) result;
+        int samples = (int) Math.min(rows, BYTE_SAMPLE_ROWS);
+        long sampled = 0;
+        for (int i = 0; i < samples; i++) {
+            sampled += sizeOfRow(configuration, list.get(i));
+        }
+        return sampled * rows / samples;
+    }
+
+    private long sizeOfRow(Configuration configuration, Object row) {
+        if (row == null) {
+            return 0;
+        }
+        if (configuration.getTypeHandlerRegistry().hasTypeHandler(row.getClass())) {
+            return sizeOfValue(row);
+        }
+        MetaObject metaObject = configuration.newMetaObject(row);
+        long size = 0;
+        for (String name : metaObject.getGetterNames()) {
+            size += sizeOfValue(metaObject.getValue(name));
+        }
+        return size;
+    }
+
+    private long sizeOfValue(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof CharSequence) {
+            return ((CharSequence) value).length();
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        if (value instanceof Number || value instanceof Date || value instanceof TemporalAccessor) {
+            return 8;
+        }
+        return 16;
+    }
+
+    private SlowQueryVO buildSlowQuery(MappedStatement ms, Object parameter, BoundSql boundSql,
+                                       long micros, long rows, boolean failed) {
+        SlowQueryVO slowQuery = new SlowQueryVO();
+        slowQuery.setStatementId(ms.getId());
+        slowQuery.setSql(boundSql.getSql().replaceAll("\\s+", " ").trim());
+        slowQuery.setParameters(renderParameters(ms.getConfiguration(), parameter, boundSql));
+        slowQuery.setElapsedMs(micros / 1000.0);
+        slowQuery.setRows(rows);
+        slowQuery.setFailed(failed);
+        slowQuery.setOccurredAt(LocalDateTime.now());
+        return slowQuery;
+    }
+
+    /**
+     * 按 DefaultParameterHandler 的取值规则渲染参数，密码类参数脱敏
+     */
+    private Map<String, Object> renderParameters(Configuration configuration, Object parameter, BoundSql boundSql) {
+        Map<String, Object> rendered = new LinkedHashMap<>();
+        List<ParameterMapping> mappings = boundSql.getParameterMappings();
+        if (mappings == null) {
+            return rendered;
+        }
+        MetaObject metaObject = null;
+        for (ParameterMapping mapping : mappings) {
+            String property = mapping.getProperty();
+            Object value;
+            if (property.toLowerCase(Locale.ROOT).contains("password")) {
+                value = "******";
+            } else if (boundSql.hasAdditionalParameter(property)) {
+                value = boundSql.getAdditionalParameter(property);
+            } else if (parameter == null) {
+                value = null;
+            } else if (configuration.getTypeHandlerRegistry().hasTypeHandler(parameter.getClass())) {
+                value = parameter;
+            } else {
+                if (metaObject == null) {
+                    metaObject = configuration.newMetaObject(parameter);
+                }
+                value = metaObject.getValue(property);
+            }
+            if (value instanceof String && ((String) value).length() > MAX_PARAM_LENGTH) {
+                value = ((String) value).substring(0, MAX_PARAM_LENGTH) + "...(" + ((String) value).length() + ")";
+            } else if (value != null && !(value instanceof Number) && !(value instanceof Boolean)) {
+                value = String.valueOf(value);
+            }
+            rendered.put(property, value);
+        }
+        return rendered;
+    }
+}
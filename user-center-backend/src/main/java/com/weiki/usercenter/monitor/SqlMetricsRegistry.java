@@ -0,0 +1,167 @@
+package com.weiki.usercenter.monitor;
+
+import com.weiki.usercenter.dto.SlowQueryVO;
+import com.weiki.usercenter.dto.SqlStatsVO;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.executor.parameter.ParameterHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.scripting.defaults.DefaultParameterHandler;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * SQL 执行指标注册表
+ *
+ * 按 Mapper 语句ID 汇总耗时直方图、行数和字节数；
+ * 慢SQL写入定长环形缓冲区，只保留最近的 N 条，执行计划由后台线程异步采集，不阻塞业务线程
+ */
+@Slf4j
+@Component
+public class SqlMetricsRegistry implements DisposableBean {
+
+    private final Map<String, SqlStatementStats> stats = new ConcurrentHashMap<>();
+
+    private final long slowThresholdMicros;
+    private final boolean explainEnabled;
+
+    /**
+     * 慢SQL环形缓冲区，cursor 为下一条写入的序号
+     */
+    private final AtomicReferenceArray<SlowQueryVO> slowQueries;
+    private final AtomicLong cursor = new AtomicLong();
+
+    /**
+     * 执行计划采集线程，队列满时直接丢弃（慢SQL风暴时不再额外压数据库）
+     */
+    private final ThreadPoolExecutor explainExecutor;
+
+    public SqlMetricsRegistry(@Value("${monitor.sql.slow-threshold-ms:200}") long slowThresholdMs,
+                              @Value("${monitor.sql.slow-capacity:200}") int slowCapacity,
+                              @Value("${monitor.sql.explain:true}") boolean explainEnabled) {
+        this.slowThresholdMicros = slowThresholdMs * 1000;
+        this.slowQueries = new AtomicReferenceArray<>(Math.max(1, slowCapacity));
+        this.explainEnabled = explainEnabled;
+        this.explainExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(16), r -> {
+                    Thread thread = new Thread(r, "sql-explain");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /**
+     * 获取语句的统计对象
+     */
+    public SqlStatementStats statsOf(String statementId) {
+        return stats.computeIfAbsent(statementId, SqlStatementStats::new);
+    }
+
+    /**
+     * 是否达到慢SQL阈值
+     */
+    public boolean isSlow(long micros) {
+        return micros >= slowThresholdMicros;
+    }
+
+    /**
+     * 记录一条慢SQL，并提交执行计划采集
+     */
+    public void recordSlowQuery(SlowQueryVO slowQuery, MappedStatement ms, Object parameter, BoundSql boundSql) {
+        long seq = cursor.getAndIncrement();
+        slowQueries.set((int) (seq % slowQueries.length()), slowQuery);
+        if (explainEnabled && !slowQuery.isFailed()) {
+            explainExecutor.execute(() -> explain(slowQuery, ms, parameter, boundSql));
+        }
+    }
+
+    /**
+     * 所有语句的统计快照，按累计耗时降序
+     */
+    public List<SqlStatsVO> snapshot() {
+        List<SqlStatsVO> result = new ArrayList<>(stats.size());
+        for (SqlStatementStats statementStats : stats.values()) {
+            result.add(statementStats.snapshot());
+        }
+        result.sort(Comparator.comparingDouble(SqlStatsVO::getTotalMs).reversed());
+        return result;
+    }
+
+    /**
+     * 最近的慢SQL，按时间倒序
+     */
+    public List<SlowQueryVO> recentSlowQueries() {
+        int capacity = slowQueries.length();
+        long end = cursor.get();
+        long start = Math.max(0, end - capacity);
+        List<SlowQueryVO> result = new ArrayList<>((int) (end - start));
+        for (long seq = end - 1; seq >= start; seq--) {
+            SlowQueryVO slowQuery = slowQueries.get((int) (seq % capacity));
+            if (slowQuery != null) {
+                result.add(slowQuery);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 清空所有统计和慢SQL记录
+     */
+    public void reset() {
+        stats.values().forEach(SqlStatementStats::reset);
+        for (int i = 0; i < slowQueries.length(); i++) {
+            slowQueries.set(i, null);
+        }
+    }
+
+    /**
+     * 使用原语句的参数绑定执行 EXPLAIN（boundSql 中已是替换分区表名后的SQL，采集线程不需要分区上下文）
+     */
+    private void explain(SlowQueryVO slowQuery, MappedStatement ms, Object parameter, BoundSql boundSql) {
+        DataSource dataSource = ms.getConfiguration().getEnvironment().getDataSource();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement ps = connection.prepareStatement("EXPLAIN " + boundSql.getSql())) {
+            ParameterHandler parameterHandler = new DefaultParameterHandler(ms, parameter, boundSql);
+            parameterHandler.setParameters(ps);
+            List<Map<String, Object>> plan = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                ResultSetMetaData metaData = rs.getMetaData();
+                while (rs.next()) {
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                        row.put(metaData.getColumnLabel(i), rs.getObject(i));
+                    }
+                    plan.add(row);
+                }
+            }
+            slowQuery.setExplain(plan);
+        } catch (SQLException | RuntimeException e) {
+            slowQuery.setExplainError(e.getMessage());
+            log.debug("采集执行计划失败：{}，{}", ms.getId(), e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        explainExecutor.shutdownNow();
+    }
+}
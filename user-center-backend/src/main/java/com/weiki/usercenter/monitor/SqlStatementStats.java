@@ -0,0 +1,89 @@
+package com.weiki.usercenter.monitor;
+
+import com.weiki.usercenter.dto.SqlStatsVO;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单条 Mapper 语句的执行统计
+ * 计数类字段使用 LongAdder，高并发下写入无竞争
+ */
+public class SqlStatementStats {
+
+    private final String statementId;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    public SqlStatementStats(String statementId) {
+        this.statementId = statementId;
+    }
+
+    /**
+     * 记录一次执行
+     *
+     * @param micros 耗时（微秒）
+     * @param rowCount 返回或影响的行数
+     * @param byteCount 估算的结果字节数
+     * @param failed 是否执行失败
+     */
+    public void record(long micros, long rowCount, long byteCount, boolean failed) {
+        count.increment();
+        totalMicros.add(micros);
+        histogram.record(micros);
+        if (micros > maxMicros.get()) {
+            maxMicros.accumulateAndGet(micros, Math::max);
+        }
+        if (failed) {
+            errors.increment();
+            return;
+        }
+        rows.add(rowCount);
+        bytes.add(byteCount);
+    }
+
+    /**
+     * 生成统计快照
+     */
+    public SqlStatsVO snapshot() {
+        long executions = count.sum();
+        long micros = totalMicros.sum();
+        long rowSum = rows.sum();
+        SqlStatsVO vo = new SqlStatsVO();
+        vo.setStatementId(statementId);
+        vo.setCount(executions);
+        vo.setErrors(errors.sum());
+        vo.setTotalMs(toMillis(micros));
+        vo.setAvgMs(executions == 0 ? 0 : toMillis(micros / executions));
+        vo.setMaxMs(toMillis(maxMicros.get()));
+        vo.setP50Ms(toMillis(histogram.percentile(50)));
+        vo.setP95Ms(toMillis(histogram.percentile(95)));
+        vo.setP99Ms(toMillis(histogram.percentile(99)));
+        vo.setTotalRows(rowSum);
+        vo.setAvgRows(executions == 0 ? 0 : (double) rowSum / executions);
+        vo.setTotalBytes(bytes.sum());
+        return vo;
+    }
+
+    /**
+     * 清空统计
+     */
+    public void reset() {
+        count.reset();
+        errors.reset();
+        totalMicros.reset();
+        rows.reset();
+        bytes.reset();
+        maxMicros.set(0);
+        histogram.reset();
+    }
+
+    private static double toMillis(long micros) {
+        return micros / 1000.0;
+    }
+}
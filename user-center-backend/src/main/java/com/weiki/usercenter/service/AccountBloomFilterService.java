@@ -0,0 +1,528 @@
+package com.weiki.usercenter.service;
+
+import com.weiki.usercenter.datasource.UserPartitionRouter;
+import com.weiki.usercenter.mapper.UserMapper;
+import com.weiki.usercenter.utils.ScalableBloomFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 账号存在性布隆过滤器服务
+ *
+ * 功能：
+ * - 记录所有未删除账号，登录和账号可用性检查可以在不查询数据库的情况下排除一定不存在的账号
+ * - 启动完成后流式扫描 user 表重建，重建完成前一律返回"可能存在"，不会误拒
+ * - 注册、导入成功后（事务提交后）加入过滤器；删除无法从布隆过滤器移除，累计到阈值后重建
+ * - 默认使用 Redis 位图模式，多个节点共享同一个过滤器
+ *
+ * 重建期间新增的账号同时写入旧过滤器和正在构建的过滤器，切换后不会丢失。
+ *
+ * 本地模式下每个节点各有一份过滤器，新增账号通过 Redis 频道广播给其他节点。
+ * 广播不保证送达（订阅断开期间的消息会丢失），漏收的节点在下次重建前会把新账号误判为不存在，
+ * 因此本地模式只适合单节点部署，多节点部署应使用 Redis 模式
+ */
+@Service
+@Slf4j
+public class AccountBloomFilterService {
+
+    /**
+     * Redis 位图Key
+     */
+    private static final String REDIS_BITMAP_KEY = "user:bloom:account";
+
+    /**
+     * 重建中的 Redis 位图Key，存在期间新增账号同时写入
+     */
+    private static final String REDIS_NEXT_KEY = "user:bloom:account:next";
+
+    /**
+     * 重建时扫描结果的临时Key
+     */
+    private static final String REDIS_SCAN_KEY = "user:bloom:account:scan";
+
+    /**
+     * 重建锁Key，保证同一时间只有一个节点重建
+     */
+    private static final String REDIS_LOCK_KEY = "user:bloom:account:lock";
+
+    /**
+     * 累计删除数Key
+     */
+    private static final String REDIS_DELETED_KEY = "user:bloom:account:deleted";
+
+    /**
+     * 本地模式下新增账号的广播频道
+     */
+    private static final String ADD_CHANNEL = "user:bloom:account:add";
+
+    /**
+     * 重建最长时间（秒），也是其他节点等待重建完成的最长时间
+     */
+    private static final long REDIS_REBUILD_SECONDS = 600;
+
+    /**
+     * 原子地把位写入当前位图，重建期间同时写入新位图
+     */
+    private static final DefaultRedisScript<Long> REDIS_ADD_SCRIPT = new DefaultRedisScript<>(
+            "local cur = redis.call('EXISTS', KEYS[1]) == 1 " +
+            "local nxt = redis.call('EXISTS', KEYS[2]) == 1 " +
+            "for i = 1, #ARGV do " +
+            "  if cur then redis.call('SETBIT', KEYS[1], ARGV[i], 1) end " +
+            "  if nxt then redis.call('SETBIT', KEYS[2], ARGV[i], 1) end " +
+            "end " +
+            "return 1", Long.class);
+
+    private final SqlSessionFactory sqlSessionFactory;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final UserPartitionRouter userPartitionRouter;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final RedisJobLock redisJobLock;
+
+    /**
+     * 是否启用
+     */
+    @Value("${bloom.account.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 预期账号数（本地模式为首个分段容量，Redis 模式为位图容量）
+     */
+    @Value("${bloom.account.expected-insertions:1000000}")
+    private long expectedInsertions;
+
+    /**
+     * 误判率
+     */
+    @Value("${bloom.account.fpp:0.01}")
+    private double fpp;
+
+    /**
+     * 是否使用 Redis 位图在节点间共享（关闭后为本地模式，只适合单节点部署）
+     */
+    @Value("${bloom.account.redis-enabled:true}")
+    private boolean redisEnabled;
+
+    /**
+     * 累计删除多少个账号后重建
+     */
+    @Value("${bloom.account.rebuild-after-deletions:10000}")
+    private long rebuildAfterDeletions;
+
+    /**
+     * 本地模式：当前过滤器
+     */
+    private volatile ScalableBloomFilter filter;
+
+    /**
+     * 本地模式：重建中的过滤器
+     */
+    private volatile ScalableBloomFilter building;
+
+    /**
+     * 过滤器是否已可用（可用前一律判定为可能存在）
+     */
+    private volatile boolean ready;
+
+    /**
+     * 本地模式的累计删除数
+     */
+    private final AtomicLong deletions = new AtomicLong();
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "account-bloom-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public AccountBloomFilterService(SqlSessionFactory sqlSessionFactory,
+                                     StringRedisTemplate stringRedisTemplate,
+                                     UserPartitionRouter userPartitionRouter,
+                                     RedisMessageListenerContainer listenerContainer,
+                                     RedisJobLock redisJobLock) {
+        this.sqlSessionFactory = sqlSessionFactory;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.userPartitionRouter = userPartitionRouter;
+        this.listenerContainer = listenerContainer;
+        this.redisJobLock = redisJobLock;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (enabled && !redisEnabled) {
+            // 本地模式订阅其他节点新增的账号
+            listenerContainer.addMessageListener(this::onAddMessage, new ChannelTopic(ADD_CHANNEL));
+            log.warn("账号布隆过滤器使用本地模式，只适合单节点部署");
+        }
+    }
+
+    /**
+     * 应用启动完成后在后台构建过滤器，不阻塞启动
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            return;
+        }
+        if (redisEnabled && Boolean.TRUE.equals(stringRedisTemplate.hasKey(REDIS_BITMAP_KEY))) {
+            // 其他节点已经构建好共享位图
+            ready = true;
+            log.info("账号布隆过滤器使用已有的 Redis 位图");
+            return;
+        }
+        triggerRebuild();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdownNow();
+    }
+
+    /**
+     * 判断账号是否可能存在（未删除）
+     *
+     * @return false 表示账号一定不存在；true 表示可能存在（需要查库确认）
+     */
+    public boolean mightContain(String userAccount) {
+        if (!enabled || !ready || userAccount == null) {
+            return true;
+        }
+        if (!redisEnabled) {
+            return filter.mightContain(userAccount);
+        }
+        try {
+            return redisMightContain(userAccount);
+        } catch (Exception e) {
+            log.warn("查询 Redis 布隆过滤器失败，按可能存在处理：{}", e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * 添加账号，在事务中调用时等事务提交后再添加
+     */
+    public void add(String userAccount) {
+        if (userAccount != null) {
+            addAll(Collections.singletonList(userAccount));
+        }
+    }
+
+    /**
+     * 批量添加账号，在事务中调用时等事务提交后再添加
+     *
+     * 提交后再添加保证重建时扫描不到的账号一定能写进新过滤器：
+     * 提交早于扫描开始则会被扫描到，晚于则会同时写入正在构建的过滤器
+     */
+    public void addAll(Collection<String> userAccounts) {
+        if (!enabled || userAccounts == null || userAccounts.isEmpty()) {
+            return;
+        }
+        List<String> accounts = new ArrayList<>(userAccounts);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    doAddAll(accounts);
+                }
+            });
+        } else {
+            doAddAll(accounts);
+        }
+    }
+
+    /**
+     * 记录删除的账号数，累计到阈值后重建
+     */
+    public void recordDeletions(int count) {
+        if (!enabled || count <= 0) {
+            return;
+        }
+        long total;
+        if (redisEnabled) {
+            Long value = stringRedisTemplate.opsForValue().increment(REDIS_DELETED_KEY, count);
+            total = value != null ? value : 0;
+        } else {
+            total = deletions.addAndGet(count);
+        }
+        if (total >= rebuildAfterDeletions) {
+            log.info("累计删除 {} 个账号，重建账号布隆过滤器", total);
+            triggerRebuild();
+        }
+    }
+
+    /**
+     * 在后台线程中重建过滤器，已有重建在进行时忽略
+     */
+    public void triggerRebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        rebuildExecutor.execute(() -> {
+            try {
+                if (redisEnabled) {
+                    rebuildRedis();
+                } else {
+                    rebuildLocal();
+                }
+            } catch (Exception e) {
+                log.error("重建账号布隆过滤器失败", e);
+            } finally {
+                rebuilding.set(false);
+            }
+        });
+    }
+
+    private void doAddAll(List<String> accounts) {
+        if (!redisEnabled) {
+            addLocal(accounts);
+            broadcastAdd(accounts);
+            return;
+        }
+        try {
+            long bits = redisBitSize();
+            int hashes = redisHashes(bits);
+            List<String> offsets = new ArrayList<>(accounts.size() * hashes);
+            for (String account : accounts) {
+                long hash = ScalableBloomFilter.hash(account);
+                for (int i = 0; i < hashes; i++) {
+                    offsets.add(String.valueOf(ScalableBloomFilter.bitIndex(hash, i, bits)));
+                }
+            }
+            stringRedisTemplate.execute(REDIS_ADD_SCRIPT, Arrays.asList(REDIS_BITMAP_KEY, REDIS_NEXT_KEY), offsets.toArray());
+        } catch (Exception e) {
+            // 写入失败会导致新账号被误判为不存在，丢弃共享位图，退回查库直到重建完成
+            log.error("写入 Redis 布隆过滤器失败，触发重建：{}", e.getMessage());
+            ready = false;
+            triggerRebuild();
+        }
+    }
+
+    /**
+     * 写入本地过滤器，重建期间同时写入正在构建的过滤器
+     */
+    private void addLocal(Collection<String> accounts) {
+        ScalableBloomFilter current = filter;
+        ScalableBloomFilter next = building;
+        for (String account : accounts) {
+            if (current != null) {
+                current.put(account);
+            }
+            if (next != null) {
+                next.put(account);
+            }
+        }
+    }
+
+    /**
+     * 把新增账号广播给其他节点（一条消息携带本批全部账号，换行分隔）
+     */
+    private void broadcastAdd(List<String> accounts) {
+        try {
+            stringRedisTemplate.convertAndSend(ADD_CHANNEL, String.join("\n", accounts));
+        } catch (Exception e) {
+            log.warn("广播新增账号失败，其他节点在重建前可能误判这些账号不存在：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 处理其他节点广播的新增账号（自己发出的消息也会收到，重复写入不影响结果）
+     */
+    private void onAddMessage(Message message, byte[] pattern) {
+        String payload = new String(message.getBody(), StandardCharsets.UTF_8);
+        addLocal(Arrays.asList(payload.split("\n")));
+    }
+
+    /**
+     * 本地模式重建：扫描期间新增的账号通过 building 同时写入
+     */
+    private void rebuildLocal() {
+        long start = System.currentTimeMillis();
+        ScalableBloomFilter next = new ScalableBloomFilter(expectedInsertions, fpp);
+        building = next;
+        try {
+            long count = scanAccounts(next::put);
+            deletions.set(0);
+            filter = next;
+            ready = true;
+            log.info("账号布隆过滤器重建完成，账号数：{}，位数组：{} KB，耗时：{}ms",
+                    count, next.bitSize() / 8 / 1024, System.currentTimeMillis() - start);
+        } finally {
+            building = null;
+        }
+    }
+
+    /**
+     * Redis 模式重建
+     *
+     * 1. 创建 next 位图，此后新增账号同时写入 next
+     * 2. 扫描数据库生成位图，SET 到临时Key，再 BITOP OR 合并进 next
+     * 3. RENAME next 为正式位图（原子替换）
+     */
+    private void rebuildRedis() {
+        RedisJobLock.Lease lease = redisJobLock.tryLock(REDIS_LOCK_KEY, TimeUnit.SECONDS.toMillis(REDIS_REBUILD_SECONDS));
+        if (lease == null) {
+            log.info("其他节点正在重建账号布隆过滤器，等待完成");
+            waitForRedisBitmap();
+            return;
+        }
+        try (lease) {
+            long start = System.currentTimeMillis();
+            long bits = redisBitSize();
+            int hashes = redisHashes(bits);
+            byte[] next = redisKey(REDIS_NEXT_KEY);
+            byte[] scan = redisKey(REDIS_SCAN_KEY);
+            stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+                connection.keyCommands().del(next, scan);
+                // 预先分配完整长度，同时作为"重建中"标记
+                connection.stringCommands().setBit(next, bits - 1, false);
+                return null;
+            });
+
+            byte[] bitmap = new byte[(int) ((bits + 7) >>> 3)];
+            long count = scanAccounts(account -> {
+                long hash = ScalableBloomFilter.hash(account);
+                for (int i = 0; i < hashes; i++) {
+                    long offset = ScalableBloomFilter.bitIndex(hash, i, bits);
+                    // Redis 位图中偏移 0 是第一个字节的最高位
+                    bitmap[(int) (offset >>> 3)] |= (byte) (0x80 >>> (offset & 7));
+                }
+            });
+
+            stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+                connection.stringCommands().set(scan, bitmap);
+                connection.stringCommands().bitOp(RedisStringCommands.BitOperation.OR, next, next, scan);
+                connection.keyCommands().rename(next, redisKey(REDIS_BITMAP_KEY));
+                connection.keyCommands().del(scan, redisKey(REDIS_DELETED_KEY));
+                return null;
+            });
+            ready = true;
+            log.info("Redis 账号布隆过滤器重建完成，账号数：{}，位图：{} KB，耗时：{}ms",
+                    count, bitmap.length / 1024, System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * 等待其他节点完成 Redis 位图构建
+     */
+    private void waitForRedisBitmap() {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(REDIS_REBUILD_SECONDS);
+        while (System.currentTimeMillis() < deadline) {
+            if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(REDIS_BITMAP_KEY))
+                    && !Boolean.TRUE.equals(stringRedisTemplate.hasKey(REDIS_NEXT_KEY))) {
+                ready = true;
+                return;
+            }
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        log.warn("等待 Redis 账号布隆过滤器构建超时");
+    }
+
+    /**
+     * 一次管道往返读取所有位；位图丢失（如 Redis 被清空）时按可能存在处理并触发重建
+     */
+    private boolean redisMightContain(String userAccount) {
+        long bits = redisBitSize();
+        int hashes = redisHashes(bits);
+        long hash = ScalableBloomFilter.hash(userAccount);
+        byte[] key = redisKey(REDIS_BITMAP_KEY);
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.keyCommands().exists(key);
+            for (int i = 0; i < hashes; i++) {
+                connection.stringCommands().getBit(key, ScalableBloomFilter.bitIndex(hash, i, bits));
+            }
+            return null;
+        });
+        if (!isExistsResult(results.get(0))) {
+            ready = false;
+            triggerRebuild();
+            return true;
+        }
+        for (int i = 1; i < results.size(); i++) {
+            if (!Boolean.TRUE.equals(results.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isExistsResult(Object result) {
+        if (result instanceof Boolean) {
+            return (Boolean) result;
+        }
+        return result instanceof Number && ((Number) result).longValue() > 0;
+    }
+
+    /**
+     * 流式扫描所有未删除账号
+     *
+     * @return 扫描的账号数
+     */
+    private long scanAccounts(Consumer<String> consumer) {
+        long count = 0;
+        for (int partition = 0; partition < userPartitionRouter.getPartitionCount(); partition++) {
+            try (SqlSession session = sqlSessionFactory.openSession();
+                 Cursor<String> cursor = userPartitionRouter.callIn(partition,
+                         () -> session.getMapper(UserMapper.class).streamAccounts())) {
+                for (String account : cursor) {
+                    consumer.accept(account);
+                    count++;
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("关闭账号游标失败", e);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Redis 位图大小固定由配置决定，所有节点计算结果一致
+     */
+    private long redisBitSize() {
+        return ScalableBloomFilter.optimalBits(expectedInsertions, fpp);
+    }
+
+    private int redisHashes(long bits) {
+        return ScalableBloomFilter.optimalHashes(expectedInsertions, bits);
+    }
+
+    private static byte[] redisKey(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,350 @@
+package com.weiki.usercenter.service;
+
+import com.weiki.usercenter.storage.StoredFile;
+import com.weiki.usercenter.utils.OffHeapByteCache;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.catalina.connector.CoyoteOutputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 头像文件输出
+ *
+ * 功能：
+ * - 内容哈希命名的头像内容不会变化，返回强 ETag 和一年的 immutable 缓存头；旧版头像使用弱 ETag 和短缓存
+ * - If-None-Match / If-Modified-Since 命中时返回 304
+ * - 支持单个区间的 Range 请求（206），多区间请求按完整内容返回，区间无效时返回 416
+ * - 本地存储的文件内容不经过堆内存：Tomcat 支持 sendfile 时交给连接器直接发送，
+ *   否则用 FileChannel.transferTo 写入响应流；对象存储的文件按区间读取后流式写出
+ * - 内容哈希命名的头像缓存在堆外内存中（OffHeapByteCache，TinyLFU 准入），命中时直接从堆外缓冲区写出，不读磁盘
+ */
+@Service
+@Slf4j
+public class AvatarDeliveryService {
+
+    /**
+     * Tomcat sendfile 请求属性
+     */
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    /**
+     * 无法满足的区间
+     */
+    private static final long[] INVALID_RANGE = new long[0];
+
+    /**
+     * 流式输出的缓冲区大小（字节）
+     */
+    private static final int STREAM_BUFFER_BYTES = 16384;
+
+    /**
+     * 使用 sendfile 的最小文件大小（字节），小文件直接写出更快
+     */
+    @Value("${file.upload.avatar-sendfile-min-bytes:16384}")
+    private long sendfileMinBytes;
+
+    /**
+     * 旧版头像（非内容哈希命名）的缓存时间（秒）
+     */
+    @Value("${file.upload.avatar-legacy-max-age:3600}")
+    private long legacyMaxAge;
+
+    /**
+     * 是否启用堆外头像缓存
+     */
+    @Value("${file.upload.avatar-cache-enabled:true}")
+    private boolean cacheEnabled;
+
+    /**
+     * 堆外缓存总大小（字节），启动时一次性分配
+     */
+    @Value("${file.upload.avatar-cache-bytes:67108864}")
+    private int cacheBytes;
+
+    /**
+     * 堆外缓存页大小（字节）
+     */
+    @Value("${file.upload.avatar-cache-page-bytes:4096}")
+    private int cachePageBytes;
+
+    /**
+     * 单个头像文件的最大缓存大小（字节），超过时不缓存
+     */
+    @Value("${file.upload.avatar-cache-max-entry-bytes:262144}")
+    private int cacheMaxEntryBytes;
+
+    private OffHeapByteCache cache;
+
+    private final LongAdder served = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder partial = new LongAdder();
+    private final LongAdder sendfile = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        if (cacheEnabled) {
+            cache = new OffHeapByteCache(cacheBytes, cachePageBytes, cacheMaxEntryBytes);
+            log.info("头像堆外缓存：{} MB，页大小 {} 字节", cacheBytes / 1024 / 1024, cachePageBytes);
+        }
+    }
+
+    /**
+     * 输出头像文件
+     *
+     * @param file 头像文件
+     * @param version 内容版本（内容哈希 + 文件名），为null表示内容可能变化的旧版头像
+     */
+    public void write(HttpServletRequest request, HttpServletResponse response, StoredFile file, String version)
+            throws IOException {
+        long length = file.getLength();
+        long lastModified = file.getLastModified();
+        String etag = version != null
+                ? "\"" + version + "\""
+                : "W/\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL,
+                version != null ? IMMUTABLE_CACHE_CONTROL : "public, max-age=" + legacyMaxAge);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        // 同时处理 If-None-Match 和 If-Modified-Since，命中时已设置 304 状态
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            notModified.increment();
+            return;
+        }
+
+        MediaType mediaType = MediaTypeFactory.getMediaType(file.getName())
+                .orElse(MediaType.APPLICATION_OCTET_STREAM);
+        response.setContentType(mediaType.toString());
+
+        long start = 0;
+        long end = length;
+        long[] range = parseRange(request, etag, length);
+        if (range == INVALID_RANGE) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+        if (range != null) {
+            start = range[0];
+            end = range[1];
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + length);
+            partial.increment();
+        }
+        response.setContentLengthLong(end - start);
+        served.increment();
+        if ("HEAD".equals(request.getMethod())) {
+            return;
+        }
+
+        if (version != null && cache != null && serveFromCache(response, file, version, length, start, end)) {
+            return;
+        }
+
+        Path localPath = file.getLocalPath();
+        if (localPath == null) {
+            writeStream(response, file, start, end);
+            return;
+        }
+        if (end - start >= sendfileMinBytes && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // 由 Tomcat 在请求处理结束后用 sendfile 发送
+            request.setAttribute(SENDFILE_FILENAME, localPath.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+            sendfile.increment();
+            bytesSent.add(end - start);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(localPath, StandardOpenOption.READ)) {
+            OutputStream out = response.getOutputStream();
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = start;
+            while (position < end) {
+                long written = channel.transferTo(position, end - position, target);
+                if (written <= 0) {
+                    // 文件被截断
+                    break;
+                }
+                position += written;
+            }
+            bytesSent.add(position - start);
+        }
+    }
+
+    /**
+     * 从存储读取区间内容写出（非本地存储）
+     */
+    private void writeStream(HttpServletResponse response, StoredFile file, long start, long end) throws IOException {
+        try (InputStream in = file.open(start, end)) {
+            OutputStream out = response.getOutputStream();
+            byte[] buffer = new byte[STREAM_BUFFER_BYTES];
+            long remaining = end - start;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    // 对象被删除或截断
+                    break;
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+            bytesSent.add(end - start - remaining);
+        }
+    }
+
+    /**
+     * 从堆外缓存删除头像的所有尺寸（头像文件被回收时调用）
+     */
+    public void evict(String avatarId) {
+        if (cache != null) {
+            cache.invalidatePrefix(avatarId + "-");
+        }
+    }
+
+    /**
+     * 输出统计
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("served", served.sum());
+        stats.put("notModified", notModified.sum());
+        stats.put("partial", partial.sum());
+        stats.put("sendfile", sendfile.sum());
+        stats.put("bytesSent", bytesSent.sum());
+        if (cache != null) {
+            cache.getStats().forEach((name, value) -> stats.put("cache." + name, value));
+        }
+        return stats;
+    }
+
+    /**
+     * 缓存命中时从堆外缓冲区写出；未命中且缓存准入时把完整文件读入缓存，再从缓存写出请求的区间，
+     * 每次请求最多读取一次存储。读取失败时抛出异常，与直接从存储发送时一致
+     *
+     * @return 是否已从缓存写出，未准入时返回false，由调用方直接从存储发送
+     */
+    private boolean serveFromCache(HttpServletResponse response, StoredFile file, String version,
+                                   long length, long start, long end) throws IOException {
+        try (OffHeapByteCache.Handle handle = cache.get(version)) {
+            if (handle != null) {
+                writeCached(response, handle, start, end);
+                return true;
+            }
+        }
+        if (length > cacheMaxEntryBytes) {
+            return false;
+        }
+        // 先确认准入并预留空间再读取文件，冷门头像不会多读一次
+        try (OffHeapByteCache.Loader loader = cache.reserve(version, (int) length)) {
+            if (loader == null) {
+                return false;
+            }
+            OffHeapByteCache.Handle loaded;
+            try (ReadableByteChannel channel = Channels.newChannel(file.open(0, length))) {
+                loaded = loader.load(channel);
+            }
+            if (loaded == null) {
+                // 读入期间头像被回收
+                return false;
+            }
+            try (loaded) {
+                writeCached(response, loaded, start, end);
+            }
+            return true;
+        }
+    }
+
+    private void writeCached(HttpServletResponse response, OffHeapByteCache.Handle handle, long start, long end)
+            throws IOException {
+        OutputStream out = response.getOutputStream();
+        for (ByteBuffer buffer : handle.buffers(start, end)) {
+            writeBuffer(out, buffer);
+        }
+        bytesSent.add(end - start);
+    }
+
+    /**
+     * 写出直接缓冲区：Tomcat 的输出流可直接接收 ByteBuffer，其他容器经由通道写出
+     */
+    private void writeBuffer(OutputStream out, ByteBuffer buffer) throws IOException {
+        if (out instanceof CoyoteOutputStream) {
+            ((CoyoteOutputStream) out).write(buffer);
+            return;
+        }
+        WritableByteChannel channel = Channels.newChannel(out);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * 解析单个区间的 Range 请求头
+     *
+     * @return [起始, 结束（不含）]；没有 Range、If-Range 不匹配或多区间时返回null；区间无效时返回 INVALID_RANGE
+     */
+    private long[] parseRange(HttpServletRequest request, String etag, long length) {
+        String header = request.getHeader(HttpHeaders.RANGE);
+        if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return null;
+        }
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        // If-Range 只接受强 ETag 比较，内容可能已变化时返回完整内容
+        if (ifRange != null && (etag.startsWith("W/") || !ifRange.equals(etag))) {
+            return null;
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return INVALID_RANGE;
+        }
+        try {
+            long start;
+            long end;
+            if (dash == 0) {
+                // 后缀区间：最后 N 个字节
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0) {
+                    return INVALID_RANGE;
+                }
+                start = Math.max(0, length - suffix);
+                end = length;
+            } else {
+                start = Long.parseLong(spec.substring(0, dash));
+                end = dash == spec.length() - 1 ? length : Math.min(length, Long.parseLong(spec.substring(dash + 1)) + 1);
+            }
+            if (start >= length || start >= end) {
+                return INVALID_RANGE;
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return INVALID_RANGE;
+        }
+    }
+}
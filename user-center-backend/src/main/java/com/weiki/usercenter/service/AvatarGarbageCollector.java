@@ -0,0 +1,330 @@
+package com.weiki.usercenter.service;
+
+import com.weiki.usercenter.datasource.UserPartitionRouter;
+import com.weiki.usercenter.entity.AvatarFile;
+import com.weiki.usercenter.mapper.AvatarFileMapper;
+import com.weiki.usercenter.mapper.UserMapper;
+import com.weiki.usercenter.storage.AvatarStorage;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 头像文件回收服务
+ *
+ * 头像按内容哈希存储，avatar_file 表记录每个哈希的引用次数。引用次数在上传和更换头像时增减，
+ * 进程崩溃等情况下可能与实际不符，因此定时任务以用户表为准重新统计：
+ * - 流式扫描所有分区和归档表的 avatar_url（已删除和已归档的用户都可能重新注册恢复，头像随之恢复），统计每个头像的实际引用数
+ * - 只处理 grace-minutes 之前就没有变化过的记录，锁定后引用为0的删除文件和记录，引用数不符的修正
+ * - 清理存储中超过宽限期、既没有登记也没有被引用的头像（上传中途失败的文件、旧版按用户存储的头像）
+ * 多节点部署时通过 Redis 锁保证同一时间只有一个节点执行；每次执行不超过 max-run-minutes，
+ * 统计引用数未能在期限内完成时放弃本次执行（不完整的统计会把仍被引用的头像当成无引用）
+ */
+@Service
+@Slf4j
+public class AvatarGarbageCollector {
+
+    /**
+     * 回收任务锁（防止多个节点同时执行）
+     */
+    private static final String LOCK_KEY = "avatar:gc:lock";
+
+    private final FileUploadService fileUploadService;
+    private final AvatarDeliveryService avatarDeliveryService;
+    private final AvatarStorage avatarStorage;
+    private final AvatarFileMapper avatarFileMapper;
+    private final SqlSessionFactory sqlSessionFactory;
+    private final UserPartitionRouter userPartitionRouter;
+    private final RedisJobLock redisJobLock;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * 是否启用定时回收
+     */
+    @Value("${file.upload.avatar-gc-enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 宽限期（分钟）：期间有过变化的记录和文件不回收，覆盖上传到写入用户表之间的时间差
+     */
+    @Value("${file.upload.avatar-gc-grace-minutes:60}")
+    private long graceMinutes;
+
+    /**
+     * 每批处理的记录数
+     */
+    @Value("${file.upload.avatar-gc-batch-size:200}")
+    private int batchSize;
+
+    /**
+     * 单次执行的最长时间（分钟），到期后剩余的记录留到下次
+     */
+    @Value("${file.upload.avatar-gc-max-run-minutes:50}")
+    private long maxRunMinutes;
+
+    @Value("${file.upload.avatar-url:/api/avatar}")
+    private String avatarUrlPrefix;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final LongAdder deletedFiles = new LongAdder();
+    private final LongAdder correctedCounts = new LongAdder();
+    private final LongAdder sweptOrphans = new LongAdder();
+    private volatile long lastRunAt;
+    private volatile long lastRunMillis;
+    private volatile long lastRunReferenced;
+
+    public AvatarGarbageCollector(FileUploadService fileUploadService,
+                                  AvatarDeliveryService avatarDeliveryService,
+                                  AvatarStorage avatarStorage,
+                                  AvatarFileMapper avatarFileMapper,
+                                  SqlSessionFactory sqlSessionFactory,
+                                  UserPartitionRouter userPartitionRouter,
+                                  RedisJobLock redisJobLock,
+                                  PlatformTransactionManager transactionManager) {
+        this.fileUploadService = fileUploadService;
+        this.avatarDeliveryService = avatarDeliveryService;
+        this.avatarStorage = avatarStorage;
+        this.avatarFileMapper = avatarFileMapper;
+        this.sqlSessionFactory = sqlSessionFactory;
+        this.userPartitionRouter = userPartitionRouter;
+        this.redisJobLock = redisJobLock;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 定时回收（默认每天凌晨4点半，在用户归档之后）
+     */
+    @Scheduled(cron = "${file.upload.avatar-gc-cron:0 30 4 * * ?}")
+    public void scheduledCollect() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            collect();
+        } catch (Exception e) {
+            log.error("头像回收任务失败：{}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 执行一次回收
+     *
+     * @return 本次删除的头像数，其他节点或线程正在执行时返回-1
+     */
+    public long collect() {
+        if (!running.compareAndSet(false, true)) {
+            return -1;
+        }
+        RedisJobLock.Lease lease = redisJobLock.tryLock(LOCK_KEY, TimeUnit.MINUTES.toMillis(maxRunMinutes));
+        if (lease == null) {
+            running.set(false);
+            log.info("其他节点正在执行头像回收，跳过本次");
+            return -1;
+        }
+        try (lease) {
+            long start = System.currentTimeMillis();
+            long deadline = lease.getDeadline();
+            // 宽限期从扫描开始前算起，扫描期间发生的上传和更换都不会被误删
+            LocalDateTime before = LocalDateTime.now().minusMinutes(graceMinutes);
+            Map<String, Integer> references = countReferences(deadline);
+            if (references == null) {
+                log.warn("统计头像引用数超过 {} 分钟，放弃本次回收", maxRunMinutes);
+                return 0;
+            }
+            long deleted = reconcile(references, before, deadline);
+            long swept = sweepOrphans(references, before, deadline);
+            lastRunAt = start;
+            lastRunMillis = System.currentTimeMillis() - start;
+            lastRunReferenced = references.size();
+            log.info("头像回收完成，被引用 {} 个，删除 {} 个，清理未登记 {} 个，耗时 {} ms",
+                    references.size(), deleted, swept, lastRunMillis);
+            return deleted + swept;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 回收统计
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("running", running.get() ? 1L : 0L);
+        stats.put("deletedFiles", deletedFiles.sum());
+        stats.put("correctedCounts", correctedCounts.sum());
+        stats.put("sweptOrphans", sweptOrphans.sum());
+        stats.put("lastRunAt", lastRunAt);
+        stats.put("lastRunMillis", lastRunMillis);
+        stats.put("lastRunReferenced", lastRunReferenced);
+        return stats;
+    }
+
+    /**
+     * 流式扫描所有分区和归档表，统计每个头像ID被引用的次数
+     *
+     * @return 引用次数，超过 deadline 时返回null
+     */
+    private Map<String, Integer> countReferences(long deadline) {
+        Map<String, Integer> references = new HashMap<>();
+        String prefix = avatarUrlPrefix + "/";
+        for (int partition = 0; partition < userPartitionRouter.getPartitionCount(); partition++) {
+            if (!countIn(partition, mapper -> mapper.streamAvatarUrls(prefix), references, deadline)) {
+                return null;
+            }
+        }
+        // 归档表不分区，只扫描一次（分区0只用于满足分区拦截器，表名不会被替换）
+        if (!countIn(0, mapper -> mapper.streamArchivedAvatarUrls(prefix), references, deadline)) {
+            return null;
+        }
+        return references;
+    }
+
+    /**
+     * 在指定分区上执行流式查询，把引用次数累加到 references
+     *
+     * @return 是否在 deadline 之前完成
+     */
+    private boolean countIn(int partition, Function<UserMapper, Cursor<String>> query,
+                            Map<String, Integer> references, long deadline) {
+        try (SqlSession session = sqlSessionFactory.openSession();
+             Cursor<String> cursor = userPartitionRouter.callIn(partition,
+                     () -> query.apply(session.getMapper(UserMapper.class)))) {
+            for (String url : cursor) {
+                if (System.currentTimeMillis() >= deadline) {
+                    return false;
+                }
+                String avatarId = fileUploadService.avatarIdOf(url);
+                if (avatarId != null) {
+                    references.merge(avatarId, 1, Integer::sum);
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            throw new IllegalStateException("关闭头像游标失败", e);
+        }
+    }
+
+    /**
+     * 按哈希分页核对 avatar_file，删除无引用的头像，修正引用数
+     *
+     * @return 删除的头像数
+     */
+    private long reconcile(Map<String, Integer> references, LocalDateTime before, long deadline) {
+        long deleted = 0;
+        String afterHash = null;
+        while (System.currentTimeMillis() < deadline) {
+            List<AvatarFile> page = avatarFileMapper.selectStale(before, afterHash, batchSize);
+            if (page.isEmpty()) {
+                break;
+            }
+            afterHash = page.get(page.size() - 1).getHash();
+            for (AvatarFile candidate : page) {
+                int actual = references.getOrDefault(candidate.getHash(), 0);
+                if (actual == candidate.getRefCount()) {
+                    continue;
+                }
+                try {
+                    Boolean removed = transactionTemplate.execute(status -> reconcileOne(candidate.getHash(), actual, before));
+                    if (Boolean.TRUE.equals(removed)) {
+                        deleted++;
+                    }
+                } catch (Exception e) {
+                    log.error("头像回收失败：{}：{}", candidate.getHash(), e.getMessage());
+                }
+            }
+            if (page.size() < batchSize) {
+                break;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * 锁定记录后处理单个头像；锁定期间的上传会等待，锁定前的上传已更新过 update_time 而不再命中
+     *
+     * @return 是否删除了头像
+     */
+    private boolean reconcileOne(String hash, int actual, LocalDateTime before) {
+        AvatarFile locked = avatarFileMapper.lockStale(hash, before);
+        if (locked == null || locked.getRefCount() == actual) {
+            return false;
+        }
+        if (actual > 0) {
+            avatarFileMapper.updateRefCount(hash, actual);
+            correctedCounts.increment();
+            log.warn("修正头像引用次数：{}，{} -> {}", hash, locked.getRefCount(), actual);
+            return false;
+        }
+        // 先删文件再删记录：删除文件失败时事务回滚，记录保留到下次
+        try {
+            avatarStorage.delete(hash);
+        } catch (IOException e) {
+            throw new IllegalStateException("删除头像文件失败：" + hash, e);
+        }
+        avatarFileMapper.delete(hash);
+        avatarDeliveryService.evict(hash);
+        deletedFiles.increment();
+        return true;
+    }
+
+    /**
+     * 清理存储中超过宽限期、没有登记且没有被引用的头像
+     *
+     * @return 清理的条目数
+     */
+    private long sweepOrphans(Map<String, Integer> references, LocalDateTime before, long deadline) {
+        List<String> candidates = new ArrayList<>();
+        try {
+            avatarStorage.forEachAvatar(before.atZone(ZoneId.systemDefault()).toInstant(), name -> {
+                if (!references.containsKey(name)) {
+                    candidates.add(name);
+                }
+            });
+        } catch (IOException e) {
+            log.error("遍历头像存储失败：{}", e.getMessage());
+            return 0;
+        }
+
+        long swept = 0;
+        for (int from = 0; from < candidates.size() && System.currentTimeMillis() < deadline; from += batchSize) {
+            List<String> batch = candidates.subList(from, Math.min(candidates.size(), from + batchSize));
+            // 已登记的由 reconcile 按引用次数处理
+            Set<String> registered = new HashSet<>(avatarFileMapper.selectExistingHashes(batch));
+            for (String name : batch) {
+                if (registered.contains(name)) {
+                    continue;
+                }
+                try {
+                    avatarStorage.delete(name);
+                    swept++;
+                    sweptOrphans.increment();
+                } catch (IOException e) {
+                    log.error("清理头像失败：{}：{}", name, e.getMessage());
+                }
+            }
+        }
+        return swept;
+    }
+}
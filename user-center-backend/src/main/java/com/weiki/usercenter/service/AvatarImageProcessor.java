@@ -0,0 +1,219 @@
+package com.weiki.usercenter.service;
+
+import com.weiki.usercenter.exception.BusinessException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 头像图片处理
+ *
+ * 上传的图片只解码一次（忽略元数据），居中裁剪为正方形后按配置的尺寸从大到小逐级缩放，
+ * 重新编码为 JPEG（有透明通道时为 PNG）。重新编码后不包含 EXIF、GPS 等原图元数据。
+ *
+ * 解码后的原图按像素全部放在堆内存中（每像素 3~4 字节），同步上传接口在请求线程中处理，
+ * 因此同时处理的图片数由信号量限制（max-concurrent-decodes），等待超过 decode-wait-ms 时返回 503
+ */
+@Service
+@Slf4j
+public class AvatarImageProcessor {
+
+    /**
+     * 输出尺寸（像素，正方形边长）
+     */
+    @Value("${file.upload.avatar-sizes:32,64,128,512}")
+    private int[] sizes;
+
+    /**
+     * 允许解码的最大像素数（防止解压炸弹），默认 4096×4096，解码后约占 64MB 堆内存
+     */
+    @Value("${file.upload.avatar-max-pixels:16777216}")
+    private long maxPixels;
+
+    /**
+     * 同时处理的最大图片数
+     */
+    @Value("${file.upload.avatar-max-concurrent-decodes:2}")
+    private int maxConcurrentDecodes;
+
+    /**
+     * 等待处理名额的最长时间（毫秒）
+     */
+    @Value("${file.upload.avatar-decode-wait-ms:5000}")
+    private long decodeWaitMillis;
+
+    private Semaphore decodePermits;
+
+    /**
+     * JPEG 压缩质量（0 ~ 1）
+     */
+    @Value("${file.upload.avatar-jpeg-quality:0.85}")
+    private float jpegQuality;
+
+    @PostConstruct
+    public void init() {
+        decodePermits = new Semaphore(maxConcurrentDecodes, true);
+    }
+
+    /**
+     * 配置的尺寸，从小到大
+     */
+    public int[] getSizes() {
+        int[] sorted = sizes.clone();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * 解码图片并生成所有尺寸
+     *
+     * @throws IllegalArgumentException 无法识别的图片或尺寸超限
+     * @throws BusinessException 等待处理名额超时（503）
+     */
+    public List<Rendition> process(InputStream input) throws IOException {
+        try {
+            if (!decodePermits.tryAcquire(decodeWaitMillis, TimeUnit.MILLISECONDS)) {
+                log.warn("同时处理的头像图片数已达上限 {}，拒绝处理", maxConcurrentDecodes);
+                throw new BusinessException(503, "服务繁忙，请稍后重试");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException(503, "服务繁忙，请稍后重试");
+        }
+        try {
+            return doProcess(input);
+        } finally {
+            decodePermits.release();
+        }
+    }
+
+    private List<Rendition> doProcess(InputStream input) throws IOException {
+        BufferedImage source = decode(input);
+        boolean alpha = source.getColorModel().hasAlpha();
+        String format = alpha ? "png" : "jpg";
+
+        int side = Math.min(source.getWidth(), source.getHeight());
+        BufferedImage current = source.getSubimage(
+                (source.getWidth() - side) / 2, (source.getHeight() - side) / 2, side, side);
+
+        int[] sorted = getSizes();
+        List<Rendition> renditions = new ArrayList<>(sorted.length);
+        // 从大到小缩放，每个尺寸以上一个尺寸为输入
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            current = scale(current, Math.min(sorted[i], current.getWidth()), alpha);
+            renditions.add(new Rendition(sorted[i], format, encode(current, format)));
+        }
+        return renditions;
+    }
+
+    private BufferedImage decode(InputStream input) throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(input)) {
+            Iterator<ImageReader> readers = iis == null ? null : ImageIO.getImageReaders(iis);
+            if (readers == null || !readers.hasNext()) {
+                throw new IllegalArgumentException("无法识别的图片格式");
+            }
+            ImageReader reader = readers.next();
+            try {
+                // 只读第一帧，忽略元数据
+                reader.setInput(iis, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxPixels) {
+                    throw new IllegalArgumentException("图片尺寸过大");
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 缩放到 target 边长；缩小超过一半时逐级减半，避免一次大比例缩放产生锯齿
+     */
+    private BufferedImage scale(BufferedImage image, int target, boolean alpha) {
+        int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage current = image;
+        int width = image.getWidth();
+        do {
+            width = Math.max(target, width / 2);
+            BufferedImage next = new BufferedImage(width, width, type);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(current, 0, 0, width, width, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (width > target);
+        return current;
+    }
+
+    private byte[] encode(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if ("png".equals(format)) {
+            ImageIO.write(image, "png", out);
+            return out.toByteArray();
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 一个尺寸的输出
+     */
+    public static class Rendition {
+        private final int size;
+        private final String format;
+        private final byte[] data;
+
+        public Rendition(int size, String format, byte[] data) {
+            this.size = size;
+            this.format = format;
+            this.data = data;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public String getFormat() {
+            return format;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+    }
+}
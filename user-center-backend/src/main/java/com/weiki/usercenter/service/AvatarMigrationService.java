@@ -0,0 +1,225 @@
+package com.weiki.usercenter.service;
+
+import com.weiki.usercenter.datasource.UserPartitionRouter;
+import com.weiki.usercenter.entity.User;
+import com.weiki.usercenter.mapper.UserMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 内联头像迁移服务
+ *
+ * 早期版本把头像以 Base64 Data URL 直接存在 avatar_url 列中，每次查询用户和写入 Redis 会话都要带上整张图片。
+ * 定时任务把这些数据转存为头像文件，avatar_url 改写为短URL：
+ * - 按主键键集分页逐批处理，每个分区的进度保存在 Redis 中，中断（停机、超时）后从上次的位置继续
+ * - 改写时校验版本号，期间用户自己修改过的行跳过，并释放刚转存的头像引用
+ * - 无法解码的数据保留原样并计入失败数，不阻塞后续数据
+ * - 批次之间暂停 pause-ms；多节点部署时通过 Redis 锁保证同一时间只有一个节点执行
+ * 新写入的内联数据由 FileUploadService.normalizeAvatarUrl 在注册和修改时转存，迁移完成后不会再出现
+ */
+@Service
+@Slf4j
+public class AvatarMigrationService {
+
+    /**
+     * 迁移任务锁（防止多个节点同时执行）
+     */
+    private static final String LOCK_KEY = "avatar:migration:lock";
+
+    /**
+     * 各分区迁移进度（最后处理的用户ID）Key前缀
+     */
+    private static final String CURSOR_KEY_PREFIX = "avatar:migration:cursor:";
+
+    private final UserMapper userMapper;
+    private final UserPartitionRouter userPartitionRouter;
+    private final FileUploadService fileUploadService;
+    private final UserCacheService userCacheService;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisJobLock redisJobLock;
+
+    /**
+     * 是否启用定时迁移
+     */
+    @Value("${file.upload.avatar-migration-enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 每批处理的行数（每行可能有数MB，不宜过大）
+     */
+    @Value("${file.upload.avatar-migration-batch-size:20}")
+    private int batchSize;
+
+    /**
+     * 批次之间的暂停时间（毫秒）
+     */
+    @Value("${file.upload.avatar-migration-pause-ms:200}")
+    private long pauseMillis;
+
+    /**
+     * 单次任务最长执行时间（分钟），超出后从保存的进度继续
+     */
+    @Value("${file.upload.avatar-migration-max-run-minutes:30}")
+    private long maxRunMinutes;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile boolean stopping;
+
+    private final LongAdder migrated = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile long lastRunAt;
+    private volatile long lastRunMillis;
+    private volatile long lastRunMigrated;
+
+    public AvatarMigrationService(UserMapper userMapper,
+                                  UserPartitionRouter userPartitionRouter,
+                                  FileUploadService fileUploadService,
+                                  UserCacheService userCacheService,
+                                  StringRedisTemplate stringRedisTemplate,
+                                  RedisJobLock redisJobLock) {
+        this.userMapper = userMapper;
+        this.userPartitionRouter = userPartitionRouter;
+        this.fileUploadService = fileUploadService;
+        this.userCacheService = userCacheService;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redisJobLock = redisJobLock;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopping = true;
+    }
+
+    /**
+     * 定时迁移（默认每小时一次，没有待迁移数据时每个分区只有一次查询）
+     */
+    @Scheduled(cron = "${file.upload.avatar-migration-cron:0 15 * * * ?}")
+    public void scheduledMigrate() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            migrate(false);
+        } catch (Exception e) {
+            log.error("头像迁移任务失败：{}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 执行一次迁移
+     *
+     * @param restart 是否清除进度从头扫描（如需重试之前失败的数据）
+     * @return 本次迁移的用户数，其他节点或线程正在执行时返回-1
+     */
+    public long migrate(boolean restart) {
+        if (!running.compareAndSet(false, true)) {
+            return -1;
+        }
+        RedisJobLock.Lease lease = redisJobLock.tryLock(LOCK_KEY, TimeUnit.MINUTES.toMillis(maxRunMinutes));
+        if (lease == null) {
+            running.set(false);
+            log.info("其他节点正在执行头像迁移，跳过本次");
+            return -1;
+        }
+        try (lease) {
+            long start = System.currentTimeMillis();
+            long deadline = lease.getDeadline();
+            long total = 0;
+            for (int partition = 0; partition < userPartitionRouter.getPartitionCount(); partition++) {
+                int p = partition;
+                if (restart) {
+                    stringRedisTemplate.delete(CURSOR_KEY_PREFIX + p);
+                }
+                total += userPartitionRouter.callIn(p, () -> migratePartition(p, deadline));
+            }
+            lastRunAt = start;
+            lastRunMillis = System.currentTimeMillis() - start;
+            lastRunMigrated = total;
+            if (total > 0) {
+                log.info("头像迁移完成，迁移 {} 个用户，耗时 {} ms", total, lastRunMillis);
+            }
+            return total;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 迁移统计
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("running", running.get() ? 1L : 0L);
+        stats.put("migrated", migrated.sum());
+        stats.put("conflicts", conflicts.sum());
+        stats.put("failed", failed.sum());
+        stats.put("lastRunAt", lastRunAt);
+        stats.put("lastRunMillis", lastRunMillis);
+        stats.put("lastRunMigrated", lastRunMigrated);
+        return stats;
+    }
+
+    /**
+     * 迁移当前分区（由 callIn 指定），直到没有待迁移数据、超时或停机
+     */
+    private long migratePartition(int partition, long deadline) {
+        String cursorKey = CURSOR_KEY_PREFIX + partition;
+        String saved = stringRedisTemplate.opsForValue().get(cursorKey);
+        Long afterId = saved == null ? null : Long.valueOf(saved);
+        long total = 0;
+        while (!stopping && System.currentTimeMillis() < deadline) {
+            List<User> batch = userMapper.selectInlineAvatars(afterId, batchSize);
+            if (batch.isEmpty()) {
+                break;
+            }
+            for (User user : batch) {
+                if (migrateOne(user)) {
+                    total++;
+                }
+            }
+            afterId = batch.get(batch.size() - 1).getId();
+            stringRedisTemplate.opsForValue().set(cursorKey, String.valueOf(afterId));
+            if (batch.size() < batchSize || !RedisJobLock.pause(pauseMillis)) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 转存单个用户的内联头像并改写URL
+     *
+     * @return 是否迁移成功
+     */
+    private boolean migrateOne(User user) {
+        String avatarUrl;
+        try {
+            avatarUrl = fileUploadService.normalizeAvatarUrl(user.getAvatarUrl(), user.getId());
+        } catch (RuntimeException e) {
+            failed.increment();
+            log.warn("内联头像转存失败，用户ID：{}：{}", user.getId(), e.getMessage());
+            return false;
+        }
+        if (userMapper.updateAvatarUrlIfVersion(user.getId(), avatarUrl, user.getVersion()) == 0) {
+            // 读取之后用户修改过资料（可能已换头像），本次转存作废
+            fileUploadService.releaseAvatar(avatarUrl);
+            conflicts.increment();
+            return false;
+        }
+        userCacheService.evict(user.getId());
+        migrated.increment();
+        return true;
+    }
+}
@@ -0,0 +1,302 @@
+package com.weiki.usercenter.service;
+
+import cn.hutool.core.util.IdUtil;
+import com.weiki.usercenter.dto.AvatarUploadJobVO;
+import com.weiki.usercenter.exception.BusinessException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 异步头像上传服务
+ *
+ * 请求线程只负责接收图片内容（校验文件头和大小、计算哈希，写入临时文件），随即返回任务ID；
+ * 解码、生成各尺寸和写入用户表在独立的有界线程池中执行，不占用 Tomcat 请求线程：
+ * - 队列满时在读取请求体之前就拒绝（503），不接收注定无法处理的内容
+ * - 任务状态保存在 Redis 中（保留 job-ttl-minutes），多节点部署时任意节点都可查询
+ * - 同一用户连续上传时以最后提交的为准，之前的任务完成时不再写入用户表（SUPERSEDED）
+ * - 停机时等待执行中的任务，仍在排队的任务标记为失败并删除临时文件
+ */
+@Service
+@Slf4j
+public class AvatarUploadJobService {
+
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_PROCESSING = "PROCESSING";
+    public static final String STATUS_SUCCEEDED = "SUCCEEDED";
+    public static final String STATUS_FAILED = "FAILED";
+    public static final String STATUS_SUPERSEDED = "SUPERSEDED";
+
+    /**
+     * 任务状态Key前缀（Hash）
+     */
+    private static final String JOB_KEY_PREFIX = "avatar:upload:job:";
+
+    /**
+     * 用户最后提交的任务ID Key前缀
+     */
+    private static final String LATEST_KEY_PREFIX = "avatar:upload:latest:";
+
+    private final FileUploadService fileUploadService;
+    private final UserService userService;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 处理线程数
+     */
+    @Value("${file.upload.async-threads:2}")
+    private int threads;
+
+    /**
+     * 等待队列长度，超出时拒绝上传
+     */
+    @Value("${file.upload.async-queue-capacity:32}")
+    private int queueCapacity;
+
+    /**
+     * 任务状态保留时间（分钟）
+     */
+    @Value("${file.upload.async-job-ttl-minutes:60}")
+    private long jobTtlMinutes;
+
+    /**
+     * 停机时等待执行中任务的最长时间（秒）
+     */
+    @Value("${file.upload.async-shutdown-seconds:10}")
+    private long shutdownSeconds;
+
+    private ThreadPoolExecutor executor;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder superseded = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    public AvatarUploadJobService(FileUploadService fileUploadService,
+                                  UserService userService,
+                                  StringRedisTemplate stringRedisTemplate) {
+        this.fileUploadService = fileUploadService;
+        this.userService = userService;
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger index = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, "avatar-upload-" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        log.info("异步头像上传线程池：线程数 {}，队列长度 {}", threads, queueCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (executor.awaitTermination(shutdownSeconds, TimeUnit.SECONDS)) {
+            return;
+        }
+        List<Runnable> pending = executor.shutdownNow();
+        for (Runnable runnable : pending) {
+            UploadTask task = (UploadTask) runnable;
+            fileUploadService.discardAvatar(task.staged);
+            finish(task.jobId, STATUS_FAILED, null, "服务重启，请重新上传");
+        }
+        log.info("异步头像上传线程池已关闭，放弃 {} 个排队中的任务", pending.size());
+    }
+
+    /**
+     * 接收头像并提交后台处理（在请求线程中调用，调用方已校验权限）
+     *
+     * @param userId 用户ID
+     * @param stage 接收图片内容到临时文件，队列已满时不会调用
+     * @return 任务ID
+     */
+    public String submit(Long userId, Supplier<FileUploadService.StagedAvatar> stage) {
+        // 队列已满时不读取请求体；这里只是预判，提交时仍可能被拒绝
+        if (executor.getQueue().remainingCapacity() == 0) {
+            throw reject();
+        }
+        FileUploadService.StagedAvatar staged = stage.get();
+
+        String jobId = IdUtil.simpleUUID();
+        Map<String, String> fields = new HashMap<>();
+        fields.put("userId", String.valueOf(userId));
+        fields.put("status", STATUS_PENDING);
+        fields.put("submitTime", String.valueOf(System.currentTimeMillis()));
+        try {
+            save(jobId, fields);
+            stringRedisTemplate.opsForValue().set(LATEST_KEY_PREFIX + userId, jobId, jobTtlMinutes, TimeUnit.MINUTES);
+            executor.execute(new UploadTask(jobId, staged));
+        } catch (RejectedExecutionException e) {
+            fileUploadService.discardAvatar(staged);
+            stringRedisTemplate.delete(JOB_KEY_PREFIX + jobId);
+            throw reject();
+        } catch (RuntimeException e) {
+            fileUploadService.discardAvatar(staged);
+            throw e;
+        }
+        submitted.increment();
+        return jobId;
+    }
+
+    /**
+     * 查询任务状态
+     *
+     * @return 任务不存在或已过期时返回null
+     */
+    public AvatarUploadJobVO getJob(String jobId) {
+        Map<Object, Object> fields = stringRedisTemplate.opsForHash().entries(JOB_KEY_PREFIX + jobId);
+        if (fields.isEmpty()) {
+            return null;
+        }
+        AvatarUploadJobVO vo = new AvatarUploadJobVO();
+        vo.setJobId(jobId);
+        vo.setUserId(toLong(fields.get("userId")));
+        vo.setStatus((String) fields.get("status"));
+        vo.setAvatarUrl((String) fields.get("avatarUrl"));
+        vo.setMessage((String) fields.get("message"));
+        vo.setSubmitTime(toLong(fields.get("submitTime")));
+        vo.setFinishTime(toLong(fields.get("finishTime")));
+        return vo;
+    }
+
+    /**
+     * 处理统计
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("threads", (long) executor.getPoolSize());
+        stats.put("active", (long) executor.getActiveCount());
+        stats.put("queued", (long) executor.getQueue().size());
+        stats.put("submitted", submitted.sum());
+        stats.put("succeeded", succeeded.sum());
+        stats.put("failed", failed.sum());
+        stats.put("superseded", superseded.sum());
+        stats.put("rejected", rejected.sum());
+        long count = succeeded.sum() + failed.sum() + superseded.sum();
+        stats.put("avgMillis", count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalNanos.sum() / count));
+        return stats;
+    }
+
+    /**
+     * 后台处理：解码生成各尺寸，替换用户头像并释放原头像的引用
+     */
+    private void process(String jobId, FileUploadService.StagedAvatar staged) {
+        Long userId = staged.getUserId();
+        long start = System.nanoTime();
+        try {
+            if (!isLatest(userId, jobId)) {
+                fileUploadService.discardAvatar(staged);
+                supersede(jobId);
+                return;
+            }
+            save(jobId, Map.of("status", STATUS_PROCESSING));
+            String avatarUrl = fileUploadService.storeAvatar(staged);
+            // 处理期间用户又上传了新头像，本次结果不再写入
+            if (!isLatest(userId, jobId)) {
+                fileUploadService.releaseAvatar(avatarUrl);
+                supersede(jobId);
+                return;
+            }
+            String previousAvatarUrl;
+            try {
+                previousAvatarUrl = userService.replaceAvatarUrl(userId, avatarUrl);
+            } catch (RuntimeException e) {
+                fileUploadService.releaseAvatar(avatarUrl);
+                throw e;
+            }
+            fileUploadService.releaseAvatar(previousAvatarUrl);
+            finish(jobId, STATUS_SUCCEEDED, avatarUrl, null);
+            succeeded.increment();
+            log.info("异步头像上传成功，用户ID：{}，头像URL：{}", userId, avatarUrl);
+        } catch (IllegalArgumentException | BusinessException e) {
+            finish(jobId, STATUS_FAILED, null, e.getMessage());
+            failed.increment();
+            log.warn("异步头像上传失败，用户ID：{}：{}", userId, e.getMessage());
+        } catch (RuntimeException e) {
+            finish(jobId, STATUS_FAILED, null, "头像上传失败，请稍后重试");
+            failed.increment();
+            log.error("异步头像上传失败，用户ID：{}", userId, e);
+        } finally {
+            totalNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private boolean isLatest(Long userId, String jobId) {
+        return jobId.equals(stringRedisTemplate.opsForValue().get(LATEST_KEY_PREFIX + userId));
+    }
+
+    private void supersede(String jobId) {
+        finish(jobId, STATUS_SUPERSEDED, null, "已被之后的上传取代");
+        superseded.increment();
+    }
+
+    private void finish(String jobId, String status, String avatarUrl, String message) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("status", status);
+        fields.put("finishTime", String.valueOf(System.currentTimeMillis()));
+        if (avatarUrl != null) {
+            fields.put("avatarUrl", avatarUrl);
+        }
+        if (message != null) {
+            fields.put("message", message);
+        }
+        save(jobId, fields);
+    }
+
+    private void save(String jobId, Map<String, String> fields) {
+        String key = JOB_KEY_PREFIX + jobId;
+        stringRedisTemplate.opsForHash().putAll(key, fields);
+        stringRedisTemplate.expire(key, jobTtlMinutes, TimeUnit.MINUTES);
+    }
+
+    private BusinessException reject() {
+        rejected.increment();
+        log.warn("异步头像上传队列已满，拒绝请求");
+        return new BusinessException(503, "服务繁忙，请稍后重试");
+    }
+
+    private static Long toLong(Object value) {
+        return value == null ? null : Long.valueOf((String) value);
+    }
+
+    /**
+     * 排队中的任务（停机时从队列中取回，用于清理临时文件）
+     */
+    private class UploadTask implements Runnable {
+        private final String jobId;
+        private final FileUploadService.StagedAvatar staged;
+
+        private UploadTask(String jobId, FileUploadService.StagedAvatar staged) {
+            this.jobId = jobId;
+            this.staged = staged;
+        }
+
+        @Override
+        public void run() {
+            process(jobId, staged);
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package com.weiki.usercenter.service;
 
+import com.weiki.usercenter.storage.StoredFile;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
+import java.nio.file.Path;
+
 /**
  * 文件上传服务接口
  */
@@ -14,5 +18,107 @@ public interface FileUploadService {
      * @return 头像URL
      */
     String uploadAvatar(MultipartFile file, Long userId);
-}
 
+    /**
+     * 流式上传头像图片（请求体即图片内容，边读边校验，不整体缓冲）
+     * @param body 图片内容
+     * @param contentLength 声明的长度，未知时为-1
+     * @param userId 用户ID
+     * @return 头像URL
+     */
+    String uploadAvatar(InputStream body, long contentLength, Long userId);
+
+    /**
+     * 接收头像内容到临时文件：校验文件头和大小、计算内容哈希，不解码图片（供异步上传在请求线程中调用）
+     * 返回的暂存文件必须交给 storeAvatar 或 discardAvatar 处理
+     * @param body 图片内容
+     * @param contentLength 声明的长度，未知时为-1
+     * @param userId 用户ID
+     * @return 暂存的头像
+     */
+    StagedAvatar stageAvatar(InputStream body, long contentLength, Long userId);
+
+    /**
+     * 接收 multipart 上传的头像到临时文件（校验规则同 uploadAvatar）
+     */
+    StagedAvatar stageAvatar(MultipartFile file, Long userId);
+
+    /**
+     * 解码暂存的头像、生成各尺寸并登记引用，完成后删除临时文件
+     * @return 头像URL（已增加引用）
+     */
+    String storeAvatar(StagedAvatar staged);
+
+    /**
+     * 丢弃暂存的头像（异步任务被拒绝或取消时调用）
+     */
+    void discardAvatar(StagedAvatar staged);
+
+    /**
+     * 规范化写入用户表的头像URL
+     * @param avatarUrl 客户端提交的头像，可能是 data:image/...;base64, 形式的内联图片
+     * @param userId 用户ID（注册时为null，仅用于日志）
+     * @return 内联图片转存为文件后返回其URL（已增加引用），普通URL原样返回
+     * @throws IllegalArgumentException 内联数据无效或URL过长
+     */
+    String normalizeAvatarUrl(String avatarUrl, Long userId);
+
+    /**
+     * 查找头像文件
+     * @param avatarId 头像ID（头像URL的最后一段）
+     * @param size 期望的尺寸（像素）
+     * @return 不小于该尺寸的最小尺寸文件，不存在时返回null
+     */
+    StoredFile resolveAvatar(String avatarId, int size);
+
+    /**
+     * 头像文件的内容版本（用作强 ETag）
+     * @return 内容哈希命名的头像返回"哈希-文件名"，内容可能变化的旧版头像返回null
+     */
+    String avatarVersionOf(String avatarId, StoredFile file);
+
+    /**
+     * 释放头像引用（用户更换头像后调用），引用归零的文件由 AvatarGarbageCollector 回收
+     * @param avatarUrl 原头像URL，非本服务存储的URL时忽略
+     */
+    void releaseAvatar(String avatarUrl);
+
+    /**
+     * 从头像URL中解析头像ID
+     * @return 头像ID，非本服务存储的URL时返回null
+     */
+    String avatarIdOf(String avatarUrl);
+
+    /**
+     * 暂存的头像：已校验文件头和大小、计算出内容哈希的临时文件
+     */
+    final class StagedAvatar {
+        private final String avatarId;
+        private final Path file;
+        private final long size;
+        private final Long userId;
+
+        public StagedAvatar(String avatarId, Path file, long size, Long userId) {
+            this.avatarId = avatarId;
+            this.file = file;
+            this.size = size;
+            this.userId = userId;
+        }
+
+        public String getAvatarId() {
+            return avatarId;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public Long getUserId() {
+            return userId;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.weiki.usercenter.service;
+
+import com.weiki.usercenter.exception.BusinessException;
+import com.weiki.usercenter.utils.SnowflakeIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ID生成节点租约服务
+ *
+ * 功能：
+ * - redis 模式：启动时从 0 ~ 1023 中抢占一个空闲节点ID（SET NX + 过期时间），定时续约，停机时释放
+ * - local 模式：使用配置的固定节点ID（单节点部署和测试使用，多节点部署时需自行保证不重复）
+ * 续约失败超过租约有效期后不再返回节点ID，避免过期的节点ID被其他实例抢占后生成重复ID
+ *
+ * redis 模式下每个节点ID还记录一个时间水位（不过期）：持有期间为租约截止时间（本实例生成的ID不会晚于它），
+ * 正常停机时改为实际使用的最后时间戳。抢占节点时读出上一任持有者的水位，生成器的时间戳不早于它，
+ * 避免重启后本机时钟落后导致与上一任生成的ID重复
+ */
+@Service
+@Slf4j
+public class IdNodeLeaseService {
+
+    /**
+     * 节点ID租约Key前缀
+     */
+    private static final String NODE_KEY_PREFIX = "user:id:node:";
+
+    /**
+     * 节点ID时间水位Key前缀
+     */
+    private static final String TIMESTAMP_KEY_PREFIX = "user:id:node:timestamp:";
+
+    /**
+     * 仅当租约仍属于本实例时续期，同时把时间水位推进到新的租约截止时间
+     */
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then "
+                    + "redis.call('SET', KEYS[2], ARGV[3]) "
+                    + "return redis.call('PEXPIRE', KEYS[1], ARGV[2]) "
+                    + "end "
+                    + "return 0", Long.class);
+
+    /**
+     * 仅当租约仍属于本实例时释放，同时把时间水位改为实际使用的最后时间戳
+     */
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then "
+                    + "redis.call('SET', KEYS[2], ARGV[2]) "
+                    + "return redis.call('DEL', KEYS[1]) "
+                    + "end "
+                    + "return 0", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 节点ID来源：redis 或 local
+     */
+    @Value("${user.id.node-lease:redis}")
+    private String mode;
+
+    /**
+     * local 模式使用的节点ID
+     */
+    @Value("${user.id.node-id:0}")
+    private int localNodeId;
+
+    /**
+     * 租约有效期（秒）
+     */
+    @Value("${user.id.lease-seconds:30}")
+    private long leaseSeconds;
+
+    /**
+     * 本实例标识（租约的值）
+     */
+    private final String token = UUID.randomUUID().toString();
+
+    private volatile int nodeId = -1;
+
+    /**
+     * 本地认为租约有效的截止时间（从发起续约的时刻算起，偏保守）
+     */
+    private volatile long validUntil;
+
+    /**
+     * 当前节点ID及上一任持有者的时间水位（抢占节点时读取），本实例生成ID的时间戳不能早于它
+     */
+    private volatile Watermark watermark = new Watermark(-1, 0);
+
+    /**
+     * 本实例实际使用过的最后时间戳，停机释放时写入时间水位
+     */
+    private volatile long lastUsedTimestamp;
+
+    public IdNodeLeaseService(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!isRedisMode()) {
+            if (localNodeId < 0 || localNodeId > SnowflakeIdGenerator.MAX_NODE_ID) {
+                throw new IllegalArgumentException("user.id.node-id 超出范围：" + localNodeId);
+            }
+            nodeId = localNodeId;
+            watermark = new Watermark(localNodeId, 0);
+            validUntil = Long.MAX_VALUE;
+            log.info("ID生成使用本地节点ID：{}", nodeId);
+            return;
+        }
+        if (!acquire()) {
+            throw new IllegalStateException("没有空闲的ID生成节点");
+        }
+    }
+
+    @PreDestroy
+    public void release() {
+        if (!isRedisMode() || nodeId < 0) {
+            return;
+        }
+        long timestamp = Math.max(watermark.notBefore, lastUsedTimestamp);
+        stringRedisTemplate.execute(RELEASE_SCRIPT, Arrays.asList(NODE_KEY_PREFIX + nodeId, TIMESTAMP_KEY_PREFIX + nodeId),
+                token, String.valueOf(timestamp));
+        log.info("释放ID生成节点：{}，时间水位：{}", nodeId, timestamp);
+    }
+
+    /**
+     * 当前节点ID
+     *
+     * @throws BusinessException 租约已失效且无法重新获取
+     */
+    public int getNodeId() {
+        if (System.currentTimeMillis() < validUntil) {
+            return nodeId;
+        }
+        synchronized (this) {
+            if (System.currentTimeMillis() >= validUntil && !acquire()) {
+                throw new BusinessException(503, "ID生成节点不可用，请稍后重试");
+            }
+            return nodeId;
+        }
+    }
+
+    /**
+     * 节点ID的时间水位：生成器的时间戳不能早于它
+     *
+     * @param nodeId 通过 getNodeId 取得的节点ID
+     * @throws BusinessException 节点ID已在此期间变化
+     */
+    public long getNotBefore(int nodeId) {
+        Watermark current = watermark;
+        if (current.nodeId != nodeId) {
+            throw new BusinessException(503, "ID生成节点不可用，请稍后重试");
+        }
+        return current.notBefore;
+    }
+
+    /**
+     * 记录实际使用过的最后时间戳（停机释放节点前调用）
+     */
+    public void recordLastTimestamp(long timestamp) {
+        lastUsedTimestamp = timestamp;
+    }
+
+    /**
+     * 定时续约（间隔为租约有效期的三分之一）
+     */
+    @Scheduled(fixedDelayString = "#{${user.id.lease-seconds:30} * 1000 / 3}")
+    public void renew() {
+        if (!isRedisMode()) {
+            return;
+        }
+        try {
+            synchronized (this) {
+                long start = System.currentTimeMillis();
+                if (nodeId >= 0) {
+                    long leaseMillis = TimeUnit.SECONDS.toMillis(leaseSeconds);
+                    Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT,
+                            Arrays.asList(NODE_KEY_PREFIX + nodeId, TIMESTAMP_KEY_PREFIX + nodeId),
+                            token, String.valueOf(leaseMillis), String.valueOf(start + leaseMillis));
+                    if (renewed != null && renewed == 1) {
+                        validUntil = start + leaseMillis;
+                        return;
+                    }
+                    log.error("ID生成节点租约已丢失：{}", nodeId);
+                    validUntil = 0;
+                }
+                acquire();
+            }
+        } catch (Exception e) {
+            log.error("ID生成节点续约失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 抢占节点ID，优先使用当前节点ID，其次从随机位置开始依次尝试；
+     * 抢到后读出上一任的时间水位，再把水位推进到本实例的租约截止时间
+     */
+    private boolean acquire() {
+        int count = SnowflakeIdGenerator.MAX_NODE_ID + 1;
+        int start = nodeId >= 0 ? nodeId : ThreadLocalRandom.current().nextInt(count);
+        for (int i = 0; i < count; i++) {
+            int candidate = (start + i) % count;
+            long begin = System.currentTimeMillis();
+            Boolean acquired = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(NODE_KEY_PREFIX + candidate, token, leaseSeconds, TimeUnit.SECONDS);
+            if (Boolean.TRUE.equals(acquired)) {
+                String timestampKey = TIMESTAMP_KEY_PREFIX + candidate;
+                String previous = stringRedisTemplate.opsForValue().get(timestampKey);
+                long until = begin + TimeUnit.SECONDS.toMillis(leaseSeconds);
+                stringRedisTemplate.opsForValue().set(timestampKey, String.valueOf(until));
+                watermark = new Watermark(candidate, previous == null ? 0 : Long.parseLong(previous));
+                nodeId = candidate;
+                validUntil = until;
+                log.info("获取ID生成节点：{}，上一任时间水位：{}", candidate, watermark.notBefore);
+                return true;
+            }
+        }
+        log.error("所有ID生成节点均已被占用");
+        return false;
+    }
+
+    private boolean isRedisMode() {
+        return "redis".equalsIgnoreCase(mode);
+    }
+
+    /**
+     * 节点ID与其时间水位（一起替换，读取时不会拿到不配套的两个值）
+     */
+    private static class Watermark {
+        private final int nodeId;
+        private final long notBefore;
+
+        private Watermark(int nodeId, long notBefore) {
+            this.nodeId = nodeId;
+            this.notBefore = notBefore;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.weiki.usercenter.service;
+
+import com.weiki.usercenter.entity.LoginLog;
+import com.weiki.usercenter.mapper.LoginLogMapper;
+import com.weiki.usercenter.utils.SecurityUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 登录事件服务（异步批量写入登录日志）
+ *
+ * 功能：
+ * - 登录线程只把事件放入有界无锁队列，不执行任何 SQL
+ * - 单个写线程每隔 flush-interval-ms 或攒够 batch-size 条时，用一条多行 INSERT 写入 user_login_log
+ * - 队列满时直接丢弃新事件并计数（背压不传导到登录接口）
+ * - 入队前按表字段长度截断；整批写入失败时逐条重试，只丢弃写不进去的那一条
+ * - 停机时写完队列中剩余的事件
+ */
+@Service
+@Slf4j
+public class LoginEventService {
+
+    /**
+     * 各字段的最大保存长度（与 user_login_log 表字段一致），超出时截断，避免整批 INSERT 失败
+     */
+    private static final int MAX_USER_ACCOUNT_LENGTH = 50;
+    private static final int MAX_IP_LENGTH = 64;
+    private static final int MAX_USER_AGENT_LENGTH = 255;
+    private static final int MAX_FAIL_REASON_LENGTH = 32;
+
+    private final LoginLogMapper loginLogMapper;
+
+    /**
+     * 是否记录登录日志
+     */
+    @Value("${login.log.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 队列容量
+     */
+    @Value("${login.log.queue-capacity:10000}")
+    private int queueCapacity;
+
+    /**
+     * 每批写入的最大条数
+     */
+    @Value("${login.log.batch-size:200}")
+    private int batchSize;
+
+    /**
+     * 最长刷新间隔（毫秒）
+     */
+    @Value("${login.log.flush-interval-ms:1000}")
+    private long flushIntervalMillis;
+
+    private final ConcurrentLinkedQueue<LoginLog> queue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 队列当前长度（ConcurrentLinkedQueue.size() 需要遍历，单独计数）
+     */
+    private final AtomicInteger queueSize = new AtomicInteger();
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public LoginEventService(LoginLogMapper loginLogMapper) {
+        this.loginLogMapper = loginLogMapper;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::writeLoop, "login-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * 记录登录成功
+     */
+    public void recordSuccess(Long userId, String userAccount) {
+        publish(userId, userAccount, true, null);
+    }
+
+    /**
+     * 记录登录失败
+     *
+     * @param userId 用户ID，账号不存在时为null
+     * @param reason 失败原因
+     */
+    public void recordFailure(Long userId, String userAccount, String reason) {
+        publish(userId, userAccount, false, reason);
+    }
+
+    /**
+     * 队列和写入统计
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("queued", (long) queueSize.get());
+        stats.put("accepted", accepted.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("written", written.sum());
+        stats.put("failed", failed.sum());
+        return stats;
+    }
+
+    /**
+     * 在请求线程中采集IP和User-Agent并入队，不阻塞
+     */
+    private void publish(Long userId, String userAccount, boolean success, String reason) {
+        if (!running) {
+            return;
+        }
+        if (queueSize.incrementAndGet() > queueCapacity) {
+            queueSize.decrementAndGet();
+            dropped.increment();
+            return;
+        }
+        queue.offer(LoginLog.builder()
+                .userId(userId)
+                .userAccount(truncate(userAccount == null ? "" : userAccount, MAX_USER_ACCOUNT_LENGTH))
+                .loginTime(LocalDateTime.now())
+                .ip(truncate(SecurityUtils.getClientIP(), MAX_IP_LENGTH))
+                .userAgent(truncate(SecurityUtils.getUserAgent(), MAX_USER_AGENT_LENGTH))
+                .success(success ? 1 : 0)
+                .failReason(truncate(reason, MAX_FAIL_REASON_LENGTH))
+                .build());
+        accepted.increment();
+        // 攒够一批时提前唤醒写线程
+        if (queueSize.get() >= batchSize) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void writeLoop() {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        while (running) {
+            if (queueSize.get() < batchSize) {
+                LockSupport.parkNanos(this, intervalNanos);
+            }
+            drain();
+        }
+        // 停机前写完剩余事件
+        while (queueSize.get() > 0) {
+            if (drain() == 0) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 按批次取出队列中的事件并写入
+     *
+     * @return 本次写入的条数
+     */
+    private int drain() {
+        int total = 0;
+        List<LoginLog> batch = new ArrayList<>(batchSize);
+        while (true) {
+            LoginLog event;
+            while (batch.size() < batchSize && (event = queue.poll()) != null) {
+                queueSize.decrementAndGet();
+                batch.add(event);
+            }
+            if (batch.isEmpty()) {
+                return total;
+            }
+            flush(batch);
+            total += batch.size();
+            boolean full = batch.size() == batchSize;
+            batch.clear();
+            if (!full) {
+                return total;
+            }
+        }
+    }
+
+    private void flush(List<LoginLog> batch) {
+        try {
+            loginLogMapper.insertBatch(batch);
+            written.add(batch.size());
+            return;
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                failed.increment();
+                log.error("写入登录日志失败，丢弃 1 条：{}", e.getMessage());
+                return;
+            }
+            log.warn("批量写入 {} 条登录日志失败，改为逐条写入：{}", batch.size(), e.getMessage());
+        }
+        // 逐条写入，一条异常数据不影响同批的其他事件
+        for (LoginLog event : batch) {
+            try {
+                loginLogMapper.insertBatch(Collections.singletonList(event));
+                written.increment();
+            } catch (Exception e) {
+                failed.increment();
+                log.error("写入登录日志失败，丢弃账号 {} 的事件：{}", event.getUserAccount(), e.getMessage());
+            }
+        }
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value != null && value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+}
@@ -0,0 +1,248 @@
+package com.weiki.usercenter.service;
+
+import cn.hutool.crypto.SecureUtil;
+import com.weiki.usercenter.exception.BusinessException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 密码哈希服务
+ *
+ * 功能：
+ * - 使用 PBKDF2WithHmacSHA256 + 随机盐生成密码哈希，格式：pbkdf2$迭代次数$盐$哈希（Base64）
+ * - 迭代次数可配置，低于当前配置的哈希和旧的 MD5 哈希在登录成功后由调用方透明升级
+ * - 哈希计算在独立的有界线程池中执行，不占用 Tomcat 请求线程的 CPU；
+ *   队列满时立即拒绝（503），等待超时同样返回 503，避免登录高峰拖垮其他接口
+ */
+@Service
+@Slf4j
+public class PasswordHashService {
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2";
+    private static final int SALT_BYTES = 16;
+    private static final int KEY_BITS = 256;
+
+    /**
+     * 旧版 MD5 哈希使用的固定盐
+     */
+    private static final String LEGACY_SALT = "user_center";
+
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    /**
+     * PBKDF2 迭代次数（提高后旧哈希在登录时自动升级）
+     */
+    @Value("${password.hash.iterations:210000}")
+    private int iterations;
+
+    /**
+     * 哈希线程数，默认为CPU核数
+     */
+    @Value("${password.hash.threads:0}")
+    private int threads;
+
+    /**
+     * 等待队列长度，超出时拒绝请求
+     */
+    @Value("${password.hash.queue-capacity:64}")
+    private int queueCapacity;
+
+    /**
+     * 调用方最长等待时间（毫秒，包括排队时间）
+     */
+    @Value("${password.hash.timeout-ms:3000}")
+    private long timeoutMillis;
+
+    private ThreadPoolExecutor executor;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger index = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, "password-hash-" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        log.info("密码哈希线程池：线程数 {}，队列长度 {}，迭代次数 {}", poolSize, queueCapacity, iterations);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 在哈希线程池中计算新密码的哈希
+     */
+    public String hash(String rawPassword) {
+        return execute(() -> hashOnCurrentThread(rawPassword));
+    }
+
+    /**
+     * 在哈希线程池中校验密码
+     */
+    public boolean verify(String rawPassword, String storedHash) {
+        return execute(() -> verifyOnCurrentThread(rawPassword, storedHash));
+    }
+
+    /**
+     * 在当前线程计算哈希（供已有独立线程池的批量任务使用，如用户导入）
+     */
+    public String hashOnCurrentThread(String rawPassword) {
+        byte[] salt = new byte[SALT_BYTES];
+        secureRandom.nextBytes(salt);
+        byte[] key = pbkdf2(rawPassword, salt, iterations);
+        Base64.Encoder encoder = Base64.getEncoder();
+        return PREFIX + "$" + iterations + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(key);
+    }
+
+    /**
+     * 哈希是否需要升级（旧版 MD5、迭代次数低于当前配置，或迭代次数无法解析）
+     */
+    public boolean needsRehash(String storedHash) {
+        String[] parts = storedHash.split("\\$");
+        return parts.length != 4 || !PREFIX.equals(parts[0]) || parseIterations(parts[1]) < iterations;
+    }
+
+    /**
+     * 哈希线程池统计
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("threads", (long) executor.getPoolSize());
+        stats.put("active", (long) executor.getActiveCount());
+        stats.put("queued", (long) executor.getQueue().size());
+        stats.put("completed", completed.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("timedOut", timedOut.sum());
+        long count = completed.sum();
+        stats.put("avgMillis", count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalNanos.sum() / count));
+        stats.put("iterations", (long) iterations);
+        return stats;
+    }
+
+    private boolean verifyOnCurrentThread(String rawPassword, String storedHash) {
+        if (storedHash == null) {
+            return false;
+        }
+        String[] parts = storedHash.split("\\$");
+        if (parts.length == 4 && PREFIX.equals(parts[0])) {
+            // 格式正确但内容损坏的哈希按校验失败处理，不让登录变成 500
+            int rounds = parseIterations(parts[1]);
+            byte[] salt = decodeBase64(parts[2]);
+            byte[] expected = decodeBase64(parts[3]);
+            if (rounds <= 0 || salt == null || salt.length == 0 || expected == null) {
+                log.warn("密码哈希已损坏，按校验失败处理");
+                return false;
+            }
+            byte[] actual = pbkdf2(rawPassword, salt, rounds);
+            return MessageDigest.isEqual(expected, actual);
+        }
+        // 旧版哈希：md5(密码 + 固定盐)
+        String legacy = SecureUtil.md5(rawPassword + LEGACY_SALT);
+        return MessageDigest.isEqual(legacy.getBytes(StandardCharsets.US_ASCII),
+                storedHash.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * 解析哈希中的迭代次数，无法解析或不是正数时返回0
+     */
+    private static int parseIterations(String value) {
+        try {
+            return Math.max(0, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 解码 Base64，格式错误时返回null
+     */
+    private static byte[] decodeBase64(String value) {
+        try {
+            return Base64.getDecoder().decode(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private byte[] pbkdf2(String rawPassword, byte[] salt, int rounds) {
+        PBEKeySpec spec = new PBEKeySpec(rawPassword.toCharArray(), salt, rounds, KEY_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("密码哈希计算失败", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * 提交到哈希线程池并等待结果
+     */
+    private <T> T execute(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long start = System.nanoTime();
+                try {
+                    return task.call();
+                } finally {
+                    totalNanos.add(System.nanoTime() - start);
+                    completed.increment();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            log.warn("密码哈希队列已满，拒绝请求");
+            throw new BusinessException(503, "服务繁忙，请稍后重试");
+        }
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timedOut.increment();
+            log.warn("密码哈希等待超时");
+            throw new BusinessException(503, "服务繁忙，请稍后重试");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new BusinessException(503, "服务繁忙，请稍后重试");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("密码哈希计算失败", e.getCause());
+        }
+    }
+}
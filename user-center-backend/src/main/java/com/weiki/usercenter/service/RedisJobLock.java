@@ -0,0 +1,107 @@
+package com.weiki.usercenter.service;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 后台任务的 Redis 互斥锁（多节点部署时保证同一时间只有一个节点执行）
+ *
+ * - 锁的值是每次加锁生成的随机标识，释放时比较后再删除，锁过期后被其他节点抢到时不会误删对方的锁
+ * - 每次加锁都有最长执行时间：任务应在 deadline 之前主动结束，锁的有效期在此基础上多留 1 分钟，
+ *   保证任务执行期间锁不会过期
+ */
+@Service
+public class RedisJobLock {
+
+    /**
+     * 锁有效期超出最长执行时间的余量（毫秒）
+     */
+    private static final long LOCK_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * 仅当锁仍属于本次持有者时释放
+     */
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then "
+                    + "return redis.call('DEL', KEYS[1]) "
+                    + "end "
+                    + "return 0", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public RedisJobLock(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 尝试加锁
+     *
+     * @param key 锁Key
+     * @param maxRunMillis 任务最长执行时间（毫秒）
+     * @return 锁，已被其他节点持有时返回null；使用 try-with-resources 释放
+     */
+    public Lease tryLock(String key, long maxRunMillis) {
+        String token = UUID.randomUUID().toString();
+        long start = System.currentTimeMillis();
+        Boolean locked = stringRedisTemplate.opsForValue()
+                .setIfAbsent(key, token, maxRunMillis + LOCK_MARGIN_MILLIS, TimeUnit.MILLISECONDS);
+        return Boolean.TRUE.equals(locked) ? new Lease(key, token, start + maxRunMillis) : null;
+    }
+
+    /**
+     * 批次间暂停，让出数据库和存储IO
+     *
+     * @return 线程被中断时返回false
+     */
+    public static boolean pause(long millis) {
+        if (millis <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 持有中的锁
+     */
+    public final class Lease implements AutoCloseable {
+        private final String key;
+        private final String token;
+        private final long deadline;
+
+        private Lease(String key, String token, long deadline) {
+            this.key = key;
+            this.token = token;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 任务必须结束的时间（毫秒时间戳）
+         */
+        public long getDeadline() {
+            return deadline;
+        }
+
+        /**
+         * 是否已超过最长执行时间
+         */
+        public boolean isExpired() {
+            return System.currentTimeMillis() >= deadline;
+        }
+
+        @Override
+        public void close() {
+            stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(key), token);
+        }
+    }
+}
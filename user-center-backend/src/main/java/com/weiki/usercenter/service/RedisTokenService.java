@@ -2,9 +2,15 @@ package com.weiki.usercenter.service;
 
 import com.weiki.usercenter.entity.User;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -37,6 +43,11 @@ public class RedisTokenService {
      */
     private static final long TOKEN_EXPIRE_MILLIS = 24 * 60 * 60 * 1000; // 24小时
 
+    /**
+     * 单条 DEL 命令最多携带的Key数
+     */
+    private static final int DELETE_BATCH_SIZE = 1000;
+
     public RedisTokenService(RedisTemplate<String, Object> redisTemplate) {
         this.redisTemplate = redisTemplate;
     }
@@ -129,6 +140,51 @@ public class RedisTokenService {
         log.info("用户所有Token已删除，UserID：{}", userId);
     }
 
+    /**
+     * 批量删除多个用户的所有Token（批量强制登出）
+     * 使用管道一次取回所有用户的Token集合，再用一条多Key DEL 删除，往返次数与用户数无关
+     *
+     * @param userIds 用户ID集合
+     */
+    public void deleteUserTokensBatch(Collection<Long> userIds) {
+        if (userIds == null || userIds.isEmpty()) {
+            return;
+        }
+        List<Long> idList = new ArrayList<>(userIds);
+
+        // 1. 管道批量读取每个用户的Token集合
+        List<Object> tokenSets = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                for (Long userId : idList) {
+                    ops.opsForSet().members(USER_TOKEN_PREFIX + userId);
+                }
+                return null;
+            }
+        });
+
+        // 2. 汇总需要删除的Key（Token Key + 用户Token集合 Key）
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < idList.size(); i++) {
+            keys.add(USER_TOKEN_PREFIX + idList.get(i));
+            Object tokens = i < tokenSets.size() ? tokenSets.get(i) : null;
+            if (tokens instanceof Collection) {
+                for (Object token : (Collection<?>) tokens) {
+                    keys.add(TOKEN_KEY_PREFIX + token.toString());
+                }
+            }
+        }
+
+        // 3. 分批执行多Key DEL
+        for (int from = 0; from < keys.size(); from += DELETE_BATCH_SIZE) {
+            redisTemplate.delete(keys.subList(from, Math.min(from + DELETE_BATCH_SIZE, keys.size())));
+        }
+
+        log.info("批量删除用户Token完成，用户数：{}，删除Key数：{}", idList.size(), keys.size());
+    }
+
     /**
      * 检查Token是否存在
      *
@@ -0,0 +1,215 @@
+package com.weiki.usercenter.service;
+
+import com.weiki.usercenter.datasource.UserPartitionRouter;
+import com.weiki.usercenter.entity.User;
+import com.weiki.usercenter.mapper.UserMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 用户归档服务
+ *
+ * 功能：
+ * - 定时把删除超过 retention-days 天的用户从 user 表移到 user_archive 表
+ * - 按 (update_time, id) 键集分页，每批在一个短事务中锁定、复制、物理删除，批次之间暂停 pause-ms
+ * - 锁定时再次检查删除状态，查找之后被恢复的用户不会被归档
+ * - 归档表中已有同账号的旧记录时，替换为本次归档的记录（同一账号只保留最近删除的一条）
+ * - 多节点部署时通过 Redis 锁保证同一时间只有一个节点执行
+ * 归档的账号重新注册时，由注册流程移回主表并恢复原ID
+ */
+@Service
+@Slf4j
+public class UserArchiveService {
+
+    /**
+     * 归档任务锁（防止多个节点同时执行）
+     */
+    private static final String LOCK_KEY = "user:archive:lock";
+
+    private final UserMapper userMapper;
+    private final UserPartitionRouter userPartitionRouter;
+    private final RedisJobLock redisJobLock;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * 是否启用定时归档
+     */
+    @Value("${user.archive.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 删除后保留在主表中的天数
+     */
+    @Value("${user.archive.retention-days:30}")
+    private int retentionDays;
+
+    /**
+     * 每批移动的行数
+     */
+    @Value("${user.archive.batch-size:200}")
+    private int batchSize;
+
+    /**
+     * 批次之间的暂停时间（毫秒）
+     */
+    @Value("${user.archive.pause-ms:100}")
+    private long pauseMillis;
+
+    /**
+     * 单次任务最长执行时间（分钟），超出后剩余数据留给下次
+     */
+    @Value("${user.archive.max-run-minutes:30}")
+    private long maxRunMinutes;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile boolean stopping;
+
+    private final LongAdder archived = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private volatile long lastRunAt;
+    private volatile long lastRunMillis;
+    private volatile long lastRunArchived;
+
+    public UserArchiveService(UserMapper userMapper,
+                              UserPartitionRouter userPartitionRouter,
+                              RedisJobLock redisJobLock,
+                              PlatformTransactionManager transactionManager) {
+        this.userMapper = userMapper;
+        this.userPartitionRouter = userPartitionRouter;
+        this.redisJobLock = redisJobLock;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopping = true;
+    }
+
+    /**
+     * 定时归档（默认每天凌晨3点半）
+     */
+    @Scheduled(cron = "${user.archive.cron:0 30 3 * * ?}")
+    public void scheduledArchive() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            archive();
+        } catch (Exception e) {
+            log.error("用户归档任务失败：{}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 执行一次归档
+     *
+     * @return 本次归档的用户数，其他节点或线程正在执行时返回-1
+     */
+    public long archive() {
+        if (!running.compareAndSet(false, true)) {
+            return -1;
+        }
+        RedisJobLock.Lease lease = redisJobLock.tryLock(LOCK_KEY, TimeUnit.MINUTES.toMillis(maxRunMinutes));
+        if (lease == null) {
+            running.set(false);
+            log.info("其他节点正在执行用户归档，跳过本次");
+            return -1;
+        }
+        try (lease) {
+            long start = System.currentTimeMillis();
+            long deadline = lease.getDeadline();
+            LocalDateTime deletedBefore = LocalDateTime.now().minusDays(retentionDays);
+            long total = 0;
+            for (int partition = 0; partition < userPartitionRouter.getPartitionCount(); partition++) {
+                int p = partition;
+                total += userPartitionRouter.callIn(p, () -> archivePartition(deletedBefore, deadline));
+            }
+            lastRunAt = start;
+            lastRunMillis = System.currentTimeMillis() - start;
+            lastRunArchived = total;
+            log.info("用户归档完成，归档 {} 个用户，耗时 {} ms", total, lastRunMillis);
+            return total;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 归档统计
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("running", running.get() ? 1L : 0L);
+        stats.put("archived", archived.sum());
+        stats.put("skipped", skipped.sum());
+        stats.put("failedBatches", failedBatches.sum());
+        stats.put("lastRunAt", lastRunAt);
+        stats.put("lastRunMillis", lastRunMillis);
+        stats.put("lastRunArchived", lastRunArchived);
+        return stats;
+    }
+
+    /**
+     * 归档当前分区（由 callIn 指定），直到没有待归档数据、超时或停机
+     */
+    private long archivePartition(LocalDateTime deletedBefore, long deadline) {
+        long total = 0;
+        User after = null;
+        while (!stopping && System.currentTimeMillis() < deadline) {
+            List<User> candidates = userMapper.selectArchivable(deletedBefore, after, batchSize);
+            if (candidates.isEmpty()) {
+                break;
+            }
+            after = candidates.get(candidates.size() - 1);
+            List<Long> ids = candidates.stream().map(User::getId).collect(Collectors.toList());
+            try {
+                Integer moved = transactionTemplate.execute(status -> moveBatch(ids, deletedBefore));
+                total += moved;
+                archived.add(moved);
+                skipped.add(ids.size() - moved);
+            } catch (Exception e) {
+                // 单批失败不影响后续批次
+                failedBatches.increment();
+                log.error("用户归档批次失败，ID范围：{} ~ {}：{}", ids.get(0), ids.get(ids.size() - 1), e.getMessage());
+            }
+            if (candidates.size() < batchSize || !RedisJobLock.pause(pauseMillis)) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 在一个事务中锁定、复制并删除一批用户
+     *
+     * @return 实际归档的行数
+     */
+    private int moveBatch(List<Long> ids, LocalDateTime deletedBefore) {
+        List<Long> locked = userMapper.lockArchivableIds(ids, deletedBefore);
+        if (locked.isEmpty()) {
+            return 0;
+        }
+        int superseded = userMapper.deleteSupersededArchives(locked);
+        if (superseded > 0) {
+            log.warn("归档表中有 {} 条同账号的旧记录，已由本次归档的记录替换", superseded);
+        }
+        userMapper.copyToArchive(locked);
+        return userMapper.deleteArchivedByIds(locked);
+    }
+
+}
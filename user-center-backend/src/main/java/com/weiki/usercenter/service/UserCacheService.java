@@ -0,0 +1,463 @@
+package com.weiki.usercenter.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.weiki.usercenter.datasource.DataSourceContextHolder;
+import com.weiki.usercenter.entity.User;
+import com.weiki.usercenter.mapper.UserMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 用户读穿透缓存服务
+ *
+ * 功能：
+ * - 本地有界LRU（一级）+ Redis共享缓存（二级），未命中时回源 UserMapper
+ * - 账号只缓存 账号→ID 的映射，用户数据统一按ID缓存，失效时只需要ID
+ * - 写操作后延迟双删：立即删除、事务提交后删除、延迟再删除一次
+ * - 按ID分段的失效版本号：回源期间发生过失效的结果不回填缓存，避免旧数据复活
+ * - 回源一律读主库：从库的旧数据写进 Redis 后会保留 redis-ttl-seconds，延迟双删的间隔覆盖不了从库延迟
+ * - 通过 Redis 频道广播失效消息，清理其他节点的本地缓存
+ *
+ * 缓存中不保存密码哈希（需要校验密码时从数据库读取）；每次返回的都是副本，调用方修改返回值不会影响缓存
+ */
+@Service
+@Slf4j
+public class UserCacheService {
+
+    /**
+     * 用户缓存Key前缀（按ID）
+     */
+    private static final String USER_CACHE_PREFIX = "user:cache:id:";
+
+    /**
+     * 账号到ID映射的缓存Key前缀
+     */
+    private static final String ACCOUNT_CACHE_PREFIX = "user:cache:account:";
+
+    /**
+     * 失效广播频道
+     */
+    private static final String INVALIDATE_CHANNEL = "user:cache:invalidate";
+
+    /**
+     * 失效版本号分段数
+     */
+    private static final int STAMP_STRIPES = 1024;
+
+    private final UserMapper userMapper;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * 本地缓存最大条目数
+     */
+    @Value("${cache.user.local-max-size:1000}")
+    private int localMaxSize;
+
+    /**
+     * 本地缓存存活时间（秒）
+     */
+    @Value("${cache.user.local-ttl-seconds:60}")
+    private long localTtlSeconds;
+
+    /**
+     * Redis缓存存活时间（秒）
+     */
+    @Value("${cache.user.redis-ttl-seconds:600}")
+    private long redisTtlSeconds;
+
+    /**
+     * 延迟双删的延迟时间（毫秒）
+     */
+    @Value("${cache.user.double-delete-delay-ms:500}")
+    private long doubleDeleteDelayMillis;
+
+    /**
+     * 本地缓存：ID → 用户
+     */
+    private Map<Long, LocalEntry<User>> localUsers;
+
+    /**
+     * 本地缓存：账号 → ID
+     */
+    private Map<String, LocalEntry<Long>> localAccounts;
+
+    /**
+     * 按ID分段的失效版本号，每次失效自增
+     */
+    private final AtomicLongArray stamps = new AtomicLongArray(STAMP_STRIPES);
+
+    /**
+     * 全局失效版本号，任意用户失效时自增
+     */
+    private final AtomicLong globalStamps = new AtomicLong();
+
+    /**
+     * 延迟删除调度器
+     */
+    private final ScheduledExecutorService evictScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "user-cache-evict");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public UserCacheService(UserMapper userMapper,
+                            StringRedisTemplate stringRedisTemplate,
+                            ObjectMapper objectMapper,
+                            RedisMessageListenerContainer listenerContainer) {
+        this.userMapper = userMapper;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.objectMapper = objectMapper;
+        this.listenerContainer = listenerContainer;
+    }
+
+    @PostConstruct
+    public void init() {
+        localUsers = newLruMap(localMaxSize);
+        localAccounts = newLruMap(localMaxSize);
+        // 订阅其他节点的失效广播
+        listenerContainer.addMessageListener(this::onInvalidateMessage, new ChannelTopic(INVALIDATE_CHANNEL));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        evictScheduler.shutdownNow();
+    }
+
+    /**
+     * 根据ID获取用户（未删除）
+     *
+     * @param id 用户ID
+     * @return 用户信息副本（不含密码哈希），不存在返回null
+     */
+    public User getById(Long id) {
+        User user = loadById(id);
+        return user != null ? copyOf(user) : null;
+    }
+
+    /**
+     * 根据账号获取用户（未删除）
+     *
+     * @param userAccount 账号
+     * @return 用户信息副本（不含密码哈希），不存在返回null
+     */
+    public User getByAccount(String userAccount) {
+        User user = loadByAccount(userAccount);
+        return user != null ? copyOf(user) : null;
+    }
+
+    /**
+     * 按ID读取缓存中的用户，返回值与缓存共享，不能修改
+     */
+    private User loadById(Long id) {
+        if (id == null) {
+            return null;
+        }
+        // 1. 本地缓存
+        User user = getLocal(localUsers, id);
+        if (user != null) {
+            return user;
+        }
+
+        // 记录回源前的失效版本号
+        long stamp = stamps.get(stripe(id));
+
+        // 2. Redis缓存
+        user = readRedisUser(id);
+        if (user != null) {
+            if (stamps.get(stripe(id)) == stamp) {
+                putLocal(localUsers, id, user);
+            }
+            return user;
+        }
+
+        // 3. 回源数据库
+        user = toCached(DataSourceContextHolder.callOnPrimary(() -> userMapper.selectById(id)));
+        if (user != null && stamps.get(stripe(id)) == stamp) {
+            writeRedisUser(user);
+            putLocal(localUsers, id, user);
+        }
+        return user;
+    }
+
+    /**
+     * 按账号读取缓存中的用户，返回值与缓存共享，不能修改
+     */
+    private User loadByAccount(String userAccount) {
+        if (userAccount == null) {
+            return null;
+        }
+        Long id = getLocal(localAccounts, userAccount);
+        if (id == null) {
+            id = readRedisAccount(userAccount);
+            if (id != null) {
+                putLocal(localAccounts, userAccount, id);
+            }
+        }
+        if (id != null) {
+            User user = loadById(id);
+            if (user != null && userAccount.equals(user.getUserAccount())) {
+                return user;
+            }
+            if (user != null) {
+                // 映射已过期（账号与ID不再对应），丢弃后回源
+                removeAccountMapping(userAccount);
+            } else {
+                // ID对应的用户已删除
+                return null;
+            }
+        }
+
+        // 账号回源时还不知道ID，使用全局失效版本号判断回源期间是否发生过失效
+        long globalStamp = globalStamps.get();
+        User user = toCached(DataSourceContextHolder.callOnPrimary(() -> userMapper.selectByAccount(userAccount)));
+        if (user == null) {
+            return null;
+        }
+        putLocal(localAccounts, userAccount, user.getId());
+        writeRedisAccount(userAccount, user.getId());
+        if (globalStamps.get() == globalStamp) {
+            writeRedisUser(user);
+            putLocal(localUsers, user.getId(), user);
+        }
+        return user;
+    }
+
+    /**
+     * 写操作后使缓存失效（延迟双删）
+     *
+     * @param id 用户ID
+     */
+    public void evict(Long id) {
+        if (id == null) {
+            return;
+        }
+        evictAll(List.of(id));
+    }
+
+    /**
+     * 批量使缓存失效（延迟双删）
+     *
+     * @param ids 用户ID集合
+     */
+    public void evictAll(Collection<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
+        List<Long> idList = new ArrayList<>(ids);
+        // 1. 立即删除
+        evictNow(idList);
+        // 2. 事务提交后再删除一次（提交前其他线程可能把旧数据读回缓存）
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictNow(idList);
+                    scheduleDelayedEvict(idList);
+                }
+            });
+        } else {
+            scheduleDelayedEvict(idList);
+        }
+    }
+
+    /**
+     * 立即删除本地和Redis中的缓存，并广播给其他节点
+     */
+    private void evictNow(List<Long> ids) {
+        List<String> keys = new ArrayList<>(ids.size());
+        globalStamps.incrementAndGet();
+        for (Long id : ids) {
+            stamps.incrementAndGet(stripe(id));
+            removeLocal(localUsers, id);
+            keys.add(USER_CACHE_PREFIX + id);
+        }
+        try {
+            stringRedisTemplate.delete(keys);
+            // 一条消息携带本批全部ID（逗号分隔）
+            StringBuilder payload = new StringBuilder();
+            for (Long id : ids) {
+                if (payload.length() > 0) {
+                    payload.append(',');
+                }
+                payload.append(id);
+            }
+            stringRedisTemplate.convertAndSend(INVALIDATE_CHANNEL, payload.toString());
+        } catch (Exception e) {
+            log.warn("删除用户缓存失败，IDs：{}，错误：{}", ids, e.getMessage());
+        }
+    }
+
+    /**
+     * 延迟再删除一次，清除并发读在写入期间回填的旧数据
+     */
+    private void scheduleDelayedEvict(List<Long> ids) {
+        try {
+            evictScheduler.schedule(() -> evictNow(ids), doubleDeleteDelayMillis, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            log.warn("延迟删除用户缓存任务提交失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 处理其他节点的失效广播
+     */
+    private void onInvalidateMessage(Message message, byte[] pattern) {
+        try {
+            String payload = new String(message.getBody(), StandardCharsets.UTF_8).replace("\"", "");
+            globalStamps.incrementAndGet();
+            for (String part : payload.split(",")) {
+                Long id = Long.valueOf(part.trim());
+                stamps.incrementAndGet(stripe(id));
+                removeLocal(localUsers, id);
+            }
+        } catch (NumberFormatException e) {
+            log.warn("无效的用户缓存失效消息：{}", message);
+        }
+    }
+
+    private User readRedisUser(Long id) {
+        try {
+            String json = stringRedisTemplate.opsForValue().get(USER_CACHE_PREFIX + id);
+            // 兼容升级前写入的带密码哈希的缓存
+            return json != null ? toCached(objectMapper.readValue(json, User.class)) : null;
+        } catch (Exception e) {
+            log.warn("读取Redis用户缓存失败，ID：{}，错误：{}", id, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeRedisUser(User user) {
+        try {
+            stringRedisTemplate.opsForValue().set(USER_CACHE_PREFIX + user.getId(),
+                    objectMapper.writeValueAsString(user), redisTtlSeconds, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.warn("写入Redis用户缓存失败，ID：{}，错误：{}", user.getId(), e.getMessage());
+        }
+    }
+
+    private Long readRedisAccount(String userAccount) {
+        try {
+            String id = stringRedisTemplate.opsForValue().get(ACCOUNT_CACHE_PREFIX + userAccount);
+            return id != null ? Long.valueOf(id) : null;
+        } catch (Exception e) {
+            log.warn("读取Redis账号缓存失败，账号：{}，错误：{}", userAccount, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeRedisAccount(String userAccount, Long id) {
+        try {
+            stringRedisTemplate.opsForValue().set(ACCOUNT_CACHE_PREFIX + userAccount,
+                    id.toString(), redisTtlSeconds, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.warn("写入Redis账号缓存失败，账号：{}，错误：{}", userAccount, e.getMessage());
+        }
+    }
+
+    private void removeAccountMapping(String userAccount) {
+        removeLocal(localAccounts, userAccount);
+        try {
+            stringRedisTemplate.delete(ACCOUNT_CACHE_PREFIX + userAccount);
+        } catch (Exception e) {
+            log.warn("删除Redis账号缓存失败，账号：{}，错误：{}", userAccount, e.getMessage());
+        }
+    }
+
+    /**
+     * 转换为缓存中保存的形式：去掉密码哈希
+     */
+    private static User toCached(User user) {
+        if (user == null) {
+            return null;
+        }
+        User cached = copyOf(user);
+        cached.setUserPassword(null);
+        return cached;
+    }
+
+    private static User copyOf(User user) {
+        User copy = new User();
+        BeanUtils.copyProperties(user, copy);
+        return copy;
+    }
+
+    private int stripe(Long id) {
+        return (int) (Math.abs(id % STAMP_STRIPES));
+    }
+
+    private <K, V> V getLocal(Map<K, LocalEntry<V>> map, K key) {
+        synchronized (map) {
+            LocalEntry<V> entry = map.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expireAt < System.currentTimeMillis()) {
+                map.remove(key);
+                return null;
+            }
+            return entry.value;
+        }
+    }
+
+    private <K, V> void putLocal(Map<K, LocalEntry<V>> map, K key, V value) {
+        LocalEntry<V> entry = new LocalEntry<>(value, System.currentTimeMillis() + localTtlSeconds * 1000);
+        synchronized (map) {
+            map.put(key, entry);
+        }
+    }
+
+    private <K, V> void removeLocal(Map<K, LocalEntry<V>> map, K key) {
+        synchronized (map) {
+            map.remove(key);
+        }
+    }
+
+    /**
+     * 创建按访问顺序淘汰的有界LRU
+     */
+    private static <K, V> Map<K, V> newLruMap(int maxSize) {
+        return new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * 本地缓存条目
+     */
+    private static class LocalEntry<V> {
+        private final V value;
+        private final long expireAt;
+
+        LocalEntry(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.weiki.usercenter.service;
+
+import com.weiki.usercenter.datasource.UserPartitionRouter;
+import com.weiki.usercenter.exception.BusinessException;
+import com.weiki.usercenter.utils.SnowflakeIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * 用户ID生成服务
+ *
+ * 生成策略（user.id.generator）：
+ * - snowflake（默认）：在内存中生成趋势递增的64位ID，节点ID由 IdNodeLeaseService 分配，
+ *   分区号写入ID低位，保证 id % N 等于账号所在分区；时间戳从节点ID的时间水位之后开始，
+ *   本机时钟落后水位超过 max-clock-drift-ms 时启动失败
+ * - auto-increment：返回null，由 user 表的 AUTO_INCREMENT 生成（只能在不分区时使用）
+ */
+@Service
+@Slf4j
+public class UserIdGenerator {
+
+    private final UserPartitionRouter userPartitionRouter;
+    private final IdNodeLeaseService idNodeLeaseService;
+
+    /**
+     * 生成策略：snowflake 或 auto-increment
+     */
+    @Value("${user.id.generator:snowflake}")
+    private String strategy;
+
+    /**
+     * 允许逻辑时钟领先系统时钟的最大毫秒数（时钟回拨超过该值时拒绝生成）
+     */
+    @Value("${user.id.max-clock-drift-ms:1000}")
+    private long maxClockDriftMillis;
+
+    private boolean autoIncrement;
+    private int partitionBits;
+    private volatile SnowflakeIdGenerator generator;
+
+    public UserIdGenerator(UserPartitionRouter userPartitionRouter, IdNodeLeaseService idNodeLeaseService) {
+        this.userPartitionRouter = userPartitionRouter;
+        this.idNodeLeaseService = idNodeLeaseService;
+    }
+
+    @PostConstruct
+    public void init() {
+        autoIncrement = "auto-increment".equalsIgnoreCase(strategy);
+        if (autoIncrement && userPartitionRouter.isEnabled()) {
+            throw new IllegalStateException("用户表分区时不能使用 auto-increment ID");
+        }
+        partitionBits = Integer.numberOfTrailingZeros(userPartitionRouter.getPartitionCount());
+        if (partitionBits > SnowflakeIdGenerator.MAX_TAG_BITS) {
+            throw new IllegalStateException("分区数过大，最多支持 " + (1 << SnowflakeIdGenerator.MAX_TAG_BITS) + " 个分区");
+        }
+        if (!autoIncrement) {
+            // 启动时就创建生成器，时钟落后于节点的时间水位时拒绝启动
+            generatorFor(idNodeLeaseService.getNodeId());
+        }
+    }
+
+    /**
+     * 停机时记录已使用的最后时间戳，释放节点ID时写入时间水位
+     */
+    @PreDestroy
+    public void destroy() {
+        SnowflakeIdGenerator current = generator;
+        if (current != null) {
+            idNodeLeaseService.recordLastTimestamp(current.getLastTimestamp());
+        }
+    }
+
+    /**
+     * 为账号分配新用户ID
+     *
+     * @return 新ID，auto-increment 策略时返回null
+     */
+    public Long nextId(String userAccount) {
+        if (autoIncrement) {
+            return null;
+        }
+        int partition = userPartitionRouter.isEnabled() ? userPartitionRouter.partitionOfAccount(userAccount) : 0;
+        try {
+            return generatorFor(idNodeLeaseService.getNodeId()).nextId(partition);
+        } catch (IllegalStateException e) {
+            log.error("生成用户ID失败：{}", e.getMessage());
+            throw new BusinessException(503, "暂时无法生成用户ID，请稍后重试");
+        }
+    }
+
+    /**
+     * 节点ID变化（租约丢失后重新获取）或重新获取的节点已被其他实例用到更晚的时间时重建生成器
+     */
+    private SnowflakeIdGenerator generatorFor(int nodeId) {
+        long notBefore = idNodeLeaseService.getNotBefore(nodeId);
+        SnowflakeIdGenerator current = generator;
+        if (isUsable(current, nodeId, notBefore)) {
+            return current;
+        }
+        synchronized (this) {
+            if (!isUsable(generator, nodeId, notBefore)) {
+                generator = new SnowflakeIdGenerator(nodeId, partitionBits, maxClockDriftMillis, notBefore);
+                log.info("用户ID生成器使用节点：{}，时间水位：{}", nodeId, notBefore);
+            }
+            return generator;
+        }
+    }
+
+    private static boolean isUsable(SnowflakeIdGenerator generator, int nodeId, long notBefore) {
+        return generator != null && generator.getNodeId() == nodeId && generator.getLastTimestamp() > notBefore;
+    }
+}
@@ -0,0 +1,17 @@
+package com.weiki.usercenter.service;
+
+import com.weiki.usercenter.dto.UserImportResultVO;
+import org.springframework.web.multipart.MultipartFile;
+
+/**
+ * 用户批量导入服务接口
+ */
+public interface UserImportService {
+
+    /**
+     * 批量导入用户
+     * @param file CSV（首行为表头）或 NDJSON（每行一个JSON对象）文件
+     * @return 导入结果（含逐行错误明细）
+     */
+    UserImportResultVO importUsers(MultipartFile file);
+}
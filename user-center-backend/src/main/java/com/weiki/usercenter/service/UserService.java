@@ -4,6 +4,7 @@ import com.weiki.usercenter.dto.*;
 import com.weiki.usercenter.entity.PageVO;
 import com.weiki.usercenter.entity.User;
 
+import javax.servlet.http.HttpServletResponse;
 import java.util.List;
 
 /**
@@ -21,6 +22,11 @@ public interface UserService {
      */
     LoginVO login(UserLoginDTO loginDTO);
     
+    /**
+     * 检查账号是否可以注册（未被未删除的用户占用）
+     */
+    boolean isAccountAvailable(String userAccount);
+
     /**
      * 用户登出
      */
@@ -31,11 +37,21 @@ public interface UserService {
      */
     UserVO getUserById(Long id);
     
+    /**
+     * 分页查询用户的登录历史
+     */
+    PageVO<LoginLogVO> getLoginHistory(Long userId, int page, int size);
+
     /**
      * 获取所有用户
      */
     List<UserVO> getAllUsers();
     
+    /**
+     * 流式导出所有用户（ndjson 或 csv）：校验格式后设置响应头，直接写入响应输出流
+     */
+    void exportUsers(String format, HttpServletResponse response);
+    
     /**
      * 分页获取用户列表
      */
@@ -52,9 +68,16 @@ public interface UserService {
     User getUserByAccount(String account);
     
     /**
-     * 更新用户信息
+     * 更新用户信息（updateDTO.version 不为空时做版本校验，冲突时抛出 VersionConflictException）
      */
     boolean updateUser(Long id, UserUpdateDTO updateDTO);
+
+    /**
+     * 替换用户头像，不做登录和权限校验（供已校验过权限的调用方使用，如头像上传接口和异步上传任务）
+     *
+     * @return 被替换的原头像URL
+     */
+    String replaceAvatarUrl(Long id, String avatarUrl);
     
     /**
      * 更新用户密码
@@ -63,16 +86,40 @@ public interface UserService {
     
     /**
      * 管理员重置用户密码
+     *
+     * @param version 版本号，不为空时只有版本一致才重置
      */
-    boolean resetPassword(Long id, String newPassword);
+    boolean resetPassword(Long id, String newPassword, Integer version);
     
     /**
      * 删除用户（逻辑删除）
+     *
+     * @param version 版本号，不为空时只有版本一致才删除
      */
-    boolean deleteUser(Long id);
+    boolean deleteUser(Long id, Integer version);
 
     /**
      * 获取当前登录用户信息（用于验证 token 是否有效）
      */
     UserVO getCurrentUser();
-}
\ No newline at end of file
+
+    /**
+     * 批量删除用户（逻辑删除，同时强制登出）
+     */
+    BatchResultVO batchDeleteUsers(List<Long> ids);
+
+    /**
+     * 批量修改用户角色（同时强制登出，使新角色立即生效）
+     */
+    BatchResultVO batchUpdateRole(List<Long> ids, String userRole);
+
+    /**
+     * 批量重置用户密码（同时强制登出）
+     */
+    BatchResultVO batchResetPassword(List<Long> ids, String newPassword);
+
+    /**
+     * 批量强制登出用户
+     */
+    BatchResultVO batchLogout(List<Long> ids);
+}
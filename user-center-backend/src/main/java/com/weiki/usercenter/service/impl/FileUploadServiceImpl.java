@@ -1,16 +1,38 @@
 package com.weiki.usercenter.service.impl;
 
-import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.HexUtil;
+import com.weiki.usercenter.mapper.AvatarFileMapper;
+import com.weiki.usercenter.service.AvatarImageProcessor;
 import com.weiki.usercenter.service.FileUploadService;
+import com.weiki.usercenter.storage.AvatarStorage;
+import com.weiki.usercenter.storage.StoredFile;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * 文件上传服务实现类
@@ -20,10 +42,10 @@ import java.util.List;
 public class FileUploadServiceImpl implements FileUploadService {
 
     /**
-     * 头像存储目录
+     * 上传临时文件目录
      */
-    @Value("${file.upload.avatar-path:./uploads/avatar}")
-    private String avatarUploadPath;
+    @Value("${file.upload.temp-path:./uploads/tmp}")
+    private String tempPath;
 
     /**
      * 头像访问URL前缀
@@ -31,22 +53,110 @@ public class FileUploadServiceImpl implements FileUploadService {
     @Value("${file.upload.avatar-url:/api/avatar}")
     private String avatarUrlPrefix;
 
+    /**
+     * 上传图片的最大字节数
+     */
+    @Value("${file.upload.avatar-max-bytes:10485760}")
+    private long avatarMaxBytes;
+
+    /**
+     * 头像ID格式（旧版头像为带扩展名的文件名），防止路径穿越
+     */
+    private static final Pattern AVATAR_ID_PATTERN = Pattern.compile("[A-Za-z0-9_]+(\\.[a-z]{3,4})?");
+
+    /**
+     * 各尺寸可能的输出格式
+     */
+    private static final List<String> RENDITION_FORMATS = Arrays.asList("jpg", "png");
+
+    /**
+     * 内容寻址头像ID：SHA-256 的前128位（32个十六进制字符）
+     */
+    private static final Pattern CONTENT_HASH_PATTERN = Pattern.compile("[0-9a-f]{32}");
+
+    /**
+     * 内联图片（Data URL）前缀
+     */
+    private static final String DATA_URL_PREFIX = "data:";
+
+    /**
+     * avatar_url 列允许的最大长度
+     */
+    private static final int MAX_AVATAR_URL_LENGTH = 255;
+
+    /**
+     * 判断图片格式需要的文件头字节数
+     */
+    private static final int MAGIC_BYTES = 8;
+
+    private static final byte[] PNG_MAGIC = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    /**
+     * 上传读取缓冲区大小
+     */
+    private static final int RECEIVE_BUFFER_BYTES = 64 * 1024;
+
+    /**
+     * 启动时清理的临时文件最短存在时间（小时），较新的可能属于共享目录的其他实例
+     */
+    private static final long STALE_TEMP_HOURS = 1;
+
+    private final AvatarImageProcessor avatarImageProcessor;
+    private final AvatarFileMapper avatarFileMapper;
+    private final AvatarStorage avatarStorage;
+
+    private Path tempDir;
+
+    public FileUploadServiceImpl(AvatarImageProcessor avatarImageProcessor, AvatarFileMapper avatarFileMapper,
+                                 AvatarStorage avatarStorage) {
+        this.avatarImageProcessor = avatarImageProcessor;
+        this.avatarFileMapper = avatarFileMapper;
+        this.avatarStorage = avatarStorage;
+    }
+
+    /**
+     * 创建临时目录并清理上次停机遗留的临时文件
+     */
+    @PostConstruct
+    public void init() throws IOException {
+        tempDir = Paths.get(System.getProperty("user.dir")).resolve(tempPath).normalize();
+        Files.createDirectories(tempDir);
+        Instant staleBefore = Instant.now().minus(STALE_TEMP_HOURS, ChronoUnit.HOURS);
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(tempDir, "upload*.tmp")) {
+            for (Path leftover : leftovers) {
+                if (Files.getLastModifiedTime(leftover).toInstant().isBefore(staleBefore)) {
+                    Files.deleteIfExists(leftover);
+                }
+            }
+        }
+    }
+
     /**
      * 允许的图片类型
      */
     private static final List<String> ALLOWED_IMAGE_TYPES = Arrays.asList(
-            "image/jpeg", "image/png", "image/gif", "image/webp"
+            "image/jpeg", "image/png", "image/gif"
     );
 
     /**
      * 允许的图片扩展名
      */
     private static final List<String> ALLOWED_EXTENSIONS = Arrays.asList(
-            ".jpg", ".jpeg", ".png", ".gif", ".webp"
+            ".jpg", ".jpeg", ".png", ".gif"
     );
 
     @Override
     public String uploadAvatar(MultipartFile file, Long userId) {
+        return storeAvatar(stageAvatar(file, userId));
+    }
+
+    @Override
+    public String uploadAvatar(InputStream body, long contentLength, Long userId) {
+        return storeAvatar(stageAvatar(body, contentLength, userId));
+    }
+
+    @Override
+    public StagedAvatar stageAvatar(MultipartFile file, Long userId) {
         // 1. 校验文件是否为空
         if (file == null || file.isEmpty()) {
             throw new IllegalArgumentException("上传的文件不能为空");
@@ -55,7 +165,7 @@ public class FileUploadServiceImpl implements FileUploadService {
         // 2. 校验文件类型
         String contentType = file.getContentType();
         if (contentType == null || !ALLOWED_IMAGE_TYPES.contains(contentType.toLowerCase())) {
-            throw new IllegalArgumentException("只支持 JPG、PNG、GIF、WebP 格式的图片");
+            throw new IllegalArgumentException("只支持 JPG、PNG、GIF 格式的图片");
         }
 
         // 3. 校验文件扩展名
@@ -65,37 +175,279 @@ public class FileUploadServiceImpl implements FileUploadService {
         }
         String extension = originalFilename.substring(originalFilename.lastIndexOf(".")).toLowerCase();
         if (!ALLOWED_EXTENSIONS.contains(extension)) {
-            throw new IllegalArgumentException("只支持 JPG、PNG、GIF、WebP 格式的图片");
+            throw new IllegalArgumentException("只支持 JPG、PNG、GIF 格式的图片");
+        }
+
+        // 4. 按实际内容校验（multipart 已由 Spring 缓冲，这里复用流式上传的处理流程）
+        try (InputStream input = file.getInputStream()) {
+            return stageAvatar(input, file.getSize(), userId);
+        } catch (IOException e) {
+            log.error("读取头像失败，用户ID：{}", userId, e);
+            throw new RuntimeException("头像上传失败，请稍后重试");
+        }
+    }
+
+    @Override
+    public StagedAvatar stageAvatar(InputStream body, long contentLength, Long userId) {
+        // 1. 声明的长度超限时直接拒绝，不读取请求体
+        if (contentLength > avatarMaxBytes) {
+            throw new IllegalArgumentException("图片大小不能超过 " + avatarMaxBytes / 1024 / 1024 + "MB");
+        }
+
+        // 2. 边读边校验、计算哈希并写入临时文件
+        Path temp;
+        try {
+            temp = Files.createTempFile(tempDir, "upload", ".tmp");
+        } catch (IOException e) {
+            log.error("创建头像临时文件失败，用户ID：{}", userId, e);
+            throw new RuntimeException("头像上传失败，请稍后重试");
+        }
+        try (ReadableByteChannel source = Channels.newChannel(body);
+             FileChannel target = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            MessageDigest digest = sha256();
+            long size = receive(source, target, digest);
+            String avatarId = HexUtil.encodeHexStr(digest.digest()).substring(0, 32);
+            return new StagedAvatar(avatarId, temp, size, userId);
+        } catch (IOException e) {
+            deleteTemp(temp);
+            log.error("头像上传失败，用户ID：{}", userId, e);
+            throw new RuntimeException("头像上传失败，请稍后重试");
+        } catch (RuntimeException e) {
+            deleteTemp(temp);
+            throw e;
+        }
+    }
+
+    @Override
+    public String storeAvatar(StagedAvatar staged) {
+        try {
+            // 登记引用并生成各尺寸
+            return registerAvatar(staged.getAvatarId(), staged.getFile(), staged.getSize(), staged.getUserId());
+        } catch (IOException e) {
+            log.error("头像上传失败，用户ID：{}", staged.getUserId(), e);
+            throw new RuntimeException("头像上传失败，请稍后重试");
+        } finally {
+            deleteTemp(staged.getFile());
+        }
+    }
+
+    @Override
+    public void discardAvatar(StagedAvatar staged) {
+        deleteTemp(staged.getFile());
+    }
+
+    private void deleteTemp(Path temp) {
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException e) {
+            log.warn("删除头像临时文件失败：{}", temp);
         }
+    }
 
-        // 4. 校验文件大小（最大 10MB）
-        if (file.getSize() > 10 * 1024 * 1024) {
-            throw new IllegalArgumentException("图片大小不能超过 10MB");
+    /**
+     * 读取上传内容：首个数据块校验文件头，逐块累计大小，同时更新哈希并写入临时文件
+     *
+     * @return 内容字节数
+     */
+    private long receive(ReadableByteChannel source, FileChannel target, MessageDigest digest) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECEIVE_BUFFER_BYTES);
+        long total = 0;
+        boolean sniffed = false;
+        while (true) {
+            int n = source.read(buffer);
+            // 文件头不足时继续读，直到够判断或读完
+            if (!sniffed && n >= 0 && buffer.position() < MAGIC_BYTES) {
+                continue;
+            }
+            if (buffer.position() == 0 && n < 0) {
+                break;
+            }
+            buffer.flip();
+            if (!sniffed) {
+                if (!isSupportedImage(buffer)) {
+                    throw new IllegalArgumentException("只支持 JPG、PNG、GIF 格式的图片");
+                }
+                sniffed = true;
+            }
+            total += buffer.remaining();
+            if (total > avatarMaxBytes) {
+                throw new IllegalArgumentException("图片大小不能超过 " + avatarMaxBytes / 1024 / 1024 + "MB");
+            }
+            digest.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            buffer.clear();
+            if (n < 0) {
+                break;
+            }
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("上传的文件不能为空");
+        }
+        return total;
+    }
+
+    /**
+     * 按文件头判断图片格式（不信任客户端声明的类型和扩展名）
+     *
+     * 只接受 JDK ImageIO 能解码的格式：WebP 没有内置的解码器，接受后会在生成缩略图时失败
+     */
+    private boolean isSupportedImage(ByteBuffer head) {
+        int length = head.remaining();
+        byte[] magic = new byte[Math.min(length, MAGIC_BYTES)];
+        head.duplicate().get(magic);
+        if (magic.length >= 3 && (magic[0] & 0xFF) == 0xFF && (magic[1] & 0xFF) == 0xD8 && (magic[2] & 0xFF) == 0xFF) {
+            return true;
+        }
+        return startsWith(magic, PNG_MAGIC) || startsWith(magic, "GIF87a".getBytes(StandardCharsets.US_ASCII))
+                || startsWith(magic, "GIF89a".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static boolean startsWith(byte[] data, byte[] prefix) {
+        if (data.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 登记引用；新图片或文件不完整时解码临时文件生成各尺寸
+     */
+    private String registerAvatar(String avatarId, Path source, long size, Long userId) throws IOException {
+        String avatarUrl = avatarUrlPrefix + "/" + avatarId;
+        boolean created = avatarFileMapper.acquire(avatarId, size) == 1;
+        if (!created && isComplete(avatarId)) {
+            log.info("头像内容已存在，复用：{}，用户ID：{}", avatarId, userId);
+            return avatarUrl;
         }
 
         try {
-            // 5. 创建上传目录 - 使用绝对路径
-            String basePath = System.getProperty("user.dir");
-            File uploadDir = new File(basePath + File.separator + avatarUploadPath.replace("./", "uploads" + File.separator));
-            if (!uploadDir.exists()) {
-                uploadDir.mkdirs();
+            // 解码一次并生成各尺寸（重新编码，去除元数据）
+            List<AvatarImageProcessor.Rendition> renditions;
+            try (InputStream input = Files.newInputStream(source)) {
+                renditions = avatarImageProcessor.process(input);
+            }
+
+            // 写入存储：{内容哈希}/{尺寸}.{格式}，写入完成前读取方看不到文件
+            long total = 0;
+            for (AvatarImageProcessor.Rendition rendition : renditions) {
+                avatarStorage.write(avatarId, rendition.getSize() + "." + rendition.getFormat(), rendition.getData());
+                total += rendition.getData().length;
+            }
+            log.info("头像上传成功，用户ID：{}，头像ID：{}，原图 {} 字节，{} 个尺寸共 {} 字节",
+                    userId, avatarId, size, renditions.size(), total);
+            return avatarUrl;
+        } catch (IOException | RuntimeException e) {
+            avatarFileMapper.release(avatarId);
+            throw e;
+        }
+    }
+
+    @Override
+    public String normalizeAvatarUrl(String avatarUrl, Long userId) {
+        if (avatarUrl == null || !avatarUrl.startsWith(DATA_URL_PREFIX)) {
+            if (avatarUrl != null && avatarUrl.length() > MAX_AVATAR_URL_LENGTH) {
+                throw new IllegalArgumentException("头像URL过长");
             }
-            log.info("头像上传目录: {}", uploadDir.getAbsolutePath());
+            return avatarUrl;
+        }
+        // data:image/png;base64,xxxx —— 边解码边走流式上传流程（校验文件头、大小，计算哈希）
+        int comma = avatarUrl.indexOf(',');
+        if (comma < 0 || !avatarUrl.substring(0, comma).endsWith(";base64")) {
+            throw new IllegalArgumentException("头像数据格式无效");
+        }
+        byte[] encoded = avatarUrl.getBytes(StandardCharsets.US_ASCII);
+        InputStream decoded = Base64.getMimeDecoder()
+                .wrap(new ByteArrayInputStream(encoded, comma + 1, encoded.length - comma - 1));
+        return uploadAvatar(decoded, -1, userId);
+    }
 
-            // 6. 生成新的文件名（使用Hutool）
-            String newFileName = userId + "_" + IdUtil.simpleUUID().substring(0, 8) + extension;
-            File targetFile = new File(uploadDir, newFileName);
+    @Override
+    public void releaseAvatar(String avatarUrl) {
+        String avatarId = avatarIdOf(avatarUrl);
+        if (avatarId != null && CONTENT_HASH_PATTERN.matcher(avatarId).matches()) {
+            avatarFileMapper.release(avatarId);
+        }
+    }
 
-            // 7. 保存文件
-            file.transferTo(targetFile);
-            log.info("头像上传成功，用户ID：{}，文件路径：{}", userId, targetFile.getAbsolutePath());
+    @Override
+    public String avatarIdOf(String avatarUrl) {
+        if (avatarUrl == null || !avatarUrl.startsWith(avatarUrlPrefix + "/")) {
+            return null;
+        }
+        String avatarId = avatarUrl.substring(avatarUrlPrefix.length() + 1);
+        int query = avatarId.indexOf('?');
+        return query >= 0 ? avatarId.substring(0, query) : avatarId;
+    }
 
-            // 8. 返回访问URL
-            return avatarUrlPrefix + "/" + newFileName;
+    @Override
+    public String avatarVersionOf(String avatarId, StoredFile file) {
+        if (!CONTENT_HASH_PATTERN.matcher(avatarId).matches()) {
+            return null;
+        }
+        String name = file.getName();
+        return avatarId + "-" + name.substring(0, name.lastIndexOf('.'));
+    }
 
+    @Override
+    public StoredFile resolveAvatar(String avatarId, int size) {
+        if (!AVATAR_ID_PATTERN.matcher(avatarId).matches()) {
+            return null;
+        }
+        try {
+            if (avatarId.indexOf('.') >= 0) {
+                // 旧版头像：原图文件
+                return avatarStorage.findLegacy(avatarId);
+            }
+            // 选择不小于请求尺寸的最小尺寸，都小于请求尺寸时用最大的
+            int[] sizes = avatarImageProcessor.getSizes();
+            int chosen = sizes[sizes.length - 1];
+            for (int candidate : sizes) {
+                if (candidate >= size) {
+                    chosen = candidate;
+                    break;
+                }
+            }
+            for (String format : RENDITION_FORMATS) {
+                StoredFile rendition = avatarStorage.find(avatarId, chosen + "." + format);
+                if (rendition != null) {
+                    return rendition;
+                }
+            }
+            return null;
         } catch (IOException e) {
-            log.error("头像上传失败，用户ID：{}", userId, e);
-            throw new RuntimeException("头像上传失败，请稍后重试");
+            log.error("读取头像失败：{}：{}", avatarId, e.getMessage());
+            throw new RuntimeException("头像读取失败，请稍后重试");
+        }
+    }
+
+    /**
+     * 各尺寸文件是否都已存在
+     */
+    private boolean isComplete(String avatarId) throws IOException {
+        for (int size : avatarImageProcessor.getSizes()) {
+            boolean exists = false;
+            for (String format : RENDITION_FORMATS) {
+                exists = exists || avatarStorage.find(avatarId, size + "." + format) != null;
+            }
+            if (!exists) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
     }
-}
\ No newline at end of file
+}
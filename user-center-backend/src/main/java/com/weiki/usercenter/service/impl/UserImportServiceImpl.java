@@ -0,0 +1,336 @@
+package com.weiki.usercenter.service.impl;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.weiki.usercenter.datasource.UserPartitionRouter;
+import com.weiki.usercenter.dto.UserImportErrorVO;
+import com.weiki.usercenter.dto.UserImportResultVO;
+import com.weiki.usercenter.dto.UserImportRowDTO;
+import com.weiki.usercenter.entity.User;
+import com.weiki.usercenter.exception.BusinessException;
+import com.weiki.usercenter.mapper.UserMapper;
+import com.weiki.usercenter.service.AccountBloomFilterService;
+import com.weiki.usercenter.service.PasswordHashService;
+import com.weiki.usercenter.service.UserIdGenerator;
+import com.weiki.usercenter.service.UserImportService;
+import com.weiki.usercenter.utils.CsvUtils;
+import com.weiki.usercenter.utils.SecurityUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.PreDestroy;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * 用户批量导入服务实现类
+ *
+ * 流程：逐行读取文件 → 校验 → 按批次用 IN 查询检查账号冲突 → 并行加密密码 → 多行 INSERT
+ * 整个文件不会一次性读入内存，每批最多 chunk-size 行
+ */
+@Service
+@Slf4j
+public class UserImportServiceImpl implements UserImportService {
+
+    /**
+     * 错误明细最多记录条数
+     */
+    private static final int MAX_ERROR_DETAILS = 1000;
+
+    private final UserMapper userMapper;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final AccountBloomFilterService accountBloomFilterService;
+    private final UserPartitionRouter userPartitionRouter;
+    private final UserIdGenerator userIdGenerator;
+    private final PasswordHashService passwordHashService;
+
+    /**
+     * 每批处理的行数
+     */
+    @Value("${user.import.chunk-size:500}")
+    private int chunkSize;
+
+    /**
+     * 密码加密线程池（只用一半CPU核，为登录、注册的密码哈希线程池留出余量）
+     */
+    private final ForkJoinPool hashPool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+
+    public UserImportServiceImpl(UserMapper userMapper, ObjectMapper objectMapper, Validator validator,
+                                 AccountBloomFilterService accountBloomFilterService,
+                                 UserPartitionRouter userPartitionRouter,
+                                 UserIdGenerator userIdGenerator,
+                                 PasswordHashService passwordHashService) {
+        this.userMapper = userMapper;
+        this.objectMapper = objectMapper.copy().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.validator = validator;
+        this.accountBloomFilterService = accountBloomFilterService;
+        this.userPartitionRouter = userPartitionRouter;
+        this.userIdGenerator = userIdGenerator;
+        this.passwordHashService = passwordHashService;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hashPool.shutdown();
+    }
+
+    @Override
+    public UserImportResultVO importUsers(MultipartFile file) {
+        // 权限校验：只有管理员可以批量导入用户
+        User currentUser = SecurityUtils.getCurrentUser();
+        if (currentUser == null) {
+            throw new BusinessException("用户未登录");
+        }
+        if (!"admin".equals(currentUser.getUserRole())) {
+            throw new BusinessException("没有权限导入用户");
+        }
+        if (file == null || file.isEmpty()) {
+            throw new BusinessException("导入文件不能为空");
+        }
+        String filename = file.getOriginalFilename() != null
+                ? file.getOriginalFilename().toLowerCase(Locale.ROOT) : "";
+        boolean csv = filename.endsWith(".csv");
+        if (!csv && !filename.endsWith(".ndjson") && !filename.endsWith(".jsonl")) {
+            throw new BusinessException("只支持 .csv、.ndjson 或 .jsonl 文件");
+        }
+
+        UserImportResultVO result = new UserImportResultVO();
+        List<ImportRow> chunk = new ArrayList<>(chunkSize);
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8))) {
+            Map<String, Integer> header = null;
+            String line;
+            long lineNo = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                if (lineNo == 1 && !line.isEmpty() && line.charAt(0) == '\uFEFF') {
+                    line = line.substring(1);
+                }
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                if (csv && header == null) {
+                    header = parseHeader(line);
+                    continue;
+                }
+                result.setTotal(result.getTotal() + 1);
+                ImportRow row = parseRow(line, lineNo, header, result);
+                if (row != null) {
+                    chunk.add(row);
+                }
+                if (chunk.size() >= chunkSize) {
+                    importChunk(chunk, result);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                importChunk(chunk, result);
+            }
+        } catch (IOException e) {
+            log.error("读取导入文件失败", e);
+            throw new BusinessException("读取导入文件失败");
+        }
+
+        log.info("批量导入用户完成，总数：{}，成功：{}，失败：{}",
+                result.getTotal(), result.getSuccess(), result.getFailed());
+        return result;
+    }
+
+    /**
+     * 解析CSV表头，返回 列名 → 下标
+     */
+    private Map<String, Integer> parseHeader(String line) {
+        List<String> columns = CsvUtils.parseLine(line);
+        Map<String, Integer> header = new HashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            header.put(columns.get(i).trim(), i);
+        }
+        if (!header.containsKey("userAccount") || !header.containsKey("userPassword")
+                || !header.containsKey("username")) {
+            throw new BusinessException("CSV表头必须包含 username、userAccount、userPassword 列");
+        }
+        return header;
+    }
+
+    /**
+     * 解析并校验一行数据，失败时记录错误并返回null
+     */
+    private ImportRow parseRow(String line, long lineNo, Map<String, Integer> header, UserImportResultVO result) {
+        UserImportRowDTO dto;
+        try {
+            dto = header != null ? parseCsvRow(line, header) : objectMapper.readValue(line, UserImportRowDTO.class);
+        } catch (Exception e) {
+            addError(result, lineNo, null, "数据格式错误");
+            return null;
+        }
+        Set<ConstraintViolation<UserImportRowDTO>> violations = validator.validate(dto);
+        if (!violations.isEmpty()) {
+            StringBuilder reason = new StringBuilder();
+            for (ConstraintViolation<UserImportRowDTO> violation : violations) {
+                if (reason.length() > 0) {
+                    reason.append("; ");
+                }
+                reason.append(violation.getMessage());
+            }
+            addError(result, lineNo, dto.getUserAccount(), reason.toString());
+            return null;
+        }
+        return new ImportRow(lineNo, dto);
+    }
+
+    private UserImportRowDTO parseCsvRow(String line, Map<String, Integer> header) {
+        List<String> fields = CsvUtils.parseLine(line);
+        UserImportRowDTO dto = new UserImportRowDTO();
+        dto.setUsername(field(fields, header, "username"));
+        dto.setUserAccount(field(fields, header, "userAccount"));
+        dto.setUserPassword(field(fields, header, "userPassword"));
+        String gender = field(fields, header, "gender");
+        dto.setGender(gender != null ? Integer.valueOf(gender) : null);
+        dto.setPhone(field(fields, header, "phone"));
+        dto.setEmail(field(fields, header, "email"));
+        return dto;
+    }
+
+    private String field(List<String> fields, Map<String, Integer> header, String name) {
+        Integer index = header.get(name);
+        if (index == null || index >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(index).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * 导入一批数据：批量冲突检查 → 并行加密 → 多行插入
+     */
+    private void importChunk(List<ImportRow> chunk, UserImportResultVO result) {
+        // 1. 批内重复账号
+        Set<String> accounts = new HashSet<>();
+        List<ImportRow> candidates = new ArrayList<>(chunk.size());
+        for (ImportRow row : chunk) {
+            if (accounts.add(row.dto.getUserAccount())) {
+                candidates.add(row);
+            } else {
+                addError(result, row.lineNo, row.dto.getUserAccount(), "文件中账号重复");
+            }
+        }
+
+        // 2. 一次 IN 查询检查数据库中已存在的账号（含已删除和已归档的账号）
+        Set<String> existing = new HashSet<>(userPartitionRouter.queryGrouped(
+                accounts, userPartitionRouter::partitionOfAccount, userMapper::selectExistingAccounts));
+        List<ImportRow> rows = new ArrayList<>(candidates.size());
+        for (ImportRow row : candidates) {
+            if (existing.contains(row.dto.getUserAccount())) {
+                addError(result, row.lineNo, row.dto.getUserAccount(), "账号已存在");
+            } else {
+                rows.add(row);
+            }
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        // 3. 并行加密密码
+        List<User> users = hashAll(rows);
+
+        // 4. 按分区分组多行插入（未分区时只有一组）
+        List<Integer> indexes = IntStream.range(0, users.size()).boxed().collect(Collectors.toList());
+        userPartitionRouter.executeGrouped(indexes,
+                i -> userPartitionRouter.partitionOfAccount(users.get(i).getUserAccount()),
+                group -> insertGroup(group, users, rows, result));
+    }
+
+    /**
+     * 多行插入一组用户；并发注册导致唯一键冲突时退回逐行插入，定位失败的行
+     *
+     * @param indexes 本组用户在 users/rows 中的下标
+     */
+    private int insertGroup(List<Integer> indexes, List<User> users, List<ImportRow> rows, UserImportResultVO result) {
+        List<User> group = indexes.stream().map(users::get).collect(Collectors.toList());
+        try {
+            userMapper.insertBatch(group);
+            result.setSuccess(result.getSuccess() + group.size());
+            accountBloomFilterService.addAll(group.stream().map(User::getUserAccount).collect(Collectors.toList()));
+        } catch (DuplicateKeyException e) {
+            log.warn("批量插入出现账号冲突，改为逐行插入，本批行数：{}", group.size());
+            for (int i : indexes) {
+                try {
+                    userMapper.insert(users.get(i));
+                    result.setSuccess(result.getSuccess() + 1);
+                    accountBloomFilterService.add(users.get(i).getUserAccount());
+                } catch (DuplicateKeyException ex) {
+                    ImportRow row = rows.get(i);
+                    addError(result, row.lineNo, row.dto.getUserAccount(), "账号已存在");
+                }
+            }
+        }
+        return group.size();
+    }
+
+    /**
+     * 在独立线程池中并行加密密码并构建用户对象
+     */
+    private List<User> hashAll(List<ImportRow> rows) {
+        try {
+            return hashPool.submit(() -> rows.parallelStream()
+                    .map(row -> User.builder()
+                            .id(userIdGenerator.nextId(row.dto.getUserAccount()))
+                            .username(row.dto.getUsername())
+                            .userAccount(row.dto.getUserAccount())
+                            .userPassword(passwordHashService.hashOnCurrentThread(row.dto.getUserPassword()))
+                            .gender(row.dto.getGender() != null ? row.dto.getGender() : 0)
+                            .phone(row.dto.getPhone())
+                            .email(row.dto.getEmail())
+                            .userRole("user")
+                            .isDelete(0)
+                            .build())
+                    .collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException("导入被中断");
+        } catch (ExecutionException e) {
+            throw new RuntimeException("密码加密失败", e.getCause());
+        }
+    }
+
+    private void addError(UserImportResultVO result, long lineNo, String userAccount, String reason) {
+        result.setFailed(result.getFailed() + 1);
+        if (result.getErrors().size() < MAX_ERROR_DETAILS) {
+            result.getErrors().add(new UserImportErrorVO(lineNo, userAccount, reason));
+        } else {
+            result.setErrorsTruncated(true);
+        }
+    }
+
+    /**
+     * 已通过校验的一行数据
+     */
+    private static class ImportRow {
+        private final long lineNo;
+        private final UserImportRowDTO dto;
+
+        ImportRow(long lineNo, UserImportRowDTO dto) {
+            this.lineNo = lineNo;
+            this.dto = dto;
+        }
+    }
+}
@@ -1,23 +1,51 @@
 package com.weiki.usercenter.service.impl;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.weiki.usercenter.datasource.DataSourceContextHolder;
+import com.weiki.usercenter.datasource.UserPartitionRouter;
 import com.weiki.usercenter.dto.*;
+import com.weiki.usercenter.entity.LoginLog;
 import com.weiki.usercenter.entity.PageVO;
 import com.weiki.usercenter.entity.User;
 import com.weiki.usercenter.exception.BusinessException;
+import com.weiki.usercenter.exception.VersionConflictException;
+import com.weiki.usercenter.mapper.LoginLogMapper;
 import com.weiki.usercenter.mapper.UserMapper;
+import com.weiki.usercenter.service.AccountBloomFilterService;
+import com.weiki.usercenter.service.FileUploadService;
+import com.weiki.usercenter.service.LoginEventService;
+import com.weiki.usercenter.service.UserCacheService;
+import com.weiki.usercenter.service.PasswordHashService;
+import com.weiki.usercenter.service.UserIdGenerator;
 import com.weiki.usercenter.service.UserService;
 import com.weiki.usercenter.service.RedisTokenService;
 import com.weiki.usercenter.service.RedisRateLimitService;
 import com.weiki.usercenter.service.RedisCaptchaService;
+import com.weiki.usercenter.utils.CsvUtils;
 import com.weiki.usercenter.utils.SecurityUtils;
-import cn.hutool.crypto.SecureUtil;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.BeanUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
-
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.function.Function;
 
 /**
  * 用户服务实现类
@@ -26,23 +54,88 @@ import java.util.List;
 @Slf4j
 public class UserServiceImpl implements UserService {
 
+    /**
+     * 导出时每写出多少行刷新一次输出流
+     */
+    private static final int EXPORT_FLUSH_ROWS = 500;
+
+    /**
+     * 后台替换头像时版本冲突的最大尝试次数
+     */
+    private static final int AVATAR_REPLACE_ATTEMPTS = 3;
+
+    /**
+     * CSV 导出表头
+     */
+    private static final String EXPORT_CSV_HEADER =
+            "id,username,userAccount,gender,phone,email,userProfile,userRole,createTime";
+
+    /**
+     * 列表排序：创建时间倒序，相同时按ID倒序（与 Mapper 中的 ORDER BY 一致，用于分区结果归并）
+     */
+    private static final Comparator<User> NEWEST_FIRST = Comparator
+            .comparing(User::getCreateTime, Comparator.nullsLast(Comparator.<LocalDateTime>naturalOrder()))
+            .thenComparing(User::getId, Comparator.nullsLast(Comparator.<Long>naturalOrder()))
+            .reversed();
+
+    /**
+     * 批量操作时每条 SQL 携带的ID数
+     */
+    @Value("${user.batch.chunk-size:500}")
+    private int batchChunkSize;
+
     private final UserMapper userMapper;
     private final RedisTokenService redisTokenService;
     private final RedisRateLimitService redisRateLimitService;
     private final RedisCaptchaService redisCaptchaService;
+    private final ObjectMapper objectMapper;
+    private final UserCacheService userCacheService;
+    private final AccountBloomFilterService accountBloomFilterService;
+    private final LoginEventService loginEventService;
+    private final LoginLogMapper loginLogMapper;
+    private final UserPartitionRouter userPartitionRouter;
+    private final UserIdGenerator userIdGenerator;
+    private final PasswordHashService passwordHashService;
+    private final FileUploadService fileUploadService;
+    private final TransactionTemplate transactionTemplate;
 
     public UserServiceImpl(UserMapper userMapper,
                           RedisTokenService redisTokenService,
                           RedisRateLimitService redisRateLimitService,
-                          RedisCaptchaService redisCaptchaService) {
+                          RedisCaptchaService redisCaptchaService,
+                          ObjectMapper objectMapper,
+                          UserCacheService userCacheService,
+                          AccountBloomFilterService accountBloomFilterService,
+                          LoginEventService loginEventService,
+                          LoginLogMapper loginLogMapper,
+                          UserPartitionRouter userPartitionRouter,
+                          UserIdGenerator userIdGenerator,
+                          PasswordHashService passwordHashService,
+                          FileUploadService fileUploadService,
+                          PlatformTransactionManager transactionManager) {
         this.userMapper = userMapper;
         this.redisTokenService = redisTokenService;
         this.redisRateLimitService = redisRateLimitService;
         this.redisCaptchaService = redisCaptchaService;
+        this.objectMapper = objectMapper;
+        this.userCacheService = userCacheService;
+        this.accountBloomFilterService = accountBloomFilterService;
+        this.loginEventService = loginEventService;
+        this.loginLogMapper = loginLogMapper;
+        this.userPartitionRouter = userPartitionRouter;
+        this.userIdGenerator = userIdGenerator;
+        this.passwordHashService = passwordHashService;
+        this.fileUploadService = fileUploadService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
     
+    /**
+     * 注册
+     *
+     * 验证码校验、密码哈希和头像转存都比较慢（哈希需要排队，头像转存可能访问对象存储），放在事务之外执行；
+     * 事务只包含归档恢复和 upsert，持有数据库连接的时间尽量短
+     */
     @Override
-    @Transactional(transactionManager = "transactionManager")
     public Long register(UserRegisterDTO registerDTO) {
         log.info("开始处理用户注册，账号：{}", registerDTO.getUserAccount());
 
@@ -58,46 +151,18 @@ public class UserServiceImpl implements UserService {
             throw new BusinessException("请先获取验证码");
         }
 
-        // 2. 检查账号是否已存在（未删除）
-        User existUser = userMapper.selectByAccount(registerDTO.getUserAccount());
-        if (existUser != null) {
-            log.warn("注册失败，账号已存在：{}", registerDTO.getUserAccount());
-            throw new BusinessException("账号已存在");
-        }
-        
-        // 3. 检查是否有已删除的相同账号，如果有则恢复
-        User deletedUser = userMapper.selectByAccountIncludeDeleted(registerDTO.getUserAccount());
-        if (deletedUser != null) {
-            log.info("发现已删除的账号，正在恢复：{}", registerDTO.getUserAccount());
-            // 更新已删除的用户信息
-            String encryptedPassword = SecureUtil.md5(registerDTO.getUserPassword() + "user_center");
-            User user = User.builder()
-                    .id(deletedUser.getId())
-                    .username(registerDTO.getUsername())
-                    .userPassword(encryptedPassword)
-                    .gender(registerDTO.getGender())
-                    .phone(registerDTO.getPhone())
-                    .email(registerDTO.getEmail())
-                    .avatarUrl(registerDTO.getAvatarUrl())
-                    .userRole("user")
-                    .build();
-            userMapper.recoverAndUpdate(user);
-
-            log.info("用户恢复成功，账号：{}，用户ID：{}",
-                    registerDTO.getUserAccount(), deletedUser.getId());
-
-            return deletedUser.getId();
-        }
-
-        // 4. 检查两次密码是否一致
+        // 2. 检查两次密码是否一致
         if (!registerDTO.getUserPassword().equals(registerDTO.getCheckPassword())) {
             log.warn("注册失败，两次密码不一致");
             throw new BusinessException("两次密码不一致");
         }
-        
-        // 4. 密码加密（使用Hutool加盐MD5）
-        String encryptedPassword = SecureUtil.md5(registerDTO.getUserPassword() + "user_center");
-        
+
+        // 3. 密码哈希（在独立线程池中执行）
+        String encryptedPassword = passwordHashService.hash(registerDTO.getUserPassword());
+
+        // 4. 内联的 Base64 头像转存为文件，只在用户表中保存URL
+        String avatarUrl = fileUploadService.normalizeAvatarUrl(registerDTO.getAvatarUrl(), null);
+
         // 5. 创建用户对象
         User user = User.builder()
                 .username(registerDTO.getUsername())
@@ -106,23 +171,65 @@ public class UserServiceImpl implements UserService {
                 .gender(registerDTO.getGender())
                 .phone(registerDTO.getPhone())
                 .email(registerDTO.getEmail())
-                .avatarUrl(registerDTO.getAvatarUrl())
+                .avatarUrl(avatarUrl)
                 .userRole("user")
                 .isDelete(0)
                 .build();
-        
-        // 6. 插入数据库
-        int rows = userMapper.insert(user);
-        if (rows <= 0) {
-            throw new BusinessException("注册失败，请稍后重试");
+
+        // 6. 分配ID
+        Long newId = userIdGenerator.nextId(registerDTO.getUserAccount());
+
+        RegisterOutcome outcome;
+        try {
+            outcome = transactionTemplate.execute(status -> {
+                // 7. 账号已被归档时先移回主表（保持已删除状态），下面的 upsert 会按恢复处理并沿用原ID
+                if (userMapper.restoreFromArchive(registerDTO.getUserAccount()) > 0) {
+                    userMapper.deleteArchivedByAccount(registerDTO.getUserAccount());
+                    log.info("账号已从归档表移回：{}", registerDTO.getUserAccount());
+                }
+                // 8. 单条语句完成插入 / 恢复已删除账号 / 检测已存在账号，并发注册同一账号时由唯一索引保证只有一个成功
+                int rows = userMapper.registerUpsert(user, newId);
+                return RegisterOutcome.of(rows, user.getId());
+            });
+        } catch (RuntimeException e) {
+            releaseConvertedAvatar(avatarUrl, registerDTO.getAvatarUrl());
+            throw e;
+        }
+        switch (outcome) {
+            case INSERTED:
+                accountBloomFilterService.add(registerDTO.getUserAccount());
+                log.info("用户注册成功，账号：{}，用户ID：{}", registerDTO.getUserAccount(), user.getId());
+                return user.getId();
+            case REVIVED:
+                userCacheService.evict(user.getId());
+                accountBloomFilterService.add(registerDTO.getUserAccount());
+                log.info("用户恢复成功，账号：{}，用户ID：{}", registerDTO.getUserAccount(), user.getId());
+                return user.getId();
+            default:
+                releaseConvertedAvatar(avatarUrl, registerDTO.getAvatarUrl());
+                log.warn("注册失败，账号已存在：{}", registerDTO.getUserAccount());
+                throw new BusinessException("账号已存在");
         }
-        
-        log.info("用户注册成功，账号：{}，用户ID：{}", 
-                registerDTO.getUserAccount(), user.getId());
-        
-        return user.getId();
     }
     
+    /**
+     * 写入失败时释放本次从内联数据转存的头像（客户端直接传入的URL没有增加引用，不释放）
+     */
+    private void releaseConvertedAvatar(String storedUrl, String requestedUrl) {
+        if (storedUrl != null && !storedUrl.equals(requestedUrl)) {
+            fileUploadService.releaseAvatar(storedUrl);
+        }
+    }
+
+    @Override
+    public boolean isAccountAvailable(String userAccount) {
+        // 布隆过滤器判定一定不存在时无需查询
+        if (!accountBloomFilterService.mightContain(userAccount)) {
+            return true;
+        }
+        return userCacheService.getByAccount(userAccount) == null;
+    }
+
     @Override
     public LoginVO login(UserLoginDTO loginDTO) {
         log.info("开始处理用户登录，账号：{}", loginDTO.getUserAccount());
@@ -130,32 +237,39 @@ public class UserServiceImpl implements UserService {
         // 1. 检查登录是否被锁定（限流）
         if (!redisRateLimitService.isLoginAllowed(loginDTO.getUserAccount())) {
             long ttl = redisRateLimitService.getTTL("login:fail:" + loginDTO.getUserAccount());
+            loginEventService.recordFailure(null, loginDTO.getUserAccount(), "登录已锁定");
             throw new BusinessException("登录失败次数过多，请" + (ttl / 60) + "分钟后重试");
         }
 
-        // 2. 根据账号查询用户
-        User user = userMapper.selectByAccount(loginDTO.getUserAccount());
+        // 2. 根据账号查询用户（布隆过滤器判定一定不存在的账号直接拒绝，不查询数据库）
+        User user = accountBloomFilterService.mightContain(loginDTO.getUserAccount())
+                ? userCacheService.getByAccount(loginDTO.getUserAccount())
+                : null;
         if (user == null) {
             // 记录登录失败
             redisRateLimitService.recordLoginFailure(loginDTO.getUserAccount());
             log.warn("登录失败，用户不存在：{}", loginDTO.getUserAccount());
+            loginEventService.recordFailure(null, loginDTO.getUserAccount(), "账号不存在");
             throw new BusinessException("账号或密码错误");
         }
 
         // 3. 检查用户是否已删除
         if (user.getIsDelete() == 1) {
             log.warn("登录失败，用户已被删除：{}", loginDTO.getUserAccount());
+            loginEventService.recordFailure(user.getId(), loginDTO.getUserAccount(), "账号已删除");
             throw new BusinessException("账号或密码错误");
         }
 
-        // 4. 验证密码（使用Hutool加盐MD5）
-        String encryptedPassword = SecureUtil.md5(loginDTO.getUserPassword() + "user_center");
-        if (!encryptedPassword.equals(user.getUserPassword())) {
+        // 4. 验证密码（用户缓存不含密码哈希，从主库读取，避免从库延迟期间旧密码仍可登录；校验在独立线程池中执行）
+        String passwordHash = DataSourceContextHolder.callOnPrimary(() -> userMapper.selectPasswordById(user.getId()));
+        if (passwordHash == null || !passwordHashService.verify(loginDTO.getUserPassword(), passwordHash)) {
             // 记录登录失败
             redisRateLimitService.recordLoginFailure(loginDTO.getUserAccount());
             log.warn("登录失败，密码错误：{}", loginDTO.getUserAccount());
+            loginEventService.recordFailure(user.getId(), loginDTO.getUserAccount(), "密码错误");
             throw new BusinessException("账号或密码错误");
         }
+        upgradePasswordHash(user.getId(), passwordHash, loginDTO.getUserPassword());
 
         // 5. 生成Token
         String token = "token-" + user.getId() + "-" + System.currentTimeMillis();
@@ -174,6 +288,7 @@ public class UserServiceImpl implements UserService {
 
         log.info("用户登录成功，账号：{}，用户ID：{}",
                 loginDTO.getUserAccount(), user.getId());
+        loginEventService.recordSuccess(user.getId(), loginDTO.getUserAccount());
 
         // 10. 返回结果
         LoginVO loginVO = new LoginVO();
@@ -224,13 +339,43 @@ public class UserServiceImpl implements UserService {
             throw new BusinessException("没有权限查看其他用户信息");
         }
 
-        User user = userMapper.selectById(id);
+        User user = userCacheService.getById(id);
         if (user == null) {
             throw new BusinessException("用户不存在");
         }
         return convertToVO(user);
     }
     
+    @Override
+    public PageVO<LoginLogVO> getLoginHistory(Long userId, int page, int size) {
+        // 权限校验：普通用户只能查看自己的登录历史，管理员可以查看所有用户的
+        User currentUser = SecurityUtils.getCurrentUser();
+        if (currentUser == null) {
+            throw new BusinessException("用户未登录");
+        }
+        if (!"admin".equals(currentUser.getUserRole()) && !currentUser.getId().equals(userId)) {
+            throw new BusinessException("没有权限查看其他用户的登录历史");
+        }
+
+        List<LoginLog> logs = loginLogMapper.selectByUserId(userId, (page - 1) * size, size);
+        List<LoginLogVO> records = new ArrayList<>(logs.size());
+        for (LoginLog loginLog : logs) {
+            LoginLogVO vo = new LoginLogVO();
+            BeanUtils.copyProperties(loginLog, vo, "loginTime", "success");
+            vo.setLoginTime(loginLog.getLoginTime() != null ? loginLog.getLoginTime().toString() : null);
+            vo.setSuccess(Integer.valueOf(1).equals(loginLog.getSuccess()));
+            records.add(vo);
+        }
+        long total = loginLogMapper.countByUserId(userId);
+        return PageVO.<LoginLogVO>builder()
+                .page(page)
+                .size(size)
+                .total(total)
+                .pages((int) Math.ceil((double) total / size))
+                .records(records)
+                .build();
+    }
+
     @Override
     public List<UserVO> getAllUsers() {
         // 权限校验：只有管理员可以查看所有用户
@@ -242,7 +387,7 @@ public class UserServiceImpl implements UserService {
             throw new BusinessException("没有权限查看所有用户");
         }
 
-        List<User> users = userMapper.selectAll();
+        List<User> users = userPartitionRouter.gatherSorted(userMapper::selectAll, NEWEST_FIRST, 0, Integer.MAX_VALUE);
         List<UserVO> userVOs = new ArrayList<>();
         for (User user : users) {
             userVOs.add(convertToVO(user));
@@ -250,6 +395,109 @@ public class UserServiceImpl implements UserService {
         return userVOs;
     }
     
+    @Override
+    @Transactional(transactionManager = "transactionManager", readOnly = true)
+    public void exportUsers(String format, HttpServletResponse response) {
+        // 权限校验：只有管理员可以导出用户
+        User currentUser = SecurityUtils.getCurrentUser();
+        if (currentUser == null) {
+            throw new BusinessException("用户未登录");
+        }
+        if (!"admin".equals(currentUser.getUserRole())) {
+            throw new BusinessException("没有权限导出用户");
+        }
+        boolean csv = "csv".equalsIgnoreCase(format);
+        if (!csv && !"ndjson".equalsIgnoreCase(format)) {
+            throw new BusinessException("不支持的导出格式：" + format);
+        }
+        response.setCharacterEncoding("UTF-8");
+        response.setContentType(csv ? "text/csv;charset=UTF-8" : "application/x-ndjson;charset=UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=users." + (csv ? "csv" : "ndjson"));
+
+        // 游标逐行读取、逐行写出，内存占用与表大小无关；分区模式下依次导出每个分区
+        long rows = 0;
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+            JsonGenerator generator = null;
+            if (csv) {
+                // 写入 BOM，避免 Excel 打开中文乱码
+                writer.write('\uFEFF');
+                writer.write(EXPORT_CSV_HEADER);
+                writer.write('\n');
+            } else {
+                generator = objectMapper.getFactory().createGenerator(writer);
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+            }
+            for (int partition = 0; partition < userPartitionRouter.getPartitionCount(); partition++) {
+                try (Cursor<User> cursor = userPartitionRouter.callIn(partition, userMapper::streamAll)) {
+                    for (User user : cursor) {
+                        if (csv) {
+                            writeCsvRow(writer, user);
+                        } else {
+                            writeJsonRow(generator, writer, user);
+                        }
+                        if (++rows % EXPORT_FLUSH_ROWS == 0) {
+                            writer.flush();
+                        }
+                    }
+                }
+            }
+            if (generator != null) {
+                generator.flush();
+            }
+            writer.flush();
+        } catch (IOException e) {
+            log.error("导出用户失败，已写出 {} 行", rows, e);
+            throw new UncheckedIOException("导出用户失败", e);
+        }
+        log.info("导出用户完成，格式：{}，行数：{}", format, rows);
+    }
+
+    /**
+     * 写出一行CSV
+     */
+    private void writeCsvRow(Writer writer, User user) throws IOException {
+        writer.write(CsvUtils.escape(user.getId()));
+        writer.write(',');
+        writer.write(CsvUtils.escape(user.getUsername()));
+        writer.write(',');
+        writer.write(CsvUtils.escape(user.getUserAccount()));
+        writer.write(',');
+        writer.write(CsvUtils.escape(user.getGender()));
+        writer.write(',');
+        writer.write(CsvUtils.escape(user.getPhone()));
+        writer.write(',');
+        writer.write(CsvUtils.escape(user.getEmail()));
+        writer.write(',');
+        writer.write(CsvUtils.escape(user.getUserProfile()));
+        writer.write(',');
+        writer.write(CsvUtils.escape(user.getUserRole()));
+        writer.write(',');
+        writer.write(CsvUtils.escape(user.getCreateTime()));
+        writer.write('\n');
+    }
+
+    /**
+     * 写出一行JSON（ndjson，每行一个对象）
+     */
+    private void writeJsonRow(JsonGenerator generator, Writer writer, User user) throws IOException {
+        generator.writeStartObject();
+        generator.writeObjectField("id", user.getId());
+        generator.writeStringField("username", user.getUsername());
+        generator.writeStringField("userAccount", user.getUserAccount());
+        generator.writeObjectField("gender", user.getGender());
+        generator.writeStringField("phone", user.getPhone());
+        generator.writeStringField("email", user.getEmail());
+        generator.writeStringField("userProfile", user.getUserProfile());
+        generator.writeStringField("userRole", user.getUserRole());
+        generator.writeStringField("createTime",
+                user.getCreateTime() != null ? user.getCreateTime().toString() : null);
+        generator.writeEndObject();
+        generator.flush();
+        writer.write('\n');
+    }
+    
     @Override
     public PageVO<UserVO> getUsersByPage(UserQueryDTO queryDTO) {
         // 权限校验：只有管理员可以分页查看用户
@@ -262,12 +510,23 @@ public class UserServiceImpl implements UserService {
         }
 
         int offset = (queryDTO.getPage() - 1) * queryDTO.getSize();
-        List<User> users = userMapper.selectByPage(queryDTO.getUsername(), offset, queryDTO.getSize());
+        List<User> users;
+        int total;
+        if (userPartitionRouter.isEnabled()) {
+            // 分区模式：每个分区取前 offset+size 条，按创建时间归并后截取当前页
+            int limit = offset + queryDTO.getSize();
+            users = userPartitionRouter.gatherSorted(
+                    () -> userMapper.selectByPage(queryDTO.getUsername(), 0, limit), NEWEST_FIRST, offset, queryDTO.getSize());
+            total = userPartitionRouter.scatter(p -> userMapper.count(queryDTO.getUsername()))
+                    .stream().mapToInt(Integer::intValue).sum();
+        } else {
+            users = userMapper.selectByPage(queryDTO.getUsername(), offset, queryDTO.getSize());
+            total = userMapper.count(queryDTO.getUsername());
+        }
         List<UserVO> userVOs = new ArrayList<>();
         for (User user : users) {
             userVOs.add(convertToVO(user));
         }
-        int total = userMapper.count(queryDTO.getUsername());
         return PageVO.<UserVO>builder()
                 .page(queryDTO.getPage())
                 .size(queryDTO.getSize())
@@ -288,7 +547,8 @@ public class UserServiceImpl implements UserService {
             throw new BusinessException("没有权限搜索用户");
         }
 
-        List<User> users = userMapper.selectByUsername(username);
+        List<User> users = userPartitionRouter.gatherSorted(
+                () -> userMapper.selectByUsername(username), NEWEST_FIRST, 0, Integer.MAX_VALUE);
         List<UserVO> userVOs = new ArrayList<>();
         for (User user : users) {
             userVOs.add(convertToVO(user));
@@ -298,7 +558,7 @@ public class UserServiceImpl implements UserService {
     
     @Override
     public User getUserByAccount(String account) {
-        return userMapper.selectByAccount(account);
+        return userCacheService.getByAccount(account);
     }
     
     @Override
@@ -313,15 +573,42 @@ public class UserServiceImpl implements UserService {
             throw new BusinessException("没有权限修改其他用户信息");
         }
 
-        User user = userMapper.selectById(id);
-        if (user == null) {
-            throw new BusinessException("用户不存在");
-        }
+        // 不预先查询：单条条件 UPDATE 完成存在性检查和版本校验
         User updateUser = new User();
         updateUser.setId(id);
         BeanUtils.copyProperties(updateDTO, updateUser);
-        int rows = userMapper.update(updateUser);
-        return rows > 0;
+        // 内联的 Base64 头像转存为文件，只在用户表中保存URL
+        updateUser.setAvatarUrl(fileUploadService.normalizeAvatarUrl(updateDTO.getAvatarUrl(), id));
+        try {
+            int rows = userMapper.update(updateUser);
+            checkUpdated(rows, id, updateDTO.getVersion());
+        } catch (RuntimeException e) {
+            releaseConvertedAvatar(updateUser.getAvatarUrl(), updateDTO.getAvatarUrl());
+            throw e;
+        }
+        userCacheService.evict(id);
+        return true;
+    }
+
+    @Override
+    public String replaceAvatarUrl(Long id, String avatarUrl) {
+        // 按读到的版本号更新，确保返回的原头像正是被替换的那个；期间被修改时重新读取
+        // 从主库读取：从库延迟时读到的旧版本号会让每次重试都失败，返回的原头像也可能不对
+        for (int attempt = 0; attempt < AVATAR_REPLACE_ATTEMPTS; attempt++) {
+            User current = DataSourceContextHolder.callOnPrimary(() -> userMapper.selectById(id));
+            if (current == null) {
+                throw new BusinessException("用户不存在");
+            }
+            User updateUser = new User();
+            updateUser.setId(id);
+            updateUser.setAvatarUrl(avatarUrl);
+            updateUser.setVersion(current.getVersion());
+            if (userMapper.update(updateUser) > 0) {
+                userCacheService.evict(id);
+                return current.getAvatarUrl();
+            }
+        }
+        throw new VersionConflictException(DataSourceContextHolder.callOnPrimary(() -> userMapper.selectVersionById(id)));
     }
     
     @Override
@@ -336,21 +623,21 @@ public class UserServiceImpl implements UserService {
             throw new BusinessException("没有权限修改其他用户的密码");
         }
 
-        User user = userMapper.selectById(id);
-        if (user == null) {
+        String passwordHash = DataSourceContextHolder.callOnPrimary(() -> userMapper.selectPasswordById(id));
+        if (passwordHash == null) {
             throw new BusinessException("用户不存在");
         }
-        String encryptedOldPassword = SecureUtil.md5(oldPassword + "user_center");
-        if (!encryptedOldPassword.equals(user.getUserPassword())) {
+        if (!passwordHashService.verify(oldPassword, passwordHash)) {
             throw new BusinessException("旧密码错误");
         }
-        String encryptedNewPassword = SecureUtil.md5(newPassword + "user_center");
-        int rows = userMapper.updatePasswordById(id, encryptedNewPassword);
+        String encryptedNewPassword = passwordHashService.hash(newPassword);
+        int rows = userMapper.updatePasswordById(id, encryptedNewPassword, null);
+        userCacheService.evict(id);
         return rows > 0;
     }
     
     @Override
-    public boolean resetPassword(Long id, String newPassword) {
+    public boolean resetPassword(Long id, String newPassword, Integer version) {
         // 权限校验：只有管理员可以重置用户密码
         User currentUser = SecurityUtils.getCurrentUser();
         if (currentUser == null) {
@@ -360,19 +647,17 @@ public class UserServiceImpl implements UserService {
             throw new BusinessException("没有权限重置用户密码");
         }
 
-        User user = userMapper.selectById(id);
-        if (user == null) {
-            throw new BusinessException("用户不存在");
-        }
         // 管理员重置密码不需要验证旧密码
-        String encryptedNewPassword = SecureUtil.md5(newPassword + "user_center");
-        int rows = userMapper.updatePasswordById(id, encryptedNewPassword);
+        String encryptedNewPassword = passwordHashService.hash(newPassword);
+        int rows = userMapper.updatePasswordById(id, encryptedNewPassword, version);
+        checkUpdated(rows, id, version);
+        userCacheService.evict(id);
         log.info("管理员重置用户密码，用户ID：{}", id);
-        return rows > 0;
+        return true;
     }
     
     @Override
-    public boolean deleteUser(Long id) {
+    public boolean deleteUser(Long id, Integer version) {
         // 权限校验：检查当前登录用户是否有权限删除该用户
         User currentUser = SecurityUtils.getCurrentUser();
         if (currentUser == null) {
@@ -383,12 +668,44 @@ public class UserServiceImpl implements UserService {
             throw new BusinessException("没有权限删除其他用户");
         }
 
-        User user = userMapper.selectById(id);
-        if (user == null) {
+        int rows = userMapper.logicalDeleteById(id, version);
+        checkUpdated(rows, id, version);
+        userCacheService.evict(id);
+        accountBloomFilterService.recordDeletions(rows);
+        return true;
+    }
+
+    /**
+     * 登录成功后把旧版 MD5 哈希或低迭代次数的哈希升级为当前配置
+     * 仅当数据库中仍是旧哈希时更新（期间密码被修改则放弃），升级失败不影响本次登录
+     */
+    private void upgradePasswordHash(Long userId, String currentHash, String rawPassword) {
+        if (!passwordHashService.needsRehash(currentHash)) {
+            return;
+        }
+        try {
+            String newHash = passwordHashService.hash(rawPassword);
+            if (userMapper.updatePasswordIfMatch(userId, currentHash, newHash) > 0) {
+                userCacheService.evict(userId);
+                log.info("已升级用户密码哈希，用户ID：{}", userId);
+            }
+        } catch (Exception e) {
+            log.warn("升级用户密码哈希失败，用户ID：{}：{}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * 条件更新未命中时再查询一次版本号，区分用户不存在和版本冲突（只在失败路径上多一次查询）
+     */
+    private void checkUpdated(int rows, Long id, Integer expectedVersion) {
+        if (rows > 0) {
+            return;
+        }
+        Integer currentVersion = userMapper.selectVersionById(id);
+        if (currentVersion == null) {
             throw new BusinessException("用户不存在");
         }
-        int rows = userMapper.logicalDeleteById(id);
-        return rows > 0;
+        throw new VersionConflictException(currentVersion);
     }
     
     /**
@@ -412,6 +729,124 @@ public class UserServiceImpl implements UserService {
         }
         return convertToVO(currentUser);
     }
-}
 
+    @Override
+    @Transactional(transactionManager = "transactionManager")
+    public BatchResultVO batchDeleteUsers(List<Long> ids) {
+        List<Long> idList = checkBatchPermission(ids, true);
+        int affected = executeInChunks(idList, userMapper::logicalDeleteByIds);
+        userCacheService.evictAll(idList);
+        accountBloomFilterService.recordDeletions(affected);
+        redisTokenService.deleteUserTokensBatch(idList);
+        log.info("管理员批量删除用户，请求数：{}，删除数：{}", idList.size(), affected);
+        return new BatchResultVO(idList.size(), affected);
+    }
+
+    @Override
+    @Transactional(transactionManager = "transactionManager")
+    public BatchResultVO batchUpdateRole(List<Long> ids, String userRole) {
+        if (!"user".equals(userRole) && !"admin".equals(userRole)) {
+            throw new BusinessException("角色只能是 user 或 admin");
+        }
+        List<Long> idList = checkBatchPermission(ids, true);
+        int affected = executeInChunks(idList, chunk -> userMapper.updateRoleByIds(chunk, userRole));
+        userCacheService.evictAll(idList);
+        // 会话中缓存了用户角色，强制登出使新角色立即生效
+        redisTokenService.deleteUserTokensBatch(idList);
+        log.info("管理员批量修改角色为 {}，请求数：{}，修改数：{}", userRole, idList.size(), affected);
+        return new BatchResultVO(idList.size(), affected);
+    }
+
+    @Override
+    @Transactional(transactionManager = "transactionManager")
+    public BatchResultVO batchResetPassword(List<Long> ids, String newPassword) {
+        if (newPassword == null || newPassword.isEmpty()) {
+            throw new BusinessException("新密码不能为空");
+        }
+        List<Long> idList = checkBatchPermission(ids, false);
+        // 所有用户使用同一个哈希（同一密码），只计算一次
+        String encryptedNewPassword = passwordHashService.hash(newPassword);
+        int affected = executeInChunks(idList, chunk -> userMapper.updatePasswordByIds(chunk, encryptedNewPassword));
+        userCacheService.evictAll(idList);
+        redisTokenService.deleteUserTokensBatch(idList);
+        log.info("管理员批量重置密码，请求数：{}，重置数：{}", idList.size(), affected);
+        return new BatchResultVO(idList.size(), affected);
+    }
+
+    @Override
+    public BatchResultVO batchLogout(List<Long> ids) {
+        List<Long> idList = checkBatchPermission(ids, false);
+        redisTokenService.deleteUserTokensBatch(idList);
+        log.info("管理员批量强制登出，用户数：{}", idList.size());
+        return new BatchResultVO(idList.size(), idList.size());
+    }
+
+    /**
+     * 批量操作权限校验，返回去重后的ID列表
+     *
+     * @param ids 用户ID列表
+     * @param excludeSelf 是否禁止包含当前管理员自己
+     */
+    private List<Long> checkBatchPermission(List<Long> ids, boolean excludeSelf) {
+        // 权限校验：只有管理员可以执行批量操作
+        User currentUser = SecurityUtils.getCurrentUser();
+        if (currentUser == null) {
+            throw new BusinessException("用户未登录");
+        }
+        if (!"admin".equals(currentUser.getUserRole())) {
+            throw new BusinessException("没有权限执行批量操作");
+        }
+        if (ids == null || ids.isEmpty()) {
+            throw new BusinessException("用户ID列表不能为空");
+        }
+        List<Long> idList = new ArrayList<>(new LinkedHashSet<>(ids));
+        idList.remove(null);
+        if (excludeSelf && idList.contains(currentUser.getId())) {
+            throw new BusinessException("不能对自己的账号执行该操作");
+        }
+        return idList;
+    }
+
+    /**
+     * 按批次执行 WHERE id IN (...) 语句，返回受影响行数之和
+     * 分区模式下每个批次再按ID所在分区拆分
+     */
+    private int executeInChunks(List<Long> ids, Function<List<Long>, Integer> statement) {
+        int affected = 0;
+        for (int from = 0; from < ids.size(); from += batchChunkSize) {
+            List<Long> chunk = ids.subList(from, Math.min(from + batchChunkSize, ids.size()));
+            affected += userPartitionRouter.executeGrouped(chunk, userPartitionRouter::partitionOfId, statement);
+        }
+        return affected;
+    }
 
+    /**
+     * 注册 upsert 的结果
+     */
+    private enum RegisterOutcome {
+        /**
+         * 新插入
+         */
+        INSERTED,
+        /**
+         * 恢复了已删除的账号
+         */
+        REVIVED,
+        /**
+         * 账号已存在且未删除
+         */
+        DUPLICATE;
+
+        /**
+         * 根据影响行数和回填的ID判断结果
+         * MySQL 对 ON DUPLICATE KEY UPDATE 的约定：插入计1行，更新计2行；
+         * 未修改时生成键为 LAST_INSERT_ID(0)，驱动不回填ID
+         */
+        static RegisterOutcome of(int rows, Long id) {
+            if (id == null || id <= 0) {
+                return DUPLICATE;
+            }
+            return rows >= 2 ? REVIVED : INSERTED;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.weiki.usercenter.storage;
+
+import cn.hutool.crypto.SecureUtil;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.function.Consumer;
+
+/**
+ * 头像文件存储
+ *
+ * 每个头像（avatarId）对应一组文件（各尺寸的缩略图），按 avatarId 的哈希分散到两级子目录（或对象键前缀）中，
+ * 避免单个目录下文件过多。实现：
+ * - local：本地磁盘（默认）
+ * - s3：S3 兼容的对象存储（可用 MinIO 在本地替代）
+ * 通过 file.upload.storage 选择
+ */
+public interface AvatarStorage {
+
+    /**
+     * 写入头像文件，写入完成前读取方看不到该文件
+     *
+     * @param avatarId 头像ID
+     * @param fileName 文件名，如 128.jpg
+     */
+    void write(String avatarId, String fileName, byte[] data) throws IOException;
+
+    /**
+     * 查找头像文件
+     *
+     * @return 文件不存在时返回null
+     */
+    StoredFile find(String avatarId, String fileName) throws IOException;
+
+    /**
+     * 查找旧版单文件头像（如 1_a1b2c3d4.jpg），不支持时返回null
+     */
+    StoredFile findLegacy(String fileName) throws IOException;
+
+    /**
+     * 删除头像的所有文件
+     */
+    void delete(String avatarId) throws IOException;
+
+    /**
+     * 遍历最后修改时间早于 modifiedBefore 的头像（包括旧版头像）
+     *
+     * @param action 接收头像ID（旧版单文件头像为文件名）
+     */
+    void forEachAvatar(Instant modifiedBefore, Consumer<String> action) throws IOException;
+
+    /**
+     * 两级分片目录，如 3f/a2（内容哈希命名的头像直接取前4位，其他头像取ID的MD5）
+     */
+    static String shardOf(String avatarId) {
+        String hex = avatarId.matches("[0-9a-f]{32}") ? avatarId : SecureUtil.md5(avatarId);
+        return hex.substring(0, 2) + "/" + hex.substring(2, 4);
+    }
+}
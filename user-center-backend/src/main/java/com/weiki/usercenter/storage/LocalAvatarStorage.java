@@ -0,0 +1,226 @@
+package com.weiki.usercenter.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 本地磁盘头像存储
+ *
+ * 目录结构：{根目录}/{ab}/{cd}/{头像ID}/{尺寸}.{格式}
+ * 早期版本直接存放在根目录下（{根目录}/{头像ID}/...、{根目录}/{文件名}），查找时兼容：
+ * 内容哈希命名的旧目录在第一次访问时移动到分片目录，其他旧头像原地读取，不再被引用后由回收任务删除
+ */
+@Component
+@ConditionalOnProperty(name = "file.upload.storage", havingValue = "local", matchIfMissing = true)
+@Slf4j
+public class LocalAvatarStorage implements AvatarStorage {
+
+    private static final Pattern SHARD_PATTERN = Pattern.compile("[0-9a-f]{2}");
+    private static final Pattern CONTENT_HASH_PATTERN = Pattern.compile("[0-9a-f]{32}");
+
+    /**
+     * 头像存储目录
+     */
+    @Value("${file.upload.avatar-path:./uploads/avatar}")
+    private String avatarUploadPath;
+
+    private Path root;
+
+    @PostConstruct
+    public void init() throws IOException {
+        // 与早期版本的目录解析方式保持一致，已有文件无需移动
+        root = Paths.get(System.getProperty("user.dir"), avatarUploadPath.replace("./", "uploads" + File.separator));
+        Files.createDirectories(root);
+        log.info("头像本地存储目录：{}", root);
+    }
+
+    @Override
+    public void write(String avatarId, String fileName, byte[] data) throws IOException {
+        Path dir = directoryOf(avatarId);
+        Files.createDirectories(dir);
+        // 先写临时文件再改名，读取方不会看到写了一半的文件
+        Path temp = Files.createTempFile(dir, "upload", ".tmp");
+        try {
+            Files.write(temp, data);
+            Files.move(temp, dir.resolve(fileName), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public StoredFile find(String avatarId, String fileName) throws IOException {
+        Path file = directoryOf(avatarId).resolve(fileName);
+        if (!Files.isRegularFile(file)) {
+            Path legacy = root.resolve(avatarId);
+            if (!Files.isDirectory(legacy)) {
+                return null;
+            }
+            file = relocate(avatarId, legacy).resolve(fileName);
+        }
+        return stat(file);
+    }
+
+    @Override
+    public StoredFile findLegacy(String fileName) throws IOException {
+        Path file = root.resolve(fileName);
+        return Files.isRegularFile(file) ? stat(file) : null;
+    }
+
+    @Override
+    public void delete(String avatarId) throws IOException {
+        deleteRecursively(directoryOf(avatarId));
+        deleteRecursively(root.resolve(avatarId));
+    }
+
+    @Override
+    public void forEachAvatar(Instant modifiedBefore, Consumer<String> action) throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(root)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                if (SHARD_PATTERN.matcher(name).matches() && Files.isDirectory(entry)) {
+                    forEachInShard(entry, modifiedBefore, action);
+                } else if (isModifiedBefore(entry, modifiedBefore)) {
+                    // 旧版平铺存放的头像
+                    action.accept(name);
+                }
+            }
+        }
+    }
+
+    /**
+     * 遍历一级分片目录下的头像
+     */
+    private void forEachInShard(Path shard, Instant modifiedBefore, Consumer<String> action) throws IOException {
+        try (DirectoryStream<Path> subShards = Files.newDirectoryStream(shard, Files::isDirectory)) {
+            for (Path subShard : subShards) {
+                try (DirectoryStream<Path> avatars = Files.newDirectoryStream(subShard)) {
+                    for (Path avatar : avatars) {
+                        if (isModifiedBefore(avatar, modifiedBefore)) {
+                            action.accept(avatar.getFileName().toString());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private Path directoryOf(String avatarId) {
+        return root.resolve(AvatarStorage.shardOf(avatarId)).resolve(avatarId);
+    }
+
+    /**
+     * 把内容哈希命名的旧目录移动到分片目录，移动失败（如并发移动）时使用实际存在的位置
+     */
+    private Path relocate(String avatarId, Path legacy) {
+        if (!CONTENT_HASH_PATTERN.matcher(avatarId).matches()) {
+            return legacy;
+        }
+        Path target = directoryOf(avatarId);
+        try {
+            Files.createDirectories(target.getParent());
+            Files.move(legacy, target, StandardCopyOption.ATOMIC_MOVE);
+            log.info("头像目录移动到分片目录：{}", avatarId);
+        } catch (IOException e) {
+            log.debug("头像目录移动失败：{}：{}", avatarId, e.getMessage());
+        }
+        return Files.isDirectory(target) ? target : legacy;
+    }
+
+    private StoredFile stat(Path file) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        return new LocalFile(file, attributes.size(), attributes.lastModifiedTime().toMillis());
+    }
+
+    private boolean isModifiedBefore(Path entry, Instant modifiedBefore) {
+        try {
+            return Files.getLastModifiedTime(entry).toInstant().isBefore(modifiedBefore);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        List<Path> paths = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(path)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(paths::add);
+        }
+        for (Path p : paths) {
+            Files.deleteIfExists(p);
+        }
+    }
+
+    /**
+     * 本地文件
+     */
+    private static class LocalFile implements StoredFile {
+        private final Path path;
+        private final long length;
+        private final long lastModified;
+
+        private LocalFile(Path path, long length, long lastModified) {
+            this.path = path;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public String getName() {
+            return path.getFileName().toString();
+        }
+
+        @Override
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        @Override
+        public Path getLocalPath() {
+            return path;
+        }
+
+        @Override
+        public InputStream open(long start, long end) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+            channel.position(start);
+            return Channels.newInputStream(channel);
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package com.weiki.usercenter.storage;
+
+import cn.hutool.core.util.HexUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * S3 兼容对象存储的头像存储
+ *
+ * 对象键：{prefix}{ab}/{cd}/{头像ID}/{尺寸}.{格式}，使用 path-style 地址和 AWS Signature V4 签名，
+ * 只依赖 JDK 的 HttpClient，可直接对接 AWS S3、MinIO 等。本地联调时可用 MinIO 替代：
+ * docker run -p 9000:9000 minio/minio server /data，创建 bucket 后把 file.upload.storage 改为 s3
+ */
+@Component
+@ConditionalOnProperty(name = "file.upload.storage", havingValue = "s3")
+@Slf4j
+public class S3AvatarStorage implements AvatarStorage {
+
+    private static final String EMPTY_PAYLOAD_HASH = sha256Hex(new byte[0]);
+    private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+
+    @Value("${file.upload.s3.endpoint:http://localhost:9000}")
+    private String endpoint;
+
+    @Value("${file.upload.s3.region:us-east-1}")
+    private String region;
+
+    @Value("${file.upload.s3.bucket:avatars}")
+    private String bucket;
+
+    @Value("${file.upload.s3.access-key:}")
+    private String accessKey;
+
+    @Value("${file.upload.s3.secret-key:}")
+    private String secretKey;
+
+    /**
+     * 对象键前缀
+     */
+    @Value("${file.upload.s3.prefix:avatar/}")
+    private String prefix;
+
+    @Value("${file.upload.s3.timeout-ms:5000}")
+    private long timeoutMillis;
+
+    private HttpClient httpClient;
+    private URI baseUri;
+
+    @PostConstruct
+    public void init() {
+        baseUri = URI.create(endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint);
+        httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(timeoutMillis))
+                .build();
+        log.info("头像对象存储：{}，bucket：{}，前缀：{}", baseUri, bucket, prefix);
+    }
+
+    @Override
+    public void write(String avatarId, String fileName, byte[] data) throws IOException {
+        // 单次 PUT 完成后对象才可见
+        HttpResponse<Void> response = send(request("PUT", keyOf(avatarId, fileName), null, data, null),
+                HttpResponse.BodyHandlers.discarding());
+        check(response, "上传头像");
+    }
+
+    @Override
+    public StoredFile find(String avatarId, String fileName) throws IOException {
+        String key = keyOf(avatarId, fileName);
+        HttpResponse<Void> response = send(request("HEAD", key, null, null, null), HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() == 404) {
+            return null;
+        }
+        check(response, "查询头像");
+        long length = response.headers().firstValueAsLong("Content-Length").orElse(0);
+        long lastModified = response.headers().firstValue("Last-Modified")
+                .map(value -> ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli())
+                .orElse(0L);
+        return new S3File(key, fileName, length, lastModified);
+    }
+
+    @Override
+    public StoredFile findLegacy(String fileName) {
+        // 旧版单文件头像只存在于本地磁盘
+        return null;
+    }
+
+    @Override
+    public void delete(String avatarId) throws IOException {
+        String avatarPrefix = prefix + AvatarStorage.shardOf(avatarId) + "/" + avatarId + "/";
+        List<String> keys = new ArrayList<>();
+        listObjects(avatarPrefix, (key, lastModified) -> keys.add(key));
+        for (String key : keys) {
+            HttpResponse<Void> response = send(request("DELETE", key, null, null, null), HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() != 404) {
+                check(response, "删除头像");
+            }
+        }
+    }
+
+    @Override
+    public void forEachAvatar(Instant modifiedBefore, Consumer<String> action) throws IOException {
+        // 对象按键排序返回，同一头像的文件相邻；头像的修改时间取其中最新的文件
+        String[] current = new String[1];
+        Instant[] latest = new Instant[1];
+        listObjects(prefix, (key, lastModified) -> {
+            String[] parts = key.substring(prefix.length()).split("/");
+            if (parts.length != 4) {
+                return;
+            }
+            String avatarId = parts[2];
+            if (!avatarId.equals(current[0])) {
+                if (current[0] != null && latest[0].isBefore(modifiedBefore)) {
+                    action.accept(current[0]);
+                }
+                current[0] = avatarId;
+                latest[0] = lastModified;
+            } else if (lastModified.isAfter(latest[0])) {
+                latest[0] = lastModified;
+            }
+        });
+        if (current[0] != null && latest[0].isBefore(modifiedBefore)) {
+            action.accept(current[0]);
+        }
+    }
+
+    /**
+     * 分页列出前缀下的所有对象（ListObjectsV2）
+     */
+    private void listObjects(String keyPrefix, ObjectConsumer consumer) throws IOException {
+        String continuationToken = null;
+        do {
+            Map<String, String> query = new TreeMap<>();
+            query.put("list-type", "2");
+            query.put("prefix", keyPrefix);
+            if (continuationToken != null) {
+                query.put("continuation-token", continuationToken);
+            }
+            HttpResponse<InputStream> response = send(request("GET", null, query, null, null),
+                    HttpResponse.BodyHandlers.ofInputStream());
+            Document document;
+            try (InputStream body = response.body()) {
+                if (response.statusCode() != 200) {
+                    throw new IOException("列出头像失败，状态码：" + response.statusCode());
+                }
+                DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+                factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+                document = factory.newDocumentBuilder().parse(body);
+            } catch (ParserConfigurationException | SAXException e) {
+                throw new IOException("解析对象列表失败", e);
+            }
+            NodeList contents = document.getElementsByTagName("Contents");
+            for (int i = 0; i < contents.getLength(); i++) {
+                Element content = (Element) contents.item(i);
+                consumer.accept(text(content, "Key"), Instant.parse(text(content, "LastModified")));
+            }
+            continuationToken = "true".equals(text(document.getDocumentElement(), "IsTruncated"))
+                    ? text(document.getDocumentElement(), "NextContinuationToken")
+                    : null;
+        } while (continuationToken != null);
+    }
+
+    private String keyOf(String avatarId, String fileName) {
+        return prefix + AvatarStorage.shardOf(avatarId) + "/" + avatarId + "/" + fileName;
+    }
+
+    /**
+     * 构造带 Signature V4 签名的请求
+     *
+     * @param key 对象键，为null时请求 bucket 本身
+     */
+    private HttpRequest request(String method, String key, Map<String, String> query, byte[] body, String range) {
+        String path = "/" + bucket + (key == null ? "/" : "/" + encode(key, false));
+        String canonicalQuery = query == null ? "" : canonicalQuery(query);
+        URI uri = URI.create(baseUri + path + (canonicalQuery.isEmpty() ? "" : "?" + canonicalQuery));
+
+        String payloadHash = body == null ? EMPTY_PAYLOAD_HASH : sha256Hex(body);
+        String amzDate = ZonedDateTime.now(ZoneOffset.UTC).format(AMZ_DATE);
+        Map<String, String> headers = new TreeMap<>();
+        headers.put("host", uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort());
+        headers.put("x-amz-content-sha256", payloadHash);
+        headers.put("x-amz-date", amzDate);
+        String signedHeaders = String.join(";", headers.keySet());
+        String signature = signature(secretKey, amzDate, region, "s3",
+                canonicalRequest(method, path, canonicalQuery, headers, payloadHash));
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofMillis(timeoutMillis))
+                .header("x-amz-content-sha256", payloadHash)
+                .header("x-amz-date", amzDate)
+                .header("Authorization", "AWS4-HMAC-SHA256 Credential=" + accessKey + "/"
+                        + scopeOf(amzDate, region, "s3") + ", SignedHeaders=" + signedHeaders + ", Signature=" + signature)
+                .method(method, body == null
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofByteArray(body));
+        if (range != null) {
+            builder.header("Range", range);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 规范查询串：参数名和值分别编码后按字典序排列
+     */
+    static String canonicalQuery(Map<String, String> query) {
+        return query.entrySet().stream()
+                .map(e -> encode(e.getKey(), true) + "=" + encode(e.getValue(), true))
+                .sorted()
+                .collect(Collectors.joining("&"));
+    }
+
+    /**
+     * 规范请求
+     *
+     * @param path 已编码的路径
+     * @param headers 参与签名的请求头，名称小写并按字典序排列
+     */
+    static String canonicalRequest(String method, String path, String query, Map<String, String> headers,
+                                   String payloadHash) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(method).append('\n').append(path).append('\n').append(query).append('\n');
+        headers.forEach((name, value) -> sb.append(name).append(':').append(value.trim()).append('\n'));
+        sb.append('\n').append(String.join(";", headers.keySet())).append('\n').append(payloadHash);
+        return sb.toString();
+    }
+
+    /**
+     * 计算签名
+     *
+     * @param amzDate 请求时间（yyyyMMdd'T'HHmmss'Z'）
+     */
+    static String signature(String secretKey, String amzDate, String region, String service, String canonicalRequest) {
+        String date = amzDate.substring(0, 8);
+        String stringToSign = "AWS4-HMAC-SHA256\n" + amzDate + "\n" + scopeOf(amzDate, region, service) + "\n"
+                + sha256Hex(canonicalRequest.getBytes(StandardCharsets.UTF_8));
+        byte[] signingKey = hmac(hmac(hmac(hmac(
+                ("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), date), region), service), "aws4_request");
+        return HexUtil.encodeHexStr(hmac(signingKey, stringToSign));
+    }
+
+    private static String scopeOf(String amzDate, String region, String service) {
+        return amzDate.substring(0, 8) + "/" + region + "/" + service + "/aws4_request";
+    }
+
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException {
+        try {
+            return httpClient.send(request, handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("请求对象存储被中断", e);
+        }
+    }
+
+    private static void check(HttpResponse<?> response, String action) throws IOException {
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException(action + "失败，状态码：" + response.statusCode());
+        }
+    }
+
+    private static String text(Element parent, String tag) {
+        NodeList nodes = parent.getElementsByTagName(tag);
+        return nodes.getLength() == 0 ? null : nodes.item(0).getTextContent();
+    }
+
+    /**
+     * URI 编码（RFC 3986 非保留字符之外全部编码），路径中保留 /
+     */
+    private static String encode(String value, boolean encodeSlash) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '~' || (c == '/' && !encodeSlash)) {
+                sb.append(c);
+            } else {
+                sb.append('%').append(String.format("%02X", b & 0xFF));
+            }
+        }
+        return sb.toString();
+    }
+
+    static String sha256Hex(byte[] data) {
+        try {
+            return HexUtil.encodeHexStr(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String data) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ObjectConsumer {
+        void accept(String key, Instant lastModified);
+    }
+
+    /**
+     * 对象存储中的文件
+     */
+    private class S3File implements StoredFile {
+        private final String key;
+        private final String name;
+        private final long length;
+        private final long lastModified;
+
+        private S3File(String key, String name, long length, long lastModified) {
+            this.key = key;
+            this.name = name;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        @Override
+        public Path getLocalPath() {
+            return null;
+        }
+
+        @Override
+        public InputStream open(long start, long end) throws IOException {
+            String range = "bytes=" + start + "-" + (end - 1);
+            HttpResponse<InputStream> response = send(request("GET", key, null, null, range),
+                    HttpResponse.BodyHandlers.ofInputStream());
+            if (response.statusCode() / 100 != 2) {
+                response.body().close();
+                throw new IOException("读取头像失败，状态码：" + response.statusCode());
+            }
+            return response.body();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.weiki.usercenter.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * 存储中的一个头像文件
+ */
+public interface StoredFile {
+
+    /**
+     * 文件名（用于判断内容类型）
+     */
+    String getName();
+
+    long getLength();
+
+    /**
+     * 最后修改时间（毫秒时间戳）
+     */
+    long getLastModified();
+
+    /**
+     * 本地文件路径（可使用 sendfile 等零拷贝方式发送），远程存储返回null
+     */
+    Path getLocalPath();
+
+    /**
+     * 从 start 开始读取，调用方最多读取 end - start 字节
+     */
+    InputStream open(long start, long end) throws IOException;
+}
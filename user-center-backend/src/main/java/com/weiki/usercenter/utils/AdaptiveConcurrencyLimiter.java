@@ -0,0 +1,153 @@
+package com.weiki.usercenter.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 自适应并发限制（梯度算法）
+ *
+ * 不预设固定的并发上限，而是根据观察到的响应时间调整：
+ * - 按时间窗口统计平均响应时间（短期 RTT），再对各窗口做指数移动平均得到长期 RTT（基线），
+ *   基线上升慢、下降快，更接近无排队时的响应时间
+ * - 梯度 = tolerance × 长期 RTT / 短期 RTT，取值限制在 [0.5, 1]；响应时间上升说明开始排队，梯度小于1，限制随之收缩
+ * - 新限制 = 限制 × 梯度 + √限制（允许少量排队，使限制在无压力时缓慢增长），再按 smoothing 平滑
+ * - 并发没有用到限制的一半时不增长，避免空闲时限制无限膨胀
+ *
+ * 调用方先 tryAcquire 占用名额，请求结束时 release 归还并上报响应时间
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    /**
+     * 长期 RTT 上升时的平滑窗口数：持续排队时基线只能缓慢抬高，否则限制会跟着排队时间一起膨胀
+     */
+    private static final int LONG_WINDOW_RISING = 1000;
+
+    /**
+     * 长期 RTT 下降时的平滑窗口数
+     */
+    private static final int LONG_WINDOW_FALLING = 10;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final long windowNanos;
+    private final int minWindowSamples;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+    private volatile double limit;
+
+    /**
+     * 当前窗口的统计（由 this 保护）
+     */
+    private long windowStart = System.nanoTime();
+    private long windowSumNanos;
+    private int windowSamples;
+    private int windowMaxInflight;
+
+    private volatile double shortRttNanos;
+    private volatile double longRttNanos;
+
+    /**
+     * @param initialLimit 初始并发限制
+     * @param minLimit 最小并发限制
+     * @param maxLimit 最大并发限制
+     * @param tolerance 可容忍的响应时间上升倍数（如 1.5 表示短期 RTT 超过基线 1.5 倍才开始收缩）
+     * @param smoothing 每次调整向新限制靠近的比例（0~1）
+     * @param windowMillis 统计窗口（毫秒）
+     * @param minWindowSamples 窗口内的最少样本数，不足时延长窗口
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance,
+                                      double smoothing, long windowMillis, int minWindowSamples) {
+        if (minLimit <= 0 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("并发限制范围无效");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.minWindowSamples = minWindowSamples;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * 尝试占用一个名额
+     *
+     * @param share 可使用的限制比例（0~1），低优先级请求只能使用部分名额，为高优先级请求预留余量
+     * @return 是否占用成功
+     */
+    public boolean tryAcquire(double share) {
+        int allowed = Math.max(1, (int) (limit * share));
+        while (true) {
+            int current = inflight.get();
+            if (current >= allowed) {
+                return false;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 归还名额
+     *
+     * @param rttNanos 请求耗时（纳秒）
+     * @param sample 是否计入响应时间统计（失败、异步等不代表正常处理时间的请求传false）
+     */
+    public void release(long rttNanos, boolean sample) {
+        int current = inflight.getAndDecrement();
+        if (sample) {
+            onSample(rttNanos, current);
+        }
+    }
+
+    /**
+     * 限制器统计（RTT 单位为微秒）
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("limit", (long) limit);
+        stats.put("inflight", (long) inflight.get());
+        stats.put("shortRttMicros", (long) (shortRttNanos / 1000));
+        stats.put("longRttMicros", (long) (longRttNanos / 1000));
+        return stats;
+    }
+
+    private synchronized void onSample(long rttNanos, int inflightAtCompletion) {
+        windowSumNanos += rttNanos;
+        windowSamples++;
+        windowMaxInflight = Math.max(windowMaxInflight, inflightAtCompletion);
+        long now = System.nanoTime();
+        if (now - windowStart < windowNanos || windowSamples < minWindowSamples) {
+            return;
+        }
+        update((double) windowSumNanos / windowSamples, windowMaxInflight);
+        windowStart = now;
+        windowSumNanos = 0;
+        windowSamples = 0;
+        windowMaxInflight = 0;
+    }
+
+    private void update(double shortRtt, int maxInflight) {
+        shortRttNanos = shortRtt;
+        double longRtt = longRttNanos;
+        if (longRtt == 0) {
+            longRtt = shortRtt;
+        } else {
+            longRtt += (shortRtt - longRtt) / (shortRtt > longRtt ? LONG_WINDOW_RISING : LONG_WINDOW_FALLING);
+        }
+        longRttNanos = longRtt;
+
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRtt / shortRtt));
+        if (gradient >= 1.0 && maxInflight < limit / 2) {
+            return;
+        }
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        newLimit = limit * (1 - smoothing) + newLimit * smoothing;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+}
@@ -0,0 +1,77 @@
+package com.weiki.usercenter.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CSV 工具类
+ * 按 RFC 4180 规则处理字段转义与解析（不支持字段内换行）
+ */
+public class CsvUtils {
+
+    private CsvUtils() {
+    }
+
+    /**
+     * 转义单个字段
+     * 包含逗号、双引号或换行符的字段用双引号包裹，内部双引号加倍
+     *
+     * @param value 字段值（null 输出为空字段）
+     * @return 转义后的字段
+     */
+    public static String escape(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        boolean needQuote = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                needQuote = true;
+                break;
+            }
+        }
+        if (!needQuote) {
+            return text;
+        }
+        return "\"" + text.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * 解析一行CSV
+     * 支持双引号包裹的字段以及字段内的 "" 转义
+     *
+     * @param line 一行文本
+     * @return 字段列表
+     */
+    public static List<String> parseLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean inQuotes = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (inQuotes) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        inQuotes = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c != '\r') {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
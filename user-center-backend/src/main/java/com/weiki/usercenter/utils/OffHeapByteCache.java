@@ -0,0 +1,445 @@
+package com.weiki.usercenter.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 堆外字节缓存
+ *
+ * 启动时一次性分配一块直接内存（不受 GC 管理），按固定大小的页切分，每个条目占用若干页；
+ * 堆上只保存页号数组和少量元数据，缓存内容本身不产生 GC 压力。
+ *
+ * 淘汰策略为 TinyLFU 准入 + LRU：
+ * - 用 Count-Min Sketch（4位饱和计数，定期减半）近似统计每个 key 最近的访问频率
+ * - 空间不足时从 LRU 尾部依次选取淘汰对象，只有新条目的频率高于所有被淘汰条目时才写入，
+ *   避免一次性的冷门访问把热门条目挤出缓存
+ *
+ * 读取方通过 {@link Handle} 持有条目的引用，条目被淘汰后页要等所有 Handle 关闭才会回收复用。
+ * 写入分两步：reserve 按准入规则预留页，调用方再打开内容来源交给 Loader 在锁外读入，未准入时不必读取内容；
+ * 读入期间条目登记在 loading 中，被 invalidatePrefix 命中的条目作废，不再写入缓存
+ */
+public class OffHeapByteCache {
+
+    private final ByteBuffer arena;
+    private final int pageSize;
+    private final int maxEntryBytes;
+
+    /**
+     * 空闲页栈
+     */
+    private final int[] freePages;
+    private int freeCount;
+
+    /**
+     * 按访问顺序排列，头部最久未访问
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * 已分配页、正在读入内容的条目
+     */
+    private final Map<String, Entry> loading = new HashMap<>();
+
+    private final FrequencySketch sketch;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejections;
+
+    /**
+     * @param capacityBytes 缓存总字节数（不超过 2GB）
+     * @param pageSize 页大小（字节）
+     * @param maxEntryBytes 单个条目的最大字节数，超过时不缓存
+     */
+    public OffHeapByteCache(int capacityBytes, int pageSize, int maxEntryBytes) {
+        if (pageSize <= 0 || capacityBytes < pageSize) {
+            throw new IllegalArgumentException("缓存容量必须不小于页大小");
+        }
+        int pages = capacityBytes / pageSize;
+        this.arena = ByteBuffer.allocateDirect(pages * pageSize);
+        this.pageSize = pageSize;
+        this.maxEntryBytes = Math.min(maxEntryBytes, pages * pageSize);
+        this.freePages = new int[pages];
+        for (int i = 0; i < pages; i++) {
+            freePages[i] = pages - 1 - i;
+        }
+        this.freeCount = pages;
+        // 以每页一个条目估算 key 的数量
+        this.sketch = new FrequencySketch(pages);
+    }
+
+    /**
+     * 查找条目并记录一次访问
+     *
+     * @return 条目句柄（使用后必须关闭），不存在时返回null
+     */
+    public synchronized Handle get(String key) {
+        sketch.increment(key);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        entry.refs++;
+        return new Handle(entry);
+    }
+
+    /**
+     * 从通道顺序读取内容写入缓存（直接读入堆外页，不经过堆内存）
+     *
+     * @param channel 内容来源（文件或网络），从当前位置读取 length 字节
+     * @return 是否写入；超过单条上限、频率不足以淘汰现有条目、已存在或读入期间被作废时返回false
+     */
+    public boolean put(String key, ReadableByteChannel channel, int length) throws IOException {
+        try (Loader loader = reserve(key, length)) {
+            if (loader == null) {
+                return false;
+            }
+            try (Handle handle = loader.load(channel)) {
+                return handle != null;
+            }
+        }
+    }
+
+    /**
+     * 按准入规则为条目预留空间，调用方确认准入后再打开内容来源，未准入时不必读取内容
+     *
+     * @return 读入器（使用后必须关闭，未读入时释放预留的页）；超过单条上限、已存在、正在读入或不准入时返回null
+     */
+    public Loader reserve(String key, int length) {
+        if (length <= 0 || length > maxEntryBytes) {
+            return null;
+        }
+        Entry entry = allocate(key, (length + pageSize - 1) / pageSize, length);
+        return entry != null ? new Loader(entry) : null;
+    }
+
+    /**
+     * 删除 key 以 prefix 开头的所有条目，并作废正在读入的同前缀条目
+     *
+     * @return 删除的条目数（不含作废的读入中条目）
+     */
+    public synchronized int invalidatePrefix(String prefix) {
+        for (Entry entry : loading.values()) {
+            if (entry.key.startsWith(prefix)) {
+                entry.invalidated = true;
+            }
+        }
+        int removed = 0;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.key.startsWith(prefix)) {
+                iterator.remove();
+                release(entry);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 缓存统计
+     */
+    public synchronized Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("entries", (long) entries.size());
+        stats.put("capacityBytes", (long) arena.capacity());
+        stats.put("usedBytes", (long) (freePages.length - freeCount) * pageSize);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        stats.put("rejections", rejections);
+        return stats;
+    }
+
+    /**
+     * 分配页，空间不足时按 TinyLFU 规则淘汰；分配成功的条目登记为读入中
+     *
+     * @return 待读入内容的条目，已存在、正在读入或不准入时返回null
+     */
+    private synchronized Entry allocate(String key, int pageCount, int length) {
+        if (entries.containsKey(key) || loading.containsKey(key)) {
+            return null;
+        }
+        if (freeCount < pageCount) {
+            // 先确认淘汰哪些条目，全部满足准入条件后再真正淘汰
+            int candidateFrequency = sketch.frequency(key);
+            List<Entry> victims = new ArrayList<>();
+            int reclaimable = freeCount;
+            for (Entry entry : entries.values()) {
+                if (reclaimable >= pageCount) {
+                    break;
+                }
+                if (sketch.frequency(entry.key) >= candidateFrequency) {
+                    rejections++;
+                    return null;
+                }
+                victims.add(entry);
+                // 仍被读取的条目要等读取结束才释放页
+                if (entry.refs == 1) {
+                    reclaimable += entry.pages.length;
+                }
+            }
+            if (reclaimable < pageCount) {
+                rejections++;
+                return null;
+            }
+            for (Entry victim : victims) {
+                entries.remove(victim.key);
+                release(victim);
+                evictions++;
+            }
+        }
+        int[] pages = new int[pageCount];
+        for (int i = 0; i < pageCount; i++) {
+            pages[i] = freePages[--freeCount];
+        }
+        Entry entry = new Entry(key, pages, length);
+        loading.put(key, entry);
+        return entry;
+    }
+
+    private void release(Entry entry) {
+        if (--entry.refs == 0) {
+            freePages(entry.pages);
+        }
+    }
+
+    private void freePages(int[] pages) {
+        for (int page : pages) {
+            freePages[freeCount++] = page;
+        }
+    }
+
+    /**
+     * 条目元数据（堆上），内容在堆外页中
+     */
+    private class Entry {
+        private final String key;
+        private final int[] pages;
+        private final int length;
+
+        /**
+         * 引用数：缓存自身持有1，每个未关闭的 Handle 持有1
+         */
+        private int refs = 1;
+
+        /**
+         * 读入期间被作废（由 OffHeapByteCache 的锁保护）
+         */
+        private boolean invalidated;
+
+        private Entry(String key, int[] pages, int length) {
+            this.key = key;
+            this.pages = pages;
+            this.length = length;
+        }
+
+        /**
+         * 各页的独立视图（共享底层内存，position/limit 互不影响）
+         */
+        private List<ByteBuffer> slices() {
+            List<ByteBuffer> slices = new ArrayList<>(pages.length);
+            int remaining = length;
+            for (int page : pages) {
+                int size = Math.min(pageSize, remaining);
+                ByteBuffer slice = arena.duplicate();
+                slice.position(page * pageSize).limit(page * pageSize + size);
+                slices.add(slice.slice());
+                remaining -= size;
+            }
+            return slices;
+        }
+    }
+
+    /**
+     * 预留了页、等待读入内容的条目
+     */
+    public class Loader implements AutoCloseable {
+        private final Entry entry;
+        private boolean done;
+
+        private Loader(Entry entry) {
+            this.entry = entry;
+        }
+
+        /**
+         * 从通道读入内容并写入缓存，只能调用一次；读取失败时释放预留的页并抛出异常
+         *
+         * @return 写入的条目句柄（使用后必须关闭），读入期间被作废时返回null
+         */
+        public Handle load(ReadableByteChannel channel) throws IOException {
+            if (done) {
+                throw new IllegalStateException("条目已读入：" + entry.key);
+            }
+            done = true;
+            try {
+                for (ByteBuffer slice : entry.slices()) {
+                    while (slice.hasRemaining()) {
+                        if (channel.read(slice) < 0) {
+                            throw new IOException("内容长度小于预期");
+                        }
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                discard();
+                throw e;
+            }
+            synchronized (OffHeapByteCache.this) {
+                loading.remove(entry.key, entry);
+                if (entry.invalidated) {
+                    freePages(entry.pages);
+                    return null;
+                }
+                entries.put(entry.key, entry);
+                entry.refs++;
+                return new Handle(entry);
+            }
+        }
+
+        /**
+         * 没有读入时释放预留的页
+         */
+        @Override
+        public void close() {
+            if (!done) {
+                done = true;
+                discard();
+            }
+        }
+
+        private void discard() {
+            synchronized (OffHeapByteCache.this) {
+                loading.remove(entry.key, entry);
+                freePages(entry.pages);
+            }
+        }
+    }
+
+    /**
+     * 条目的只读句柄，关闭前条目占用的页不会被复用
+     */
+    public class Handle implements AutoCloseable {
+        private final Entry entry;
+        private boolean closed;
+
+        private Handle(Entry entry) {
+            this.entry = entry;
+        }
+
+        public int getLength() {
+            return entry.length;
+        }
+
+        /**
+         * 内容的只读视图，截取 [start, end) 区间
+         */
+        public List<ByteBuffer> buffers(long start, long end) {
+            List<ByteBuffer> result = new ArrayList<>();
+            long offset = 0;
+            for (ByteBuffer slice : entry.slices()) {
+                long sliceEnd = offset + slice.limit();
+                if (sliceEnd > start && offset < end) {
+                    slice.position((int) (Math.max(start, offset) - offset));
+                    slice.limit((int) (Math.min(end, sliceEnd) - offset));
+                    result.add(slice.asReadOnlyBuffer());
+                }
+                offset = sliceEnd;
+            }
+            return result;
+        }
+
+        @Override
+        public void close() {
+            synchronized (OffHeapByteCache.this) {
+                if (!closed) {
+                    closed = true;
+                    release(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Count-Min Sketch：4 行，每个计数器 4 位（long 中 16 个），总计数达到 10 倍宽度时全部减半
+     */
+    private static class FrequencySketch {
+        private static final long RESET_MASK = 0x7777777777777777L;
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final long[] table;
+        private final int sampleSize;
+        private int size;
+
+        private FrequencySketch(int expectedEntries) {
+            int counters = Integer.highestOneBit(Math.max(64, expectedEntries * 4 - 1) << 1);
+            this.table = new long[counters / 16];
+            this.sampleSize = counters * 10 / 4;
+        }
+
+        private void increment(String key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                added |= incrementAt(indexOf(hash, i));
+            }
+            if (added && ++size >= sampleSize) {
+                reset();
+            }
+        }
+
+        private int frequency(String key) {
+            int hash = spread(key.hashCode());
+            int min = Integer.MAX_VALUE;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int index = indexOf(hash, i);
+                min = Math.min(min, (int) ((table[index >>> 4] >>> ((index & 15) << 2)) & 0xF));
+            }
+            return min;
+        }
+
+        private boolean incrementAt(int index) {
+            int shift = (index & 15) << 2;
+            long mask = 0xFL << shift;
+            long word = table[index >>> 4];
+            if ((word & mask) == mask) {
+                return false;
+            }
+            table[index >>> 4] = word + (1L << shift);
+            return true;
+        }
+
+        /**
+         * 所有计数减半，使频率统计反映最近的访问
+         */
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            size /= 2;
+        }
+
+        private int indexOf(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % SEEDS.length];
+            h ^= h >>> 16;
+            return h & (table.length * 16 - 1);
+        }
+
+        private static int spread(int hash) {
+            hash ^= hash >>> 17;
+            hash *= 0xED5AD4BB;
+            hash ^= hash >>> 11;
+            return hash;
+        }
+    }
+}
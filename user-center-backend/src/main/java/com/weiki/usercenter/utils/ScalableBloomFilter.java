@@ -0,0 +1,190 @@
+package com.weiki.usercenter.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 可扩容布隆过滤器（Scalable Bloom Filter）
+ *
+ * 由若干个固定大小的分段组成：当前分段写满后追加一个容量翻倍、误判率减半的新分段，
+ * 各分段误判率之和不超过初始设定值。位数组基于 AtomicLongArray，读写均无锁
+ */
+public class ScalableBloomFilter {
+
+    /**
+     * 每个新分段的误判率相对上一分段的收紧比例
+     */
+    private static final double TIGHTENING_RATIO = 0.5;
+
+    private final double fpp;
+
+    /**
+     * 分段数组，扩容时整体替换（写时复制）
+     */
+    private volatile Segment[] segments;
+
+    /**
+     * @param initialCapacity 第一个分段的预期元素数
+     * @param fpp 总误判率，如 0.01
+     */
+    public ScalableBloomFilter(long initialCapacity, double fpp) {
+        this.fpp = fpp;
+        this.segments = new Segment[]{new Segment(Math.max(1, initialCapacity), fpp * (1 - TIGHTENING_RATIO))};
+    }
+
+    /**
+     * 添加元素
+     */
+    public void put(String value) {
+        long hash = hash(value);
+        Segment[] current = segments;
+        Segment last = current[current.length - 1];
+        if (last.count.get() >= last.capacity) {
+            last = grow(current);
+        }
+        last.put(hash);
+    }
+
+    /**
+     * 判断元素是否可能存在
+     *
+     * @return false 表示一定不存在；true 表示可能存在
+     */
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+        for (Segment segment : segments) {
+            if (segment.mightContain(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 已添加的元素数（近似值，重复添加不计数）
+     */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.count.get();
+        }
+        return size;
+    }
+
+    /**
+     * 位数组总大小（位）
+     */
+    public long bitSize() {
+        long bits = 0;
+        for (Segment segment : segments) {
+            bits += segment.bitSize;
+        }
+        return bits;
+    }
+
+    private synchronized Segment grow(Segment[] observed) {
+        Segment[] current = segments;
+        if (current != observed) {
+            return current[current.length - 1];
+        }
+        Segment last = current[current.length - 1];
+        Segment next = new Segment(last.capacity * 2, last.fpp * TIGHTENING_RATIO);
+        Segment[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = next;
+        segments = grown;
+        return next;
+    }
+
+    /**
+     * 64 位哈希（FNV-1a + MurmurHash3 fmix64 混合）
+     */
+    public static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * 第 i 个哈希函数对应的位下标（双重哈希）
+     */
+    public static long bitIndex(long hash, int i, long bitSize) {
+        long h1 = hash;
+        long h2 = (hash >>> 32) | 1;
+        return Math.floorMod(h1 + i * h2, bitSize);
+    }
+
+    /**
+     * 按预期元素数和误判率计算位数组大小
+     */
+    public static long optimalBits(long expected, double fpp) {
+        return Math.max(64, (long) Math.ceil(-expected * Math.log(fpp) / (Math.log(2) * Math.log(2))));
+    }
+
+    /**
+     * 按预期元素数和位数组大小计算哈希函数个数
+     */
+    public static int optimalHashes(long expected, long bits) {
+        return Math.max(1, (int) Math.round((double) bits / expected * Math.log(2)));
+    }
+
+    /**
+     * 固定大小的分段
+     */
+    private static final class Segment {
+        private final long capacity;
+        private final double fpp;
+        private final long bitSize;
+        private final int hashes;
+        private final AtomicLongArray words;
+        private final AtomicLong count = new AtomicLong();
+
+        Segment(long capacity, double fpp) {
+            this.capacity = capacity;
+            this.fpp = fpp;
+            long bits = optimalBits(capacity, fpp);
+            this.words = new AtomicLongArray((int) ((bits + 63) >>> 6));
+            this.bitSize = (long) words.length() << 6;
+            this.hashes = optimalHashes(capacity, bitSize);
+        }
+
+        void put(long hash) {
+            boolean changed = false;
+            for (int i = 0; i < hashes; i++) {
+                long index = bitIndex(hash, i, bitSize);
+                int word = (int) (index >>> 6);
+                long mask = 1L << index;
+                long old;
+                do {
+                    old = words.get(word);
+                    if ((old & mask) != 0) {
+                        break;
+                    }
+                    changed = true;
+                } while (!words.compareAndSet(word, old, old | mask));
+            }
+            if (changed) {
+                count.incrementAndGet();
+            }
+        }
+
+        boolean mightContain(long hash) {
+            for (int i = 0; i < hashes; i++) {
+                long index = bitIndex(hash, i, bitSize);
+                if ((words.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -57,6 +57,11 @@ public class SecurityUtils {
         return ip;
     }
 
+    public static String getUserAgent() {
+        HttpServletRequest request = getRequest();
+        return request != null ? request.getHeader("User-Agent") : null;
+    }
+
     public static void setSessionAttribute(String key, Object value) {
         HttpSession session = getSession();
         if (session != null) {
@@ -89,6 +94,19 @@ public class SecurityUtils {
         return user != null ? user.getId() : null;
     }
 
+    /**
+     * 获取当前用户ID（不会创建新会话，供底层组件使用）
+     */
+    public static Long peekCurrentUserId() {
+        HttpServletRequest request = getRequest();
+        HttpSession session = request != null ? request.getSession(false) : null;
+        if (session == null) {
+            return null;
+        }
+        Object user = session.getAttribute(CURRENT_USER_KEY);
+        return user instanceof User ? ((User) user).getId() : null;
+    }
+
     /**
      * 获取当前用户角色
      */
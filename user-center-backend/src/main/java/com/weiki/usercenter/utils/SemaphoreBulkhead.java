@@ -0,0 +1,97 @@
+package com.weiki.usercenter.utils;
+
+import com.weiki.usercenter.monitor.LatencyHistogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 信号量隔离舱
+ *
+ * 限制同时执行的请求数；名额用完时最多 maxQueue 个请求按先后顺序等待，等待超过 maxWaitMillis 或队列已满时拒绝。
+ * 记录每个请求的排队时间（微秒直方图），用于判断分区配额是否合适
+ */
+public class SemaphoreBulkhead {
+
+    private final int maxConcurrent;
+    private final int maxQueue;
+    private final long maxWaitMillis;
+
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private final LatencyHistogram queueTime = new LatencyHistogram();
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder queueFull = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    public SemaphoreBulkhead(int maxConcurrent, int maxQueue, long maxWaitMillis) {
+        if (maxConcurrent <= 0 || maxQueue < 0) {
+            throw new IllegalArgumentException("隔离舱配置无效");
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueue = maxQueue;
+        this.maxWaitMillis = maxWaitMillis;
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+
+    /**
+     * 占用一个执行名额，必要时排队等待
+     *
+     * @return 是否占用成功；成功后必须调用 exit
+     */
+    public boolean tryEnter() throws InterruptedException {
+        long start = System.nanoTime();
+        if (permits.tryAcquire()) {
+            admit(start);
+            return true;
+        }
+        if (waiting.incrementAndGet() > maxQueue) {
+            waiting.decrementAndGet();
+            queueFull.increment();
+            return false;
+        }
+        try {
+            if (permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                admit(start);
+                return true;
+            }
+            timedOut.increment();
+            return false;
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * 归还执行名额
+     */
+    public void exit() {
+        permits.release();
+    }
+
+    /**
+     * 隔离舱统计（排队时间单位为微秒）
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("maxConcurrent", (long) maxConcurrent);
+        stats.put("active", (long) (maxConcurrent - permits.availablePermits()));
+        stats.put("waiting", (long) waiting.get());
+        stats.put("admitted", admitted.sum());
+        stats.put("queueFull", queueFull.sum());
+        stats.put("timedOut", timedOut.sum());
+        stats.put("queueP50Micros", queueTime.percentile(50));
+        stats.put("queueP99Micros", queueTime.percentile(99));
+        return stats;
+    }
+
+    private void admit(long start) {
+        queueTime.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        admitted.increment();
+    }
+}
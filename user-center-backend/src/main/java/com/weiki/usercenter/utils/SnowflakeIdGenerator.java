@@ -0,0 +1,128 @@
+package com.weiki.usercenter.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 雪花算法ID生成器（无锁）
+ *
+ * ID结构（从高位到低位）：
+ * - 1 位符号位，固定为0
+ * - 41 位时间戳（相对 EPOCH 的毫秒数，可用约69年）
+ * - 10 位节点ID
+ * - 12 - tagBits 位序列号
+ * - tagBits 位标签（调用方指定，如用户表分区号，保证 id 的低位等于分区号）
+ *
+ * 时间戳和序列号合并存放在一个 AtomicLong 中，通过 CAS 推进：
+ * - 当前毫秒大于上次时间戳时，从新的毫秒、序列号0开始
+ * - 同一毫秒或时钟回拨时，在上次状态上加1（逻辑时钟），序列号用完自然进位到下一毫秒
+ * 逻辑时钟领先系统时钟超过 maxDriftMillis（时钟大幅回拨）时拒绝生成，避免ID与回拨前重复的风险无限扩大。
+ * 进程重启后内存状态丢失，由调用方传入该节点ID此前可能用过的最大时间戳（notBefore），从它之后开始；
+ * 系统时钟落后它超过 maxDriftMillis 时拒绝创建
+ */
+public class SnowflakeIdGenerator {
+
+    /**
+     * 起始时间：2024-01-01T00:00:00Z
+     */
+    public static final long EPOCH = 1704067200000L;
+
+    public static final int NODE_BITS = 10;
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+
+    /**
+     * 序列号与标签共用的位数
+     */
+    private static final int SEQUENCE_AND_TAG_BITS = 12;
+
+    /**
+     * 标签最多占用的位数（至少保留16个序列号/毫秒）
+     */
+    public static final int MAX_TAG_BITS = 8;
+
+    private final long nodeId;
+    private final int tagBits;
+    private final int sequenceBits;
+    private final long sequenceMask;
+    private final long maxDriftMillis;
+
+    /**
+     * (时间戳 << sequenceBits) | 序列号
+     */
+    private final AtomicLong state;
+
+    /**
+     * @param nodeId 节点ID（0 ~ MAX_NODE_ID）
+     * @param tagBits 标签位数（0 ~ MAX_TAG_BITS）
+     * @param maxDriftMillis 允许逻辑时钟领先系统时钟的最大毫秒数
+     * @param notBefore 该节点ID此前可能用过的最大时间戳（毫秒时间戳，没有时传0）
+     * @throws IllegalStateException 系统时钟落后 notBefore 超过 maxDriftMillis
+     */
+    public SnowflakeIdGenerator(int nodeId, int tagBits, long maxDriftMillis, long notBefore) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("节点ID超出范围：" + nodeId);
+        }
+        if (tagBits < 0 || tagBits > MAX_TAG_BITS) {
+            throw new IllegalArgumentException("标签位数超出范围：" + tagBits);
+        }
+        this.nodeId = nodeId;
+        this.tagBits = tagBits;
+        this.sequenceBits = SEQUENCE_AND_TAG_BITS - tagBits;
+        this.sequenceMask = (1L << sequenceBits) - 1;
+        this.maxDriftMillis = maxDriftMillis;
+        long now = System.currentTimeMillis();
+        if (notBefore - now > maxDriftMillis) {
+            throw new IllegalStateException("系统时钟落后节点 " + nodeId + " 上次使用的时间 " + (notBefore - now) + " ms");
+        }
+        // 从 notBefore 的下一毫秒开始，时钟稍慢时按逻辑时钟推进
+        this.state = new AtomicLong((Math.max(now, notBefore + 1) - EPOCH) << sequenceBits);
+    }
+
+    public int getNodeId() {
+        return (int) nodeId;
+    }
+
+    /**
+     * 已使用的最大时间戳（毫秒时间戳）
+     */
+    public long getLastTimestamp() {
+        return (state.get() >>> sequenceBits) + EPOCH;
+    }
+
+    /**
+     * 生成ID
+     *
+     * @param tag 写入低 tagBits 位的标签
+     * @throws IllegalStateException 时钟回拨超过 maxDriftMillis
+     */
+    public long nextId(int tag) {
+        while (true) {
+            long current = state.get();
+            long lastTimestamp = current >>> sequenceBits;
+            long now = System.currentTimeMillis() - EPOCH;
+            long next;
+            if (now > lastTimestamp) {
+                next = now << sequenceBits;
+            } else {
+                if (lastTimestamp - now > maxDriftMillis) {
+                    throw new IllegalStateException("时钟回拨 " + (lastTimestamp - now) + " ms，超过允许范围");
+                }
+                next = current + 1;
+            }
+            if (state.compareAndSet(current, next)) {
+                long timestamp = next >>> sequenceBits;
+                long sequence = next & sequenceMask;
+                return (timestamp << (NODE_BITS + SEQUENCE_AND_TAG_BITS))
+                        | (nodeId << SEQUENCE_AND_TAG_BITS)
+                        | (sequence << tagBits)
+                        | tag;
+            }
+        }
+    }
+
+    /**
+     * 从ID中解析生成时间（毫秒时间戳）
+     */
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_AND_TAG_BITS)) + EPOCH;
+    }
+}
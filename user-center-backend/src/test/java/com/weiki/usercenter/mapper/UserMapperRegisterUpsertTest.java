@@ -0,0 +1,177 @@
+package com.weiki.usercenter.mapper;
+
+import com.weiki.usercenter.entity.User;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * UserMapper.registerUpsert 集成测试（需要 MySQL 8.0.19+）
+ *
+ * 设置环境变量 USER_CENTER_IT_JDBC_URL（及 USER_CENTER_IT_JDBC_USER、USER_CENTER_IT_JDBC_PASSWORD）后执行，
+ * 数据库需先导入 sql/init.sql；测试只读写 it_upsert_ 开头的账号，前后都会清理
+ */
+@EnabledIfEnvironmentVariable(named = "USER_CENTER_IT_JDBC_URL", matches = ".+")
+class UserMapperRegisterUpsertTest {
+
+    private static final String ACCOUNT_PREFIX = "it_upsert_";
+
+    private SqlSessionFactory sqlSessionFactory;
+    private String account;
+
+    @BeforeEach
+    void setUp() throws IOException, SQLException {
+        UnpooledDataSource dataSource = new UnpooledDataSource("com.mysql.cj.jdbc.Driver",
+                System.getenv("USER_CENTER_IT_JDBC_URL"),
+                System.getenv("USER_CENTER_IT_JDBC_USER"),
+                System.getenv("USER_CENTER_IT_JDBC_PASSWORD"));
+        Configuration configuration = new Configuration(
+                new Environment("it", new JdbcTransactionFactory(), dataSource));
+        configuration.setMapUnderscoreToCamelCase(true);
+        configuration.getTypeAliasRegistry().registerAliases("com.weiki.usercenter.entity");
+        String resource = "mapper/UserMapper.xml";
+        try (InputStream in = Resources.getResourceAsStream(resource)) {
+            new XMLMapperBuilder(in, configuration, resource, configuration.getSqlFragments()).parse();
+        }
+        sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+        account = ACCOUNT_PREFIX + Long.toHexString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE);
+        cleanUp();
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        cleanUp();
+    }
+
+    @Test
+    void insertsNewAccountWithPreallocatedId() throws SQLException {
+        long newId = newId();
+        User user = newUser("hash-1");
+
+        int rows = upsert(user, newId);
+
+        assertEquals(1, rows);
+        assertEquals(Long.valueOf(newId), user.getId());
+        Row row = load();
+        assertEquals(newId, row.id);
+        assertEquals("hash-1", row.password);
+        assertEquals(0, row.deleted);
+        assertEquals(0, row.version);
+    }
+
+    @Test
+    void revivesDeletedAccountKeepingOriginalId() throws SQLException {
+        long originalId = newId();
+        upsert(newUser("hash-1"), originalId);
+        execute("UPDATE user SET is_delete = 1 WHERE user_account = ?");
+
+        User user = newUser("hash-2");
+        int rows = upsert(user, newId());
+
+        assertEquals(2, rows);
+        assertEquals(Long.valueOf(originalId), user.getId());
+        Row row = load();
+        assertEquals(originalId, row.id);
+        assertEquals("hash-2", row.password);
+        assertEquals(0, row.deleted);
+        assertEquals(1, row.version);
+    }
+
+    @Test
+    void leavesExistingAccountUntouched() throws SQLException {
+        long originalId = newId();
+        upsert(newUser("hash-1"), originalId);
+
+        User user = newUser("hash-2");
+        upsert(user, newId());
+
+        // 生成键为 0 或不回填，调用方据此判断账号已存在
+        assertTrue(user.getId() == null || user.getId() <= 0, "已存在的账号不应回填ID：" + user.getId());
+        Row row = load();
+        assertEquals(originalId, row.id);
+        assertEquals("hash-1", row.password);
+        assertEquals(0, row.version);
+    }
+
+    private int upsert(User user, long newId) {
+        try (SqlSession session = sqlSessionFactory.openSession(true)) {
+            return session.getMapper(UserMapper.class).registerUpsert(user, newId);
+        }
+    }
+
+    private User newUser(String passwordHash) {
+        User user = new User();
+        user.setUsername("it");
+        user.setUserAccount(account);
+        user.setUserPassword(passwordHash);
+        user.setGender(0);
+        user.setUserRole("user");
+        return user;
+    }
+
+    /**
+     * 与雪花ID同量级的随机ID（超过 2^53）
+     */
+    private static long newId() {
+        return (1L << 60) + ThreadLocalRandom.current().nextLong(1L << 40);
+    }
+
+    private Row load() throws SQLException {
+        try (SqlSession session = sqlSessionFactory.openSession();
+             PreparedStatement statement = session.getConnection().prepareStatement(
+                     "SELECT id, user_password, is_delete, version FROM user WHERE user_account = ?")) {
+            statement.setString(1, account);
+            try (ResultSet rs = statement.executeQuery()) {
+                assertTrue(rs.next(), "账号不存在：" + account);
+                Row row = new Row();
+                row.id = rs.getLong(1);
+                row.password = rs.getString(2);
+                row.deleted = rs.getInt(3);
+                row.version = rs.getInt(4);
+                return row;
+            }
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (SqlSession session = sqlSessionFactory.openSession(true)) {
+            Connection connection = session.getConnection();
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setString(1, account);
+                statement.executeUpdate();
+            }
+        }
+    }
+
+    private void cleanUp() throws SQLException {
+        execute("DELETE FROM user WHERE user_account = ?");
+    }
+
+    private static class Row {
+        private long id;
+        private String password;
+        private int deleted;
+        private int version;
+    }
+}
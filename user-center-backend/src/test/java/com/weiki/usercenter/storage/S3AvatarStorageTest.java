@@ -0,0 +1,338 @@
+package com.weiki.usercenter.storage;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * S3AvatarStorage 测试
+ *
+ * 签名使用 AWS Signature V4 测试集和 S3 文档中的示例核对；读写删除和列表对接进程内的 S3 桩服务，
+ * 桩服务按收到的请求重新计算签名，签名不符时返回 403
+ */
+class S3AvatarStorageTest {
+
+    private static final String ACCESS_KEY = "test-access";
+    private static final String SECRET_KEY = "test-secret";
+    private static final String BUCKET = "avatars";
+    private static final String REGION = "us-east-1";
+    private static final String AVATAR_ID = "0123456789abcdef0123456789abcdef";
+
+    private HttpServer server;
+    private StubS3 stub;
+    private S3AvatarStorage storage;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stub = new StubS3();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", stub::handle);
+        server.start();
+
+        storage = new S3AvatarStorage();
+        ReflectionTestUtils.setField(storage, "endpoint", "http://127.0.0.1:" + server.getAddress().getPort());
+        ReflectionTestUtils.setField(storage, "region", REGION);
+        ReflectionTestUtils.setField(storage, "bucket", BUCKET);
+        ReflectionTestUtils.setField(storage, "accessKey", ACCESS_KEY);
+        ReflectionTestUtils.setField(storage, "secretKey", SECRET_KEY);
+        ReflectionTestUtils.setField(storage, "prefix", "avatar/");
+        ReflectionTestUtils.setField(storage, "timeoutMillis", 5000L);
+        storage.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * AWS Signature V4 测试集：get-vanilla
+     */
+    @Test
+    void signatureMatchesGetVanilla() {
+        Map<String, String> headers = new TreeMap<>();
+        headers.put("host", "example.amazonaws.com");
+        headers.put("x-amz-date", "20150830T123600Z");
+        String canonicalRequest = S3AvatarStorage.canonicalRequest("GET", "/", "", headers,
+                S3AvatarStorage.sha256Hex(new byte[0]));
+
+        assertEquals("5fa00fa31553b73ebf1942676e86291e8372ff2a2260956d9b8aae1d763fbf31",
+                S3AvatarStorage.signature("wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY", "20150830T123600Z",
+                        "us-east-1", "service", canonicalRequest));
+    }
+
+    /**
+     * AWS Signature V4 测试集：get-vanilla-query-order-key-case（参数按名称排序）
+     */
+    @Test
+    void signatureMatchesGetVanillaQueryOrder() {
+        Map<String, String> query = new LinkedHashMap<>();
+        query.put("Param2", "value2");
+        query.put("Param1", "value1");
+        String canonicalQuery = S3AvatarStorage.canonicalQuery(query);
+        assertEquals("Param1=value1&Param2=value2", canonicalQuery);
+
+        Map<String, String> headers = new TreeMap<>();
+        headers.put("host", "example.amazonaws.com");
+        headers.put("x-amz-date", "20150830T123600Z");
+        String canonicalRequest = S3AvatarStorage.canonicalRequest("GET", "/", canonicalQuery, headers,
+                S3AvatarStorage.sha256Hex(new byte[0]));
+
+        assertEquals("b97d918cfa904a5beff61c982a1b6f458b799221646efd99d3219ec94cdf2500",
+                S3AvatarStorage.signature("wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY", "20150830T123600Z",
+                        "us-east-1", "service", canonicalRequest));
+    }
+
+    /**
+     * S3 文档中 GET Object 的签名示例（带 x-amz-content-sha256）
+     */
+    @Test
+    void signatureMatchesS3GetObjectExample() {
+        String payloadHash = S3AvatarStorage.sha256Hex(new byte[0]);
+        Map<String, String> headers = new TreeMap<>();
+        headers.put("host", "examplebucket.s3.amazonaws.com");
+        headers.put("range", "bytes=0-9");
+        headers.put("x-amz-content-sha256", payloadHash);
+        headers.put("x-amz-date", "20130524T000000Z");
+        String canonicalRequest = S3AvatarStorage.canonicalRequest("GET", "/test.txt", "", headers, payloadHash);
+
+        assertEquals("f0e8bdb87c964420e857bd35b5d6ed310bd44f0170aba48dd91039c6036bdb41",
+                S3AvatarStorage.signature("wJalrXUtnFEMI/K7MDENG/bPxRfiCYEXAMPLEKEY", "20130524T000000Z",
+                        "us-east-1", "s3", canonicalRequest));
+    }
+
+    @Test
+    void writeThenFindAndRead() throws IOException {
+        byte[] data = "avatar-bytes".getBytes(StandardCharsets.UTF_8);
+        storage.write(AVATAR_ID, "128.jpg", data);
+
+        assertTrue(stub.objects.containsKey("avatar/01/23/" + AVATAR_ID + "/128.jpg"));
+        StoredFile file = storage.find(AVATAR_ID, "128.jpg");
+        assertNotNull(file);
+        assertEquals("128.jpg", file.getName());
+        assertEquals(data.length, file.getLength());
+        assertTrue(file.getLastModified() > 0);
+        try (InputStream in = file.open(7, data.length)) {
+            assertArrayEquals(Arrays.copyOfRange(data, 7, data.length), in.readAllBytes());
+        }
+    }
+
+    @Test
+    void findReturnsNullWhenMissing() throws IOException {
+        assertNull(storage.find(AVATAR_ID, "128.jpg"));
+    }
+
+    @Test
+    void deleteRemovesAllSizesOfOneAvatar() throws IOException {
+        String other = "fedcba9876543210fedcba9876543210";
+        storage.write(AVATAR_ID, "64.jpg", new byte[]{1});
+        storage.write(AVATAR_ID, "128.jpg", new byte[]{2});
+        storage.write(other, "64.jpg", new byte[]{3});
+
+        storage.delete(AVATAR_ID);
+
+        assertNull(storage.find(AVATAR_ID, "64.jpg"));
+        assertNull(storage.find(AVATAR_ID, "128.jpg"));
+        assertNotNull(storage.find(other, "64.jpg"));
+    }
+
+    @Test
+    void forEachAvatarPagesThroughListingAndFiltersByTime() throws IOException {
+        // 每页2个对象，3个头像共5个文件，需要翻页
+        stub.maxKeys = 2;
+        String second = "1123456789abcdef0123456789abcdef";
+        String recent = "2123456789abcdef0123456789abcdef";
+        storage.write(AVATAR_ID, "64.jpg", new byte[]{1});
+        storage.write(AVATAR_ID, "128.jpg", new byte[]{1});
+        storage.write(second, "64.jpg", new byte[]{1});
+        storage.write(second, "128.jpg", new byte[]{1});
+        storage.write(recent, "64.jpg", new byte[]{1});
+        Instant cutoff = Instant.parse("2024-01-01T00:00:00Z");
+        stub.objects.forEach((key, object) -> object.lastModified = cutoff.minusSeconds(3600));
+        // 同一头像中只要有一个文件较新，整个头像就不算过期
+        stub.objects.get("avatar/01/23/" + AVATAR_ID + "/128.jpg").lastModified = cutoff.plusSeconds(60);
+        stub.objects.get("avatar/21/23/" + recent + "/64.jpg").lastModified = cutoff.plusSeconds(60);
+
+        List<String> stale = new ArrayList<>();
+        storage.forEachAvatar(cutoff, stale::add);
+
+        assertEquals(List.of(second), stale);
+        assertTrue(stub.listRequests >= 3);
+    }
+
+    /**
+     * 进程内的 S3 桩服务：PUT / HEAD / GET（含 Range）/ DELETE 对象，ListObjectsV2 分页列表
+     */
+    private static class StubS3 {
+        private final Map<String, StubObject> objects = new ConcurrentSkipListMap<>();
+        private volatile int maxKeys = 1000;
+        private volatile int listRequests;
+
+        void handle(HttpExchange exchange) throws IOException {
+            try (exchange) {
+                byte[] body = exchange.getRequestBody().readAllBytes();
+                if (!verifySignature(exchange, body)) {
+                    exchange.sendResponseHeaders(403, -1);
+                    return;
+                }
+                String path = exchange.getRequestURI().getRawPath();
+                String bucketPath = "/" + BUCKET + "/";
+                if (!path.startsWith(bucketPath)) {
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+                String key = URLDecoder.decode(path.substring(bucketPath.length()), StandardCharsets.UTF_8);
+                String method = exchange.getRequestMethod();
+                if (key.isEmpty() && "GET".equals(method)) {
+                    list(exchange);
+                } else if ("PUT".equals(method)) {
+                    objects.put(key, new StubObject(body));
+                    exchange.sendResponseHeaders(200, -1);
+                } else if ("DELETE".equals(method)) {
+                    objects.remove(key);
+                    exchange.sendResponseHeaders(204, -1);
+                } else {
+                    get(exchange, key, "HEAD".equals(method));
+                }
+            }
+        }
+
+        private void get(HttpExchange exchange, String key, boolean head) throws IOException {
+            StubObject object = objects.get(key);
+            if (object == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Last-Modified",
+                    DateTimeFormatter.RFC_1123_DATE_TIME.format(object.lastModified.atZone(ZoneOffset.UTC)));
+            if (head) {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(object.data.length));
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            byte[] data = object.data;
+            int status = 200;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range != null) {
+                String[] bounds = range.substring("bytes=".length()).split("-");
+                data = Arrays.copyOfRange(data, Integer.parseInt(bounds[0]), Integer.parseInt(bounds[1]) + 1);
+                status = 206;
+            }
+            exchange.sendResponseHeaders(status, data.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(data);
+            }
+        }
+
+        private void list(HttpExchange exchange) throws IOException {
+            listRequests++;
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String prefix = query.getOrDefault("prefix", "");
+            String after = query.get("continuation-token");
+            List<Map.Entry<String, StubObject>> matched = new ArrayList<>();
+            for (Map.Entry<String, StubObject> entry : objects.entrySet()) {
+                if (entry.getKey().startsWith(prefix) && (after == null || entry.getKey().compareTo(after) > 0)) {
+                    matched.add(entry);
+                }
+            }
+            boolean truncated = matched.size() > maxKeys;
+            List<Map.Entry<String, StubObject>> page = truncated ? matched.subList(0, maxKeys) : matched;
+
+            StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+                    .append("<ListBucketResult><Name>").append(BUCKET).append("</Name>")
+                    .append("<IsTruncated>").append(truncated).append("</IsTruncated>");
+            for (Map.Entry<String, StubObject> entry : page) {
+                xml.append("<Contents><Key>").append(entry.getKey()).append("</Key><LastModified>")
+                        .append(entry.getValue().lastModified).append("</LastModified></Contents>");
+            }
+            if (truncated) {
+                xml.append("<NextContinuationToken>").append(page.get(page.size() - 1).getKey())
+                        .append("</NextContinuationToken>");
+            }
+            xml.append("</ListBucketResult>");
+            byte[] data = xml.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/xml");
+            exchange.sendResponseHeaders(200, data.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(data);
+            }
+        }
+
+        /**
+         * 按收到的请求重新计算签名并与 Authorization 头比较
+         */
+        private boolean verifySignature(HttpExchange exchange, byte[] body) {
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            String payloadHash = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+            String amzDate = exchange.getRequestHeaders().getFirst("x-amz-date");
+            if (authorization == null || payloadHash == null || amzDate == null
+                    || !payloadHash.equals(S3AvatarStorage.sha256Hex(body))) {
+                return false;
+            }
+            String signedHeaders = field(authorization, "SignedHeaders=");
+            Map<String, String> headers = new TreeMap<>();
+            for (String name : signedHeaders.split(";")) {
+                headers.put(name, exchange.getRequestHeaders().getFirst(name));
+            }
+            String rawQuery = exchange.getRequestURI().getRawQuery();
+            String canonicalRequest = S3AvatarStorage.canonicalRequest(exchange.getRequestMethod(),
+                    exchange.getRequestURI().getRawPath(), rawQuery == null ? "" : rawQuery, headers, payloadHash);
+            return authorization.startsWith("AWS4-HMAC-SHA256 Credential=" + ACCESS_KEY + "/")
+                    && field(authorization, "Signature=").equals(
+                    S3AvatarStorage.signature(SECRET_KEY, amzDate, REGION, "s3", canonicalRequest));
+        }
+
+        private static String field(String authorization, String name) {
+            int start = authorization.indexOf(name) + name.length();
+            int end = authorization.indexOf(',', start);
+            return authorization.substring(start, end == -1 ? authorization.length() : end);
+        }
+
+        private static Map<String, String> parseQuery(String rawQuery) {
+            Map<String, String> query = new TreeMap<>();
+            if (rawQuery != null) {
+                for (String pair : rawQuery.split("&")) {
+                    int eq = pair.indexOf('=');
+                    query.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                            URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+                }
+            }
+            return query;
+        }
+    }
+
+    private static class StubObject {
+        private final byte[] data;
+        private volatile Instant lastModified = Instant.now();
+
+        private StubObject(byte[] data) {
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.weiki.usercenter.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * OffHeapByteCache 测试
+ */
+class OffHeapByteCacheTest {
+
+    private static final int PAGE = 16;
+
+    @Test
+    void evictedEntryStaysReadableUntilHandleClosed() throws IOException {
+        OffHeapByteCache cache = new OffHeapByteCache(8 * PAGE, PAGE, 8 * PAGE);
+        byte[] a = bytes(4 * PAGE, 1);
+        assertTrue(cache.put("a", channel(a), a.length));
+        assertTrue(cache.put("b", channel(bytes(4 * PAGE, 2)), 4 * PAGE));
+
+        OffHeapByteCache.Handle handle = cache.get("a");
+        assertNotNull(handle);
+        cache.get("b").close();
+        hit(cache, "c", 3);
+
+        // 淘汰 a（仍被读取）和 b，c 只能使用 b 的页
+        byte[] c = bytes(4 * PAGE, 3);
+        assertTrue(cache.put("c", channel(c), c.length));
+        assertNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(2, stat(cache, "evictions"));
+        assertEquals(8 * PAGE, stat(cache, "usedBytes"));
+        assertArrayEquals(a, read(handle));
+
+        handle.close();
+        assertEquals(4 * PAGE, stat(cache, "usedBytes"));
+        try (OffHeapByteCache.Handle cached = cache.get("c")) {
+            assertArrayEquals(c, read(cached));
+        }
+    }
+
+    @Test
+    void coldEntryIsNotAdmittedOverHotOne() throws IOException {
+        OffHeapByteCache cache = new OffHeapByteCache(4 * PAGE, PAGE, 4 * PAGE);
+        byte[] hot = bytes(4 * PAGE, 1);
+        assertTrue(cache.put("hot", channel(hot), hot.length));
+        hit(cache, "hot", 3);
+
+        assertFalse(cache.put("cold", channel(bytes(PAGE, 2)), PAGE));
+        assertEquals(1, stat(cache, "rejections"));
+        assertEquals(0, stat(cache, "evictions"));
+        try (OffHeapByteCache.Handle handle = cache.get("hot")) {
+            assertArrayEquals(hot, read(handle));
+        }
+    }
+
+    @Test
+    void oversizedEntryIsNotCached() throws IOException {
+        OffHeapByteCache cache = new OffHeapByteCache(4 * PAGE, PAGE, 2 * PAGE);
+        assertFalse(cache.put("big", channel(bytes(3 * PAGE, 1)), 3 * PAGE));
+        assertEquals(0, stat(cache, "usedBytes"));
+    }
+
+    @Test
+    void invalidatePrefixRemovesMatchingEntries() throws IOException {
+        OffHeapByteCache cache = new OffHeapByteCache(8 * PAGE, PAGE, PAGE);
+        assertTrue(cache.put("x-64", channel(bytes(PAGE, 1)), PAGE));
+        assertTrue(cache.put("x-128", channel(bytes(PAGE, 2)), PAGE));
+        assertTrue(cache.put("y-64", channel(bytes(PAGE, 3)), PAGE));
+
+        assertEquals(2, cache.invalidatePrefix("x-"));
+        assertNull(cache.get("x-64"));
+        assertNull(cache.get("x-128"));
+        try (OffHeapByteCache.Handle handle = cache.get("y-64")) {
+            assertNotNull(handle);
+        }
+        assertEquals(PAGE, stat(cache, "usedBytes"));
+    }
+
+    @Test
+    void invalidationDuringLoadDiscardsEntry() throws IOException {
+        OffHeapByteCache cache = new OffHeapByteCache(8 * PAGE, PAGE, 2 * PAGE);
+        byte[] data = bytes(2 * PAGE, 1);
+        ReadableByteChannel source = channel(data);
+        // 内容读入到一半时头像被删除
+        ReadableByteChannel racing = new ReadableByteChannel() {
+            private boolean invalidated;
+
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                if (!invalidated) {
+                    invalidated = true;
+                    assertEquals(0, cache.invalidatePrefix("x-"));
+                }
+                return source.read(dst);
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        assertFalse(cache.put("x-64", racing, data.length));
+        assertNull(cache.get("x-64"));
+        assertEquals(0, stat(cache, "usedBytes"));
+        assertEquals(0, stat(cache, "entries"));
+        // 作废只影响当时正在读入的条目
+        assertTrue(cache.put("x-64", channel(data), data.length));
+    }
+
+    @Test
+    void concurrentLoadOfSameKeyIsSkipped() throws IOException {
+        OffHeapByteCache cache = new OffHeapByteCache(8 * PAGE, PAGE, PAGE);
+        ReadableByteChannel source = channel(bytes(PAGE, 1));
+        boolean[] nested = new boolean[1];
+        ReadableByteChannel racing = new ReadableByteChannel() {
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                if (!nested[0]) {
+                    nested[0] = true;
+                    assertFalse(cache.put("k", channel(bytes(PAGE, 2)), PAGE));
+                }
+                return source.read(dst);
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        assertTrue(cache.put("k", racing, PAGE));
+        try (OffHeapByteCache.Handle handle = cache.get("k")) {
+            assertArrayEquals(bytes(PAGE, 1), read(handle));
+        }
+        assertEquals(PAGE, stat(cache, "usedBytes"));
+    }
+
+    @Test
+    void failedLoadReleasesPages() {
+        OffHeapByteCache cache = new OffHeapByteCache(4 * PAGE, PAGE, 4 * PAGE);
+        try {
+            cache.put("short", channel(bytes(PAGE, 1)), 2 * PAGE);
+        } catch (IOException expected) {
+            assertEquals(0, stat(cache, "usedBytes"));
+            return;
+        }
+        throw new AssertionError("内容不足时应抛出异常");
+    }
+
+    @Test
+    void loaderReturnsHandleToLoadedEntry() throws IOException {
+        OffHeapByteCache cache = new OffHeapByteCache(8 * PAGE, PAGE, 4 * PAGE);
+        byte[] data = bytes(3 * PAGE, 1);
+        try (OffHeapByteCache.Loader loader = cache.reserve("k", data.length)) {
+            assertNotNull(loader);
+            // 同一个 key 读入期间不再预留
+            assertNull(cache.reserve("k", data.length));
+            try (OffHeapByteCache.Handle handle = loader.load(channel(data))) {
+                assertNotNull(handle);
+                assertArrayEquals(data, read(handle));
+            }
+        }
+        try (OffHeapByteCache.Handle cached = cache.get("k")) {
+            assertArrayEquals(data, read(cached));
+        }
+        assertEquals(3 * PAGE, stat(cache, "usedBytes"));
+    }
+
+    @Test
+    void unusedReservationReleasesPages() {
+        OffHeapByteCache cache = new OffHeapByteCache(4 * PAGE, PAGE, 4 * PAGE);
+        try (OffHeapByteCache.Loader loader = cache.reserve("k", 2 * PAGE)) {
+            assertNotNull(loader);
+            assertEquals(2 * PAGE, stat(cache, "usedBytes"));
+        }
+        assertEquals(0, stat(cache, "usedBytes"));
+        try (OffHeapByteCache.Loader again = cache.reserve("k", 2 * PAGE)) {
+            assertNotNull(again);
+        }
+    }
+
+    private static long stat(OffHeapByteCache cache, String name) {
+        return cache.getStats().get(name);
+    }
+
+    private static void hit(OffHeapByteCache cache, String key, int times) {
+        for (int i = 0; i < times; i++) {
+            OffHeapByteCache.Handle handle = cache.get(key);
+            if (handle != null) {
+                handle.close();
+            }
+        }
+    }
+
+    private static byte[] bytes(int length, int seed) {
+        byte[] data = new byte[length];
+        Arrays.fill(data, (byte) seed);
+        data[length - 1] = (byte) (seed + 100);
+        return data;
+    }
+
+    private static ReadableByteChannel channel(byte[] data) {
+        return Channels.newChannel(new ByteArrayInputStream(data));
+    }
+
+    private static byte[] read(OffHeapByteCache.Handle handle) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (ByteBuffer buffer : handle.buffers(0, handle.getLength())) {
+            byte[] chunk = new byte[buffer.remaining()];
+            buffer.get(chunk);
+            out.write(chunk, 0, chunk.length);
+        }
+        return out.toByteArray();
+    }
+}
@@ -35,7 +35,15 @@ export function getUserList(params) {
   })
 }
 
-// 更新用户
+// 获取用户详情（含最新版本号）
+export function getUserById(id) {
+  return request({
+    url: `/user/${id}`,
+    method: 'get'
+  })
+}
+
+// 更新用户（data.version 为读取时的版本号，期间被他人修改时返回 409）
 export function updateUser(id, data) {
   return request({
     url: `/user/${id}`,
@@ -44,11 +52,14 @@ export function updateUser(id, data) {
   })
 }
 
-// 删除用户
-export function deleteUser(id) {
+// 删除用户（version 为读取时的版本号）
+export function deleteUser(id, version) {
   return request({
     url: `/user/${id}`,
-    method: 'delete'
+    method: 'delete',
+    params: {
+      version
+    }
   })
 }
 
@@ -78,13 +89,14 @@ export function updatePassword(id, oldPassword, newPassword) {
   })
 }
 
-// 重置密码（管理员重置用户密码）
-export function resetPassword(id, newPassword) {
+// 重置密码（管理员重置用户密码，version 为读取时的版本号）
+export function resetPassword(id, newPassword, version) {
   return request({
     url: `/user/${id}/reset-password`,
     method: 'put',
     data: {
-      newPassword
+      newPassword,
+      version
     }
   })
 }
@@ -97,10 +109,15 @@ export function getCurrentUser() {
   })
 }
 
-// 批量删除用户（前端循环调用单个删除实现）
+// 批量删除用户
 export function batchDeleteUsers(ids) {
-  // 循环调用单个删除 API
-  return Promise.all(ids.map(id => deleteUser(id)))
+  return request({
+    url: '/user/batch/delete',
+    method: 'post',
+    data: {
+      ids
+    }
+  })
 }
 
 // 批量更新用户状态（前端循环调用单个更新实现）